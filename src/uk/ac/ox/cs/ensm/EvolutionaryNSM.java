@@ -1,17 +1,24 @@
 package uk.ac.ox.cs.ensm;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import uk.ac.ox.cs.ensm.agent.AgentPopulation;
 import uk.ac.ox.cs.ensm.agent.EvolutionaryAgent;
 import uk.ac.ox.cs.ensm.agent.language.NormSynthesisGrammar;
 import uk.ac.ox.cs.ensm.agent.language.PredicatesDomains;
 import uk.ac.ox.cs.ensm.config.DomainFunctions;
 import uk.ac.ox.cs.ensm.config.EvolutionaryNSMSettings;
 import uk.ac.ox.cs.ensm.game.GamesManager;
+import uk.ac.ox.cs.ensm.game.NormativeGame;
 import uk.ac.ox.cs.ensm.metrics.DefaultEvolutionaryNSMetrics;
 import uk.ac.ox.cs.ensm.metrics.EvolutionaryNSMetrics;
 import uk.ac.ox.cs.ensm.network.NormativeGamesNetwork;
@@ -19,7 +26,9 @@ import uk.ac.ox.cs.ensm.norm.reasoning.NSReasoner;
 import uk.ac.ox.cs.ensm.ns.NormativeSystem;
 import uk.ac.ox.cs.ensm.ns.generation.NSGenerator;
 import uk.ac.ox.cs.ensm.ns.replication.NormsReplicator;
+import uk.ac.ox.cs.ensm.ns.replication.ReplicationScheduler;
 import uk.ac.ox.cs.ensm.perception.Monitor;
+import uk.ac.ox.cs.ensm.perception.PerceptionQueue;
 import uk.ac.ox.cs.ensm.perception.Sensor;
 import uk.ac.ox.cs.ensm.perception.ViewTransition;
 
@@ -63,6 +72,7 @@ public class EvolutionaryNSM {
 
 	/* Information model */
 	private Map<Long,EvolutionaryAgent>	agentPopulation;
+	private AgentPopulation population;						// Agents indexed by slot
 	private NormativeGamesNetwork ngNetwork;			// Network of normative games
 	private PredicatesDomains predDomains;				// Predicates and their domains
 	private NormSynthesisGrammar grammar;					// A grammar for norm synthesis
@@ -73,10 +83,18 @@ public class EvolutionaryNSM {
 	/* Tools to generate, evaluate and replicate normative systems */
 	private NSGenerator nsGenerator;
 	private NormsReplicator normsReplicator;
+	private ReplicationScheduler replicationScheduler;
 
 	/* Norm reasoning */
 	private Map<NormativeSystem, NSReasoner> nsReasoners;
 
+	/* Asynchronous replication */
+	private ExecutorService replicationExecutor;		// Replication thread
+	private Future<List<NormativeSystem>> replication;	// Replication in progress
+
+	/* Concurrent perception */
+	private ExecutorService perceptionExecutor;			// Perception threads
+
 	/* Domain layer */
 	private DomainFunctions dmFunctions;
 
@@ -89,7 +107,6 @@ public class EvolutionaryNSM {
 	private long numAgents;
 	private double numExecs;
 	private double lastReplication;
-	private double numTicksPerRound;
 
 
 	//---------------------------------------------------------------------------
@@ -121,9 +138,9 @@ public class EvolutionaryNSM {
 		this.random = random;
 		this.grammar = grammar;
 		this.agentPopulation = agentPopulation;
+		this.population = new AgentPopulation(agentPopulation.values());
 
 		this.numAgents = agentPopulation.size();
-		this.numTicksPerRound = settings.getNumTicksPerSimulationRound();
 		this.lastReplication = 0;
 		this.numExecs = 0;
 
@@ -145,6 +162,41 @@ public class EvolutionaryNSM {
 
 		this.normsReplicator = new NormsReplicator(this.nsReasoners, 
 				this.dmFunctions, this.ngNetwork, settings);
+		this.replicationScheduler = new ReplicationScheduler(
+				this.ngNetwork, settings);
+
+		/* Create the thread to replicate norms in background */
+		if(settings.useAsynchronousReplication()) {
+			this.replicationExecutor = Executors.newSingleThreadExecutor(
+					new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "ENSM-replication");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+
+		/* Create the threads to process the perceptions of sensors */
+		if(settings.getNumPerceptionThreads() > 1) {
+			this.perceptionExecutor = Executors.newFixedThreadPool(
+					settings.getNumPerceptionThreads(), new ThreadFactory() {
+						private int numThreads = 0;
+						
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, 
+									"ENSM-perception-" + (++numThreads));
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			
+			this.monitor.setExecutor(this.perceptionExecutor);
+			this.gamesManager.setExecutor(this.perceptionExecutor);
+			this.nsGenerator.setExecutor(this.perceptionExecutor);
+		}
 
 		//		this.stabilityTest = true;
 	}
@@ -164,6 +216,17 @@ public class EvolutionaryNSM {
 		this.monitor.addSensor(sensor);
 	}
 
+	/**
+	 * Sets the queue in which sensors publish their perceptions 
+	 * asynchronously, instead of being polled by the monitor
+	 * 
+	 * @param queue the perception queue
+	 * @see PerceptionQueue
+	 */
+	public void setPerceptionQueue(PerceptionQueue queue) {
+		this.monitor.setPerceptionQueue(queue);
+	}
+
 	/**
 	 * Performs the norm synthesis cycle by executing
 	 * the norm synthesis strategy
@@ -189,15 +252,30 @@ public class EvolutionaryNSM {
 		/* Increase num executions of the ENSM */
 		this.numExecs++;
 
-		/* Collect perceptions from the MAS */
-		this.monitor.getPerceptions(vTransitions);
+		/* Collect perceptions from the MAS (those published 
+		 * asynchronously are consumed up to the current tick) */
+		this.monitor.getPerceptions(vTransitions, (long)timeStep);
+
+		/* Hand the agents the normative systems of the last 
+		 * asynchronous replication, as soon as they are ready */
+		if(this.replication != null && this.replication.isDone()) {
+			this.publishReplication(timeStep);
+		}
 
 		/* Detect games and compute their payoffs */
 		this.gamesManager.step(vTransitions);
+		this.monitor.finishTick((long)timeStep);
 
 		/* Replicate norms and generate a new population of normative systems */
-		if(!converged && numExecs > lastReplication + numTicksPerRound) {
+		if(!converged && this.isReplicationDue()) {
 			lastReplication = this.numExecs; 
+			this.replicationScheduler.startRound();
+
+			/* Replicate in background, without pausing the simulation */
+			if(this.replicationExecutor != null) {
+				this.startReplication();
+				return;
+			}
 
 			/* Replicator dynamics */ 
 			this.normsReplicator.doReplication();
@@ -213,15 +291,28 @@ public class EvolutionaryNSM {
 		}
 	}
 
+	/**
+	 * Stops the thread that replicates norms in background and the threads
+	 * that process perceptions (if any). A replication in progress is 
+	 * discarded
+	 */
+	public void shutdown() {
+		if(this.replicationExecutor != null) {
+			this.replicationExecutor.shutdownNow();
+		}
+		if(this.perceptionExecutor != null) {
+			this.perceptionExecutor.shutdownNow();
+		}
+	}
+
 	/**
 	 * @param nss
 	 */
 	private void setAgentsWithNormativeSystems(List<NormativeSystem> nss) {
-		Collection<EvolutionaryAgent> colAgs = agentPopulation.values();
-		List<EvolutionaryAgent> agents = new ArrayList<EvolutionaryAgent>(colAgs);
-
-		for(int i=0; i<agents.size(); i++) {
-			agents.get(i).setNormativeSystem(nss.get(i));
+		for(int slot=0; slot<this.population.size(); slot++) {
+			NormativeSystem ns = nss.get(slot);
+			this.population.getAgent(slot).setNormativeSystem(ns);
+			this.population.setNormativeSystemId(slot, ns.getId());
 		}
 	}
 
@@ -229,6 +320,72 @@ public class EvolutionaryNSM {
 	// Private methods
 	//---------------------------------------------------------------------------
 
+	/**
+	 * Returns <tt>true</tt> if a round has finished since the last 
+	 * replication, and no replication is in progress
+	 * 
+	 * @return <tt>true</tt> if norms must be replicated
+	 * @see ReplicationScheduler
+	 */
+	private boolean isReplicationDue() {
+		return this.replication == null && this.replicationScheduler.
+				isRoundFinished((long)(numExecs - lastReplication));
+	}
+
+	/**
+	 * Starts replicating norms in background. The games to replicate (and 
+	 * a snapshot of their payoffs) are retrieved in the simulation thread, 
+	 * while the norms are replicated and the new normative systems are 
+	 * generated in the replication thread 
+	 */
+	private void startReplication() {
+		final List<NormativeGame> nGamesToReplicate = 
+				this.normsReplicator.prepareReplication();
+		final List<NormativeGame> nGamesToSample = 
+				this.nsGenerator.getGamesToSample();
+
+		this.replication = this.replicationExecutor.submit(
+				new Callable<List<NormativeSystem>>() {
+					@Override
+					public List<NormativeSystem> call() {
+						normsReplicator.doReplication(nGamesToReplicate);
+						return nsGenerator.sampleNormativeSystems(
+								nGamesToSample, numAgents);
+					}
+				});
+	}
+
+	/**
+	 * Registers the normative systems generated by the last asynchronous
+	 * replication and hands them to the agents, all at once. If the
+	 * replication failed, its failure is thrown in the simulation thread
+	 * 
+	 * @param timeStep the current time step
+	 * @throws RuntimeException if the replication failed
+	 */
+	private void publishReplication(double timeStep) {
+		List<NormativeSystem> nss = null;
+		try {
+			nss = this.replication.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e) {
+			throw new RuntimeException("Norms replication failed", e.getCause());
+		}
+		finally {
+			this.replication = null;
+		}
+
+		nss = this.nsGenerator.registerNormativeSystems(nss);
+		this.setAgentsWithNormativeSystems(nss);
+
+		/* Update metrics */
+		this.metrics.update(timeStep);
+	}
+
 
 	/**
 	 * Creates the NS generator, generates a set of initial random 
@@ -257,13 +414,15 @@ public class EvolutionaryNSM {
 	 * normative network, and a norm synthesis {@code strategy}
 	 * 
 	 * @throws IncorrectSetupException if one of the following conditions hold:
-	 * 					(1) no sensors have been added to the monitor; or
+	 * 					(1) no sensors (nor a perception queue) have been 
+	 * 					added to the monitor; or
 	 * 					(2) no omega function has been set; or
 	 * 					(3) no strategy has been set
 	 * @see IncorrectSetupException
 	 */
 	private void checkSetup() throws IncorrectSetupException {
-		if(this.monitor.getNumSensors() == 0) {
+		if(this.monitor.getNumSensors() == 0 && 
+				!this.monitor.hasPerceptionQueue()) {
 			throw new IncorrectSetupException("No sensors have been added yet");
 		}
 	}
@@ -352,6 +511,16 @@ public class EvolutionaryNSM {
 		return this.agentPopulation;
 	}
 
+	/**
+	 * Returns the registry of the agent population, which assigns each
+	 * agent a dense slot
+	 * 
+	 * @return the registry of the agent population
+	 */
+	public AgentPopulation getPopulation() {
+		return this.population;
+	}
+
 	/**
 	 * @return the nsEvaluator
 	 */
@@ -0,0 +1,338 @@
+/**
+ *
+ * @author Javier Morales (javier.morales@cs.ox.ac.uk)
+ */
+package uk.ac.ox.cs.ensm.agent;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A dense registry of the agent population. Each agent is assigned a
+ * slot (an index in [0, size)) in the order it is registered, so that
+ * per-agent information can be kept in primitive arrays indexed by slot.
+ * Agent ids are mapped to slots by means of an open-addressing hash table
+ * of primitive {@code long} keys, so that looking up an agent by its id
+ * does not box the id. Besides, the population keeps the state of each
+ * agent that the norm synthesis machine tracks (the id of its current
+ * normative system and the id of the last game it played) in primitive
+ * arrays indexed by slot.
+ *
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ */
+public class AgentPopulation {
+
+	//---------------------------------------------------------------------------
+	// Static attributes
+	//---------------------------------------------------------------------------
+
+	/** Slot of the agents that are not in the population, and id of the
+	 * normative systems and games that agents do not have yet */
+	public static final int NONE = -1;
+
+	//---------------------------------------------------------------------------
+	// Attributes
+	//---------------------------------------------------------------------------
+
+	private EvolutionaryAgent[] agents;		// Agent of each slot
+	private long[] ids;										// Id of the agent of each slot
+	private int size;											// Number of agents
+	private long[] nsIds;									// Id of the NS of each slot
+	private long[] lastGameIds;						// Id of the last game of each slot
+
+	/* Hash table from agent ids to slots. A table slot is empty if its
+	 * value is 0, otherwise it contains the agent slot + 1 */
+	private long[] tableIds;
+	private int[] tableSlots;
+
+	private List<EvolutionaryAgent> agentsView;	// Read-only view of the agents
+
+	//---------------------------------------------------------------------------
+	// Methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Constructor. Registers the given agents, in the order they are given
+	 *
+	 * @param agents the agents of the population
+	 */
+	public AgentPopulation(Collection<EvolutionaryAgent> agents) {
+		int capacity = Math.max(agents.size(), 16);
+		this.agents = new EvolutionaryAgent[capacity];
+		this.ids = new long[capacity];
+		this.nsIds = newIds(capacity);
+		this.lastGameIds = newIds(capacity);
+		this.size = 0;
+		this.tableIds = new long[tableCapacity(capacity)];
+		this.tableSlots = new int[this.tableIds.length];
+		this.agentsView = new AgentsView();
+
+		for(EvolutionaryAgent agent : agents) {
+			this.add(agent);
+		}
+	}
+
+	/**
+	 * Registers an agent in the population, if it is not registered yet
+	 *
+	 * @param agent the agent
+	 * @return the slot of the agent
+	 */
+	public int add(EvolutionaryAgent agent) {
+		long id = agent.getId();
+		int slot = this.getSlot(id);
+		if(slot != NONE) {
+			return slot;
+		}
+
+		/* Grow the slots and the hash table if necessary */
+		if(this.size == this.agents.length) {
+			this.agents = Arrays.copyOf(this.agents, this.size * 2);
+			this.ids = Arrays.copyOf(this.ids, this.size * 2);
+			this.nsIds = grow(this.nsIds, this.size * 2);
+			this.lastGameIds = grow(this.lastGameIds, this.size * 2);
+		}
+		if((this.size + 1) * 2 > this.tableIds.length) {
+			this.rehash(this.tableIds.length * 2);
+		}
+
+		slot = this.size++;
+		this.agents[slot] = agent;
+		this.ids[slot] = id;
+		this.put(id, slot);
+		return slot;
+	}
+
+	/**
+	 * Returns the slot of the agent with a given id
+	 *
+	 * @param id the id of the agent
+	 * @return the slot of the agent, or {@code NONE} if there is
+	 * 					no agent with that id
+	 */
+	public int getSlot(long id) {
+		int mask = this.tableIds.length - 1;
+		for(int i = hash(id) & mask; this.tableSlots[i] != 0; i = (i+1) & mask) {
+			if(this.tableIds[i] == id) {
+				return this.tableSlots[i] - 1;
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * Returns the agent of a given slot
+	 *
+	 * @param slot the slot
+	 * @return the agent of the slot
+	 */
+	public EvolutionaryAgent getAgent(int slot) {
+		return this.agents[slot];
+	}
+
+	/**
+	 * Returns the agent with a given id
+	 *
+	 * @param id the id of the agent
+	 * @return the agent with the given id, or {@code null} if there is
+	 * 					no agent with that id
+	 */
+	public EvolutionaryAgent getAgentWithId(long id) {
+		int slot = this.getSlot(id);
+		return slot == NONE ? null : this.agents[slot];
+	}
+
+	/**
+	 * Returns the id of the agent of a given slot
+	 *
+	 * @param slot the slot
+	 * @return the id of the agent of the slot
+	 */
+	public long getId(int slot) {
+		return this.ids[slot];
+	}
+
+	/**
+	 * Returns the id of the normative system of the agent of a given slot
+	 *
+	 * @param slot the slot
+	 * @return the id of the normative system of the agent, or {@code NONE}
+	 * 					if the agent has not been given a normative system yet
+	 */
+	public long getNormativeSystemId(int slot) {
+		return this.nsIds[slot];
+	}
+
+	/**
+	 * Sets the id of the normative system of the agent of a given slot
+	 *
+	 * @param slot the slot
+	 * @param nsId the id of the normative system of the agent
+	 */
+	public void setNormativeSystemId(int slot, long nsId) {
+		this.nsIds[slot] = nsId;
+	}
+
+	/**
+	 * Returns the id of the last game played by the agent of a given slot
+	 *
+	 * @param slot the slot
+	 * @return the id of the last game played by the agent, or {@code NONE}
+	 * 					if the agent has not played any game yet
+	 */
+	public long getLastGameId(int slot) {
+		return this.lastGameIds[slot];
+	}
+
+	/**
+	 * Sets the id of the last game played by the agent of a given slot
+	 *
+	 * @param slot the slot
+	 * @param gameId the id of the last game played by the agent
+	 */
+	public void setLastGameId(int slot, long gameId) {
+		this.lastGameIds[slot] = gameId;
+	}
+
+	/**
+	 * Returns <tt>true</tt> if the population contains an agent with the id
+	 *
+	 * @param id the id of the agent
+	 * @return <tt>true</tt> if the population contains an agent with the id
+	 */
+	public boolean contains(long id) {
+		return this.getSlot(id) != NONE;
+	}
+
+	/**
+	 * Returns the number of agents of the population
+	 *
+	 * @return the number of agents of the population
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns a read-only view of the agents, sorted by slot. The view is
+	 * not copied, and hence it reflects the agents registered later on
+	 *
+	 * @return a read-only view of the agents of the population
+	 */
+	public List<EvolutionaryAgent> getAgents() {
+		return this.agentsView;
+	}
+
+	//---------------------------------------------------------------------------
+	// Private methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Adds an entry to the hash table
+	 *
+	 * @param id the agent id
+	 * @param slot the agent slot
+	 */
+	private void put(long id, int slot) {
+		int mask = this.tableIds.length - 1;
+		int i = hash(id) & mask;
+		while(this.tableSlots[i] != 0) {
+			i = (i+1) & mask;
+		}
+		this.tableIds[i] = id;
+		this.tableSlots[i] = slot + 1;
+	}
+
+	/**
+	 * Rebuilds the hash table with a new capacity
+	 *
+	 * @param capacity the new capacity (a power of two)
+	 */
+	private void rehash(int capacity) {
+		this.tableIds = new long[capacity];
+		this.tableSlots = new int[capacity];
+		for(int slot=0; slot<this.size; slot++) {
+			this.put(this.ids[slot], slot);
+		}
+	}
+
+	/**
+	 * Creates an array of ids, all of them {@code NONE}
+	 *
+	 * @param capacity the length of the array
+	 * @return the array of ids
+	 */
+	private static long[] newIds(int capacity) {
+		long[] ids = new long[capacity];
+		Arrays.fill(ids, NONE);
+		return ids;
+	}
+
+	/**
+	 * Grows an array of ids, filling the new positions with {@code NONE}
+	 *
+	 * @param ids the array of ids
+	 * @param capacity the new length of the array
+	 * @return the grown array of ids
+	 */
+	private static long[] grow(long[] ids, int capacity) {
+		long[] grown = Arrays.copyOf(ids, capacity);
+		Arrays.fill(grown, ids.length, capacity, NONE);
+		return grown;
+	}
+
+	/**
+	 * Returns the capacity of a hash table (a power of two) that
+	 * holds a number of agents with a load factor up to 0.5
+	 *
+	 * @param numAgents the number of agents
+	 * @return the capacity of the hash table
+	 */
+	private static int tableCapacity(int numAgents) {
+		int capacity = 1;
+		while(capacity < numAgents * 2) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	/**
+	 * Hashes an agent id
+	 *
+	 * @param id the agent id
+	 * @return the hash of the id
+	 */
+	private static int hash(long id) {
+		int h = (int)(id ^ (id >>> 32));
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	//---------------------------------------------------------------------------
+	// Inner classes
+	//---------------------------------------------------------------------------
+
+	/**
+	 * A read-only list view of the agents of the population
+	 */
+	private class AgentsView extends AbstractList<EvolutionaryAgent>
+	implements RandomAccess {
+
+		@Override
+		public EvolutionaryAgent get(int slot) {
+			if(slot < 0 || slot >= size) {
+				throw new IndexOutOfBoundsException("Slot: " + slot +
+						", size: " + size);
+			}
+			return agents[slot];
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
@@ -1,88 +1,176 @@
 /**
- * 
+ *
  * @author Javier Morales (javier.morales@cs.ox.ac.uk)
  */
 package uk.ac.ox.cs.ensm.agent;
 
-import java.util.ArrayList;
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.WeakHashMap;
 
 /**
+ * An immutable combination of strategies (e.g., actions or norms), one
+ * for each role of a game. Combinations are used as keys of payoff
+ * matrices and reward maps, and hence their hash code is computed once,
+ * and two combinations are equal if they contain equal strategies in the
+ * same order (as any other {@code List}).
+ * <p>
+ * Combinations can be interned by means of {@link #intern(Combination)},
+ * so that equal combinations share the same instance
+ *
  * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
  *
  */
-public class Combination<T> extends ArrayList<T> {
+public final class Combination<T> extends AbstractList<T>
+implements RandomAccess, Serializable {
 
 	/** Serial ID */
 	private static final long serialVersionUID = -8294777106459796336L;
 
-	/**
-	 * 
-	 */
-	public Combination() {
-		super();
-	}
+	/** Canonical instances of the interned combinations */
+	private static final Map<Combination<?>,WeakReference<Combination<?>>>
+	interned = new WeakHashMap<Combination<?>,WeakReference<Combination<?>>>();
+
+	/** Strategy of each role */
+	private final Object[] strategies;
+
+	/** Hash code of the combination. It is not serialized, since the hash
+	 * codes of the strategies may differ after deserialization */
+	private final transient int hash;
 
 	/**
-	 * 
+	 *
 	 * @param norm
 	 */
 	public Combination(T strategy) {
-		super();
-		this.add(strategy);
+		this(new Object[] {strategy});
 	}
 
 	/**
-	 * 
+	 *
 	 * @param norm
 	 */
 	public Combination(T str1, T str2) {
-		super();
-		this.add(str1);
-		this.add(str2);
+		this(new Object[] {str1, str2});
 	}
 
 	/**
-	 * 
+	 *
 	 * @param strategies
 	 */
 	public Combination(List<T> strategies) {
-		super();
+		this(strategies.toArray());
+	}
 
-		for(T strategy : strategies) {
-			this.add(strategy);
-		}
+	/**
+	 * Creates a combination that extends another combination with
+	 * the strategy of a new role
+	 *
+	 * @param combination the strategies of the first roles
+	 * @param strategy the strategy of the new role
+	 */
+	public Combination(Combination<T> combination, T strategy) {
+		this(extend(combination.strategies, strategy));
 	}
 
 	/**
-	 * Compares two normative profiles
-	 * 
-	 * @return true if the normative profiles are equal. False otherwise
+	 *
+	 * @param strategies
 	 */
-	public boolean equals(Combination<T> strCombination) {
+	private Combination(Object[] strategies) {
+		this.strategies = strategies;
+		this.hash = Arrays.hashCode(strategies);
+	}
 
-		if(this.size() != strCombination.size()) {
-			return false;
+	/**
+	 * Returns the canonical instance of a combination. Two equal
+	 * combinations interned are the same object
+	 *
+	 * @param combination the combination
+	 * @return the canonical instance of the combination
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Combination<T> intern(Combination<T> combination) {
+		synchronized(interned) {
+			WeakReference<Combination<?>> ref = interned.get(combination);
+			Combination<?> canonical = (ref != null ? ref.get() : null);
+			if(canonical == null) {
+				interned.put(combination,
+						new WeakReference<Combination<?>>(combination));
+				canonical = combination;
+			}
+			return (Combination<T>)canonical;
 		}
+	}
 
-		for(int i=0; i<this.size(); i++) {
-
-			/* If both norms are different from null, compare norms */
-			if(this.get(i) != null && strCombination.get(i) != null) {
-				if(!this.get(i).equals(strCombination.get(i))) {
-					return false;
-				}
-			}	
-
-			/* In case one of the strategies is null and the other 
-			 * is not, then return false */
-			else {
-				if((this.get(i) != null && strCombination.get(i) == null) ||
-						(this.get(i) == null && strCombination.get(i) != null)) {
-					return false;
-				}
-			}
+	/* (non-Javadoc)
+	 * @see java.util.AbstractList#get(int)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(int role) {
+		return (T)this.strategies[role];
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public int size() {
+		return this.strategies.length;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractList#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return this.hash;
+	}
+
+	/**
+	 * Compares two combinations
+	 *
+	 * @return true if the combinations contain equal strategies in the
+	 * 					same order. False otherwise
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if(this == o) {
+			return true;
 		}
-		return true;
+		if(o instanceof Combination) {
+			Combination<?> oCombination = (Combination<?>)o;
+			return this.hash == oCombination.hash &&
+					Arrays.equals(this.strategies, oCombination.strategies);
+		}
+		return super.equals(o);
+	}
+
+	/**
+	 * Replaces a deserialized combination with a new one, so that its 
+	 * hash code is computed from the deserialized strategies
+	 * 
+	 * @return the combination, with its hash code computed
+	 */
+	private Object readResolve() {
+		return new Combination<T>(this.strategies);
+	}
+
+	/**
+	 *
+	 * @param strategies
+	 * @param strategy
+	 * @return
+	 */
+	private static Object[] extend(Object[] strategies, Object strategy) {
+		Object[] extended = Arrays.copyOf(strategies, strategies.length + 1);
+		extended[strategies.length] = strategy;
+		return extended;
 	}
 }
@@ -0,0 +1,62 @@
+package uk.ac.ox.cs.ensm.config;
+
+import uk.ac.ox.cs.ensm.agent.AgentAction;
+import uk.ac.ox.cs.ensm.agent.AgentContext;
+import uk.ac.ox.cs.ensm.perception.View;
+import uk.ac.ox.cs.ensm.perception.ViewTransition;
+
+/**
+ * Domain functions that can answer the queries of many agents at once.
+ * Domains that can compute the contexts, actions and rewards of a group of 
+ * agents (e.g., in one pass over the simulation grid) more cheaply than 
+ * answering each agent separately should implement this interface rather 
+ * than {@code DomainFunctions}. Domain functions that do not implement it
+ * are adapted by {@code BatchDomainFunctionsAdapter}, which answers each
+ * agent of a batch separately
+ * 
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ * @see BatchDomainFunctionsAdapter
+ */
+public interface BatchDomainFunctions extends DomainFunctions {
+
+	/**
+	 * Fills {@code contexts} with the local context of each agent of 
+	 * {@code agentIds} in a given {@code view}, so that {@code contexts[i]}
+	 * is the context of the agent with id {@code agentIds[i]}
+	 * 
+	 * @param agentIds the ids of the agents
+	 * @param view the view in which the agents perceive their local contexts
+	 * @param contexts the array to fill with the contexts of the agents
+	 * @see DomainFunctions#getContext(long, View)
+	 */
+	public void getContexts(long[] agentIds, View view, AgentContext[] contexts);
+	
+	/**
+	 * Fills {@code actions} with the (first) action that each agent of 
+	 * {@code agentIds} performed in the transition of views 
+	 * {@code viewTransition}, so that {@code actions[i]} is the action of 
+	 * the agent with id {@code agentIds[i]}
+	 * 
+	 * @param agentIds the ids of the agents
+	 * @param viewTransition the transition of views in which
+	 * 					the agents performed the actions
+	 * @param actions the array to fill with the actions of the agents
+	 * @see DomainFunctions#getAction(long, ViewTransition)
+	 */
+	public void getActions(long[] agentIds, ViewTransition viewTransition,
+			AgentAction[] actions);
+	
+	/**
+	 * Fills {@code rewards} with the reward of each agent of {@code agentIds}
+	 * in a view transition with respect to a system {@code goal}, so that 
+	 * {@code rewards[i]} is the reward of the agent with id {@code agentIds[i]}
+	 * 
+	 * @param vTrans the view transition
+	 * @param agentIds the ids of the agents
+	 * @param goal the goal
+	 * @param rewards the array to fill with the rewards of the agents
+	 * @see DomainFunctions#getReward(ViewTransition, long, Goal)
+	 */
+	public void getRewards(ViewTransition vTrans, long[] agentIds, Goal goal,
+			double[] rewards);
+}
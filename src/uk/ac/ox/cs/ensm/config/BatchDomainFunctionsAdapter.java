@@ -0,0 +1,147 @@
+package uk.ac.ox.cs.ensm.config;
+
+import java.util.List;
+
+import uk.ac.ox.cs.ensm.agent.AgentAction;
+import uk.ac.ox.cs.ensm.agent.AgentContext;
+import uk.ac.ox.cs.ensm.agent.AgentInteraction;
+import uk.ac.ox.cs.ensm.agent.EvolutionaryAgent;
+import uk.ac.ox.cs.ensm.perception.Conflict;
+import uk.ac.ox.cs.ensm.perception.View;
+import uk.ac.ox.cs.ensm.perception.ViewTransition;
+
+/**
+ * Adapts domain functions that only answer the queries of one agent at a
+ * time to {@code BatchDomainFunctions}. The queries of a batch of agents
+ * are answered by querying the adapted domain functions for each agent
+ * 
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ * @see BatchDomainFunctions
+ */
+public class BatchDomainFunctionsAdapter implements BatchDomainFunctions {
+
+	//---------------------------------------------------------------------------
+	// Attributes
+	//---------------------------------------------------------------------------
+
+	private DomainFunctions dmFunctions;	// The adapted domain functions
+
+	//---------------------------------------------------------------------------
+	// Methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Returns the given domain functions as batch domain functions. If they 
+	 * already answer batches of queries they are returned as they are. 
+	 * Otherwise, they are adapted
+	 * 
+	 * @param dmFunctions the domain functions
+	 * @return the batch domain functions
+	 */
+	public static BatchDomainFunctions adapt(DomainFunctions dmFunctions) {
+		if(dmFunctions instanceof BatchDomainFunctions) {
+			return (BatchDomainFunctions)dmFunctions;
+		}
+		return new BatchDomainFunctionsAdapter(dmFunctions);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param dmFunctions the domain functions to adapt
+	 */
+	public BatchDomainFunctionsAdapter(DomainFunctions dmFunctions) {
+		this.dmFunctions = dmFunctions;
+	}
+
+	/**
+	 * Returns the context of each agent by querying them one by one
+	 */
+	@Override
+	public void getContexts(long[] agentIds, View view,
+			AgentContext[] contexts) {
+
+		for(int i=0; i<agentIds.length; i++) {
+			contexts[i] = this.dmFunctions.getContext(agentIds[i], view);
+		}
+	}
+
+	/**
+	 * Returns the action of each agent by querying them one by one
+	 */
+	@Override
+	public void getActions(long[] agentIds, ViewTransition viewTransition,
+			AgentAction[] actions) {
+
+		for(int i=0; i<agentIds.length; i++) {
+			actions[i] = this.dmFunctions.getAction(agentIds[i], 
+					viewTransition).get(0);
+		}
+	}
+
+	/**
+	 * Returns the reward of each agent by querying them one by one
+	 */
+	@Override
+	public void getRewards(ViewTransition vTrans, long[] agentIds, Goal goal,
+			double[] rewards) {
+
+		for(int i=0; i<agentIds.length; i++) {
+			rewards[i] = this.dmFunctions.getReward(vTrans, agentIds[i], goal);
+		}
+	}
+
+	/**
+	 * Returns the context of an agent in a view
+	 */
+	@Override
+	public AgentContext getContext(long agentId, View view) {
+		return this.dmFunctions.getContext(agentId, view);
+	}
+
+	/**
+	 * Returns the actions of an agent in a view transition
+	 */
+	@Override
+	public List<AgentAction> getAction(long agentId,
+			ViewTransition viewTransition) {
+
+		return this.dmFunctions.getAction(agentId, viewTransition);
+	}
+
+	/**
+	 * Returns the agent interactions in a view transition
+	 */
+	@Override
+	public List<AgentInteraction> getAgentInteractions(ViewTransition vTrans) {
+		return this.dmFunctions.getAgentInteractions(vTrans);
+	}
+
+	/**
+	 * Returns the description of a game played in a view
+	 */
+	@Override
+	public View getGameDescription(View view, EvolutionaryAgent agA,
+			EvolutionaryAgent agB) {
+
+		return this.dmFunctions.getGameDescription(view, agA, agB);
+	}
+
+	/**
+	 * Returns the conflicts detected in a view transition
+	 */
+	@Override
+	public List<Conflict> getConflicts(Goal goal,
+			ViewTransition viewTransition) {
+
+		return this.dmFunctions.getConflicts(goal, viewTransition);
+	}
+
+	/**
+	 * Returns the reward of an agent in a view transition
+	 */
+	@Override
+	public double getReward(ViewTransition vTrans, long agentId, Goal goal) {
+		return this.dmFunctions.getReward(vTrans, agentId, goal);
+	}
+}
@@ -2,6 +2,8 @@ package uk.ac.ox.cs.ensm.config;
 
 import java.util.List;
 
+import uk.ac.ox.cs.ensm.ns.replication.ReplicatorIntegrator;
+
 /**
  * Basic settings of the Norm Synthesis Machine. For instance,
  * the default utility of norms, or the number of ticks of stability
@@ -72,6 +74,47 @@ public interface EvolutionaryNSMSettings {
 	 * @return
 	 */
 	public long getNumTicksPerSimulationRound();
+
+	/**
+	 * Returns the maximum half-width of the 95% confidence interval of the
+	 * mean rewards of a game for its payoffs to be considered confident.
+	 * If non-negative, norms are replicated as soon as enough games are 
+	 * confident (or the maximum number of ticks per round have elapsed),
+	 * instead of every {@code getNumTicksPerSimulationRound()} ticks. 
+	 * A negative value disables adaptive rounds
+	 * 
+	 * @return the maximum half-width of the confidence interval of the 
+	 * 					rewards of a confident game
+	 */
+	public double getReplicationConfidenceHalfWidth();
+
+	/**
+	 * Returns the minimum ratio of the valid, unfrozen normative games 
+	 * whose payoffs must be confident to replicate norms, if rounds 
+	 * are adaptive
+	 * 
+	 * @return the minimum ratio of confident games
+	 */
+	public double getReplicationConfidentGamesRatio();
+
+	/**
+	 * Returns the maximum number of ticks of a round if rounds are adaptive.
+	 * Norms are replicated once a round lasts this long, even if not enough
+	 * games are confident 
+	 * 
+	 * @return the maximum number of ticks of an adaptive round
+	 */
+	public long getMaxTicksPerSimulationRound();
+
+	/**
+	 * Returns the minimum number of rewards that each action combination
+	 * and role of a game must have received since the last replication
+	 * for its payoffs to be considered confident, if rounds are adaptive.
+	 * The confidence of the payoffs is measured on those rewards alone
+	 * 
+	 * @return the minimum number of new rewards of a confident game
+	 */
+	public int getReplicationMinNewRewards();
 	
 	/**
 	 * 
@@ -83,4 +126,93 @@ public interface EvolutionaryNSMSettings {
 	 * @return
 	 */
 	public double getExplorationRate();
+
+	/**
+	 * Returns the maximum drift allowed in the payoffs of a converged game
+	 * for the game to remain frozen. Frozen games are not replicated, and
+	 * every agent is assigned the norm the game converged to. Once any
+	 * payoff of the game drifts further than this threshold from the value
+	 * it had when the game converged, the game is unfrozen and replicated
+	 * again. A negative value disables freezing
+	 *
+	 * @return the maximum payoff drift of a frozen game
+	 */
+	public double getConvergedGamesPayoffDriftThreshold();
+
+	/**
+	 * Returns <tt>true</tt> if norms must be replicated in a background 
+	 * thread. In that case, the simulation keeps running while the norms
+	 * are replicated (based on a snapshot of the payoffs of the games), and
+	 * the new normative systems are handed to the agents once they are ready
+	 * 
+	 * @return <tt>true</tt> if norms must be replicated asynchronously
+	 */
+	public boolean useAsynchronousReplication();
+
+	/**
+	 * Returns the maximum change of the utilities of a normative game 
+	 * between two replications for its payoffs to be considered stable. 
+	 * The norms of a stable game are not replicated: the frequencies of its 
+	 * norms are set to its evolutionarily stable state (ESS) at once, if the
+	 * ESS can be computed analytically. A negative value disables the 
+	 * analytical computation of ESSs
+	 * 
+	 * @return the maximum change of the utilities of a stable game
+	 * @see uk.ac.ox.cs.ensm.ns.replication.ESSSolver
+	 */
+	public double getESSSolverStabilityThreshold();
+
+	/**
+	 * Returns the integrator of the replicator dynamics, which 
+	 * updates the frequencies of the norms in each replication round
+	 * 
+	 * @return the integrator of the replicator dynamics
+	 * @see ReplicatorIntegrator
+	 */
+	public ReplicatorIntegrator getReplicatorIntegrator();
+
+	/**
+	 * Returns the number of steps in which the replicator dynamics are
+	 * integrated in each replication round (the initial number of steps 
+	 * if the integrator adapts the size of its steps)
+	 * 
+	 * @return the number of steps per replication round
+	 */
+	public int getReplicatorNumSteps();
+
+	/**
+	 * Returns the maximum error of each step of the replicator dynamics,
+	 * for the integrators that adapt the size of their steps. It must be
+	 * positive if the integrator is adaptive
+	 * 
+	 * @return the error tolerance of each step
+	 */
+	public double getReplicatorErrorTolerance();
+
+	/**
+	 * Returns the number of threads that perceive the scenario. With more
+	 * than one thread, the sensors are polled concurrently, and the 
+	 * conflicts and the interactions of the agents of each perception are 
+	 * extracted concurrently as well. Then, the new games and the payoffs
+	 * are updated in the simulation thread, in the order of the sensors. 
+	 * The domain functions must then be safe to query from several threads.
+	 * These threads also choose the norms of the games concurrently when
+	 * normative systems are generated (with the same results, since each 
+	 * game is sampled with a random stream of its own). With one thread 
+	 * (or less), perceptions are processed sequentially
+	 * 
+	 * @return the number of threads that perceive the scenario
+	 */
+	public int getNumPerceptionThreads();
+
+	/**
+	 * Returns the number of rounds that a normative system may remain
+	 * inactive (i.e., followed by no agent) before it is evicted from the
+	 * normative games network, along with its relationships. Evicted
+	 * normative systems are created again (with a new id) if they are ever
+	 * generated again. A negative value disables eviction
+	 * 
+	 * @return the number of rounds an inactive normative system is retained
+	 */
+	public int getNormativeSystemsRetentionRounds();
 }
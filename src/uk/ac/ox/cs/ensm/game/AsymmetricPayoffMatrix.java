@@ -31,11 +31,17 @@ extends HashMap<Combination<T>, Double[]> {
 	/* List of available strategies (either actions or norms) for each role */
 	private Map<Integer, LinkedHashSet<T>> strategies;
 
+	/* Sorted combinations and strategy spaces, computed once each time 
+	 * the combinations or the strategies of the matrix change */
+	private List<Combination<T>> sortedCombinations;
+	private Map<Integer, List<T>> strategySpaces;
+	
 	/**
 	 * Constructor
 	 */
 	public AsymmetricPayoffMatrix() {
 		this.strategies = new TreeMap<Integer,LinkedHashSet<T>>();
+		this.strategySpaces = new HashMap<Integer,List<T>>();
 	}
 
 	/**
@@ -85,36 +91,87 @@ extends HashMap<Combination<T>, Double[]> {
 			if(!strategies.containsKey(role)) {
 				strategies.put(role, new LinkedHashSet<T>());
 			}
-			strategies.get(role).add(combination.get(role));
+			if(strategies.get(role).add(combination.get(role))) {
+				this.strategySpaces.remove(role);
+			}
 		}
 	}
 
 	/**
+	 * Returns an (unmodifiable) list of the strategies of a role
+	 * 
 	 * @param role
 	 * @return
 	 */
 	public List<T> getStrategySpace(int role) {
-		return new ArrayList<T>(this.strategies.get(role));
+		List<T> strategySpace = this.strategySpaces.get(role);
+		if(strategySpace == null) {
+			strategySpace = Collections.unmodifiableList(
+					new ArrayList<T>(this.strategies.get(role)));
+			this.strategySpaces.put(role, strategySpace);
+		}
+		return strategySpace;
 	}
 
 	/**
-	 * Returns a list of all the action combinations of the game
+	 * Returns an (unmodifiable) list of all the action combinations of the
+	 * game, sorted by their description. The list is sorted only once 
+	 * each time a new combination is added 
 	 * 
 	 * @return
 	 */
 	public List<Combination<T>> getCombinations() {
+		if(this.sortedCombinations != null) {
+			return this.sortedCombinations;
+		}
+		
+		/* Sort elements by their description, computing each one once */
 		List<Combination<T>> list = new ArrayList<Combination<T>>(this.keySet());
+		final Map<Combination<T>,String> descs = 
+				new HashMap<Combination<T>,String>();
+		for(Combination<T> combination : list) {
+			descs.put(combination, combination.toString());
+		}
 		
-		/* Sort elements with a comparator */
 		Comparator<Combination<T>> comparator = new Comparator<Combination<T>>() {
 			@Override
 			public int compare(Combination<T> c1, Combination<T> c2) {
-				return c1.toString().compareTo(c2.toString()); 
+				return descs.get(c1).compareTo(descs.get(c2)); 
 			}
 		};
 		Collections.sort(list, comparator);
 		
-		return list;
+		this.sortedCombinations = Collections.unmodifiableList(list);
+		return this.sortedCombinations;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.HashMap#put(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public Double[] put(Combination<T> combination, Double[] payoffs) {
+		if(!this.containsKey(combination)) {
+			this.sortedCombinations = null;
+		}
+		return super.put(combination, payoffs);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.HashMap#remove(java.lang.Object)
+	 */
+	@Override
+	public Double[] remove(Object combination) {
+		this.sortedCombinations = null;
+		return super.remove(combination);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.HashMap#clear()
+	 */
+	@Override
+	public void clear() {
+		this.sortedCombinations = null;
+		super.clear();
 	}
 
 	/**
@@ -204,8 +261,7 @@ extends HashMap<Combination<T>, Double[]> {
 			/* 2-role game */
 			else {
 				for(T str2 : this.getStrategySpace(1)) {
-					Combination<T> sc = new Combination<T>(str1);
-					sc.add(str2);
+					Combination<T> sc = new Combination<T>(str1, str2);
 
 					double p1 = this.getPayoff(0,sc);
 					double p2 = this.getPayoff(1,sc);
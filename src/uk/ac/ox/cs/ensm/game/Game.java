@@ -6,10 +6,12 @@ package uk.ac.ox.cs.ensm.game;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import uk.ac.ox.cs.ensm.agent.AgentAction;
 import uk.ac.ox.cs.ensm.agent.AgentContext;
@@ -36,8 +38,9 @@ public class Game implements NGNNode {
 	/** Number of times that the game has been played */
 	private double timesPlayed;
 
-	/** Frequency with which the game is played */
-	private double frequency;
+	/** Overall number of games played, shared among the games tracked
+	 * by the same games manager, from which the frequency is computed */
+	private AtomicLong numGamesPlayed;
 
 	/** Context of each agent in the game */
 	private List<AgentContext> contexts;
@@ -48,12 +51,42 @@ public class Game implements NGNNode {
 	/** Conflict rates sliding windows */
 	private Map<Combination<AgentAction>,SlidingValueWindow[]> rewards;
 
+	/** Action combinations in the order they were added to the game, so 
+	 * that each one can be referred to by its ordinal (e.g., by norms) */
+	private List<Combination<AgentAction>> acOrdinals;
+
 	/** Size of the sliding window to compute conflict rates */
 	private int crWdwSize;
 
 	/** Minimum number of values for each action combination and each role 
 	 * to consider the game as valid */
 	private int minNumValues = 3;
+
+	/** Number of (action combination, role) cells of the game, and number
+	 * of cells that have reached the minimum number of values */
+	private int numCells;
+	private int numValidCells;
+
+	/** Listeners to be notified when the validity of the game changes */
+	private List<GameValidityListener> validityListeners;
+
+	/** Have the payoffs of the game changed since the last snapshot? */
+	private boolean payoffsChanged = true;
+
+	/** Snapshot of the payoffs that norms replication works with, so that
+	 * new payoffs can be set while the norms are being replicated */
+	private Map<Combination<AgentAction>,double[]> payoffsSnapshot;
+
+	/** Dense copy of the snapshot, indexed by (cell * number of roles + role),
+	 * where the cell of an action combination is the sum of the strides 
+	 * of the actions of its roles (NaN for the cells that are not in the 
+	 * payoff matrix), and stride of the action of each role in each action
+	 * combination, by (ordinal * number of roles + role) */
+	private double[] denseSnapshot;
+	private int[] snapshotStrides;
+
+	/** Has the snapshot changed since the last replication? */
+	private boolean snapshotChanged;
 	
 	/**
 	 * Constructor for two players
@@ -73,7 +106,7 @@ public class Game implements NGNNode {
 		this.contexts = contexts;
 		this.crWdwSize = crWindowSize;
 		this.timesPlayed = 0.0;
-		this.frequency = 0.0;
+		this.numGamesPlayed = null;
 
 		/* Generate lists with the agents of the games, their contexts and
 		 * the strategies available to these agents */
@@ -85,6 +118,9 @@ public class Game implements NGNNode {
 		this.payoffMatrix = new AsymmetricPayoffMatrix<AgentAction>();
 		this.rewards = new HashMap<Combination<AgentAction>,
 				SlidingValueWindow[]>();
+		this.payoffsSnapshot = new HashMap<Combination<AgentAction>,double[]>();
+		this.validityListeners = new ArrayList<GameValidityListener>();
+		this.acOrdinals = new ArrayList<Combination<AgentAction>>();
 		
 		/* Sort agent contexts */
 		Collections.sort(this.contexts);
@@ -120,20 +156,35 @@ public class Game implements NGNNode {
 	 * @param ac
 	 */
 	public void addActionCombination(Combination<AgentAction> ac) {
+		if(this.rewards.containsKey(ac)) {
+			return;
+		}
+		
+		/* Share the same instance of the combination among games */
+		ac = Combination.intern(ac);
 
-		/* Just in case the action combination does not exist, add it to both
-		 * data structures */
+		/* The action combination does not exist. Add it to both data structures */
 		this.payoffMatrix.add(ac);
+		this.payoffsChanged = true;
 
 		/* Doing the same with conflict rate windows is a bit more elaborate */
-		if(!this.rewards.containsKey(ac)) {
-			int numRoles = ac.size();
-			this.rewards.put(ac, new SlidingValueWindow[numRoles]);
+		int numRoles = ac.size();
+		boolean wasValid = this.isValid();
+		this.rewards.put(ac, new SlidingValueWindow[numRoles]);
+		this.acOrdinals.add(ac);
+
+		/* Create conflict rate sliding windows */
+		for(int role=0; role<numRoles; role++) {
+			this.rewards.get(ac)[role] = new SlidingValueWindow(crWdwSize);
+		}
 
-			/* Create conflict rate sliding windows */
-			for(int role=0; role<numRoles; role++) {
-				this.rewards.get(ac)[role] = new SlidingValueWindow(crWdwSize);
-			}
+		/* The new cells have no values yet */
+		this.numCells += numRoles;
+		if(this.minNumValues <= 0) {
+			this.numValidCells += numRoles;
+		}
+		if(wasValid && !this.isValid()) {
+			this.fireValidityChanged();
 		}
 	}
 	
@@ -158,6 +209,7 @@ public class Game implements NGNNode {
 			double payoff) {
 		
 		this.payoffMatrix.setPayoff(role, ac, payoff);
+		this.payoffsChanged = true;
 	}
 	
 	/**
@@ -174,7 +226,247 @@ public class Game implements NGNNode {
 		this.addActionCombination(ac);
 
 		/* Add value to the historic */
-		this.rewards.get(ac)[role].addValue(reward);
+		SlidingValueWindow window = this.rewards.get(ac)[role];
+		window.addValue(reward);
+		this.payoffsChanged = true;
+		
+		/* Count the cell as valid once it reaches the minimum number of values */
+		if(window.getNumPunctualValues() == this.minNumValues) {
+			this.numValidCells++;
+			if(this.isValid()) {
+				this.fireValidityChanged();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the greatest standard error of the mean reward of any 
+	 * action combination and role of the game, taking into account only
+	 * the rewards received since they were last marked. The smaller it 
+	 * is, the tighter the confidence intervals of the payoffs of the game
+	 * 
+	 * @return the greatest standard error of the rewards of the game, or
+	 * 					infinity if the game is not valid yet
+	 */
+	public double getMaxRewardStandardError() {
+		if(!this.isValid()) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double maxStdError = 0.0;
+		for(SlidingValueWindow[] windows : this.rewards.values()) {
+			for(SlidingValueWindow window : windows) {
+				maxStdError = Math.max(maxStdError, window.getStandardError());
+			}
+		}
+		return maxStdError;
+	}
+
+	/**
+	 * Marks the current rewards of the game as old, so that the standard
+	 * errors of its rewards only take into account the rewards received
+	 * afterwards (see {@link #getMaxRewardStandardError()})
+	 */
+	public void markRewards() {
+		for(SlidingValueWindow[] windows : this.rewards.values()) {
+			for(SlidingValueWindow window : windows) {
+				window.mark();
+			}
+		}
+	}
+
+	/**
+	 * Returns the smallest number of rewards that any action combination 
+	 * and role of the game has received since the rewards were last marked
+	 * 
+	 * @return the smallest number of rewards received since the last mark
+	 */
+	public int getMinNumRewardsSinceMark() {
+		int minNumRewards = Integer.MAX_VALUE;
+		for(SlidingValueWindow[] windows : this.rewards.values()) {
+			for(SlidingValueWindow window : windows) {
+				minNumRewards = Math.min(minNumRewards, 
+						window.getNumValuesSinceMark());
+			}
+		}
+		return minNumRewards == Integer.MAX_VALUE ? 0 : minNumRewards;
+	}
+
+	/**
+	 * Adds a listener to be notified when the validity of the game changes
+	 * 
+	 * @param listener the listener
+	 */
+	public void addValidityListener(GameValidityListener listener) {
+		if(!this.validityListeners.contains(listener)) {
+			this.validityListeners.add(listener);
+		}
+	}
+	
+	/**
+	 * Removes a validity listener from the game
+	 * 
+	 * @param listener the listener
+	 */
+	public void removeValidityListener(GameValidityListener listener) {
+		this.validityListeners.remove(listener);
+	}
+
+	/**
+	 * Returns <tt>true</tt> if a payoff or a reward of the game has been
+	 * set since the last snapshot of its payoffs
+	 * 
+	 * @return <tt>true</tt> if the payoffs of the game have changed
+	 */
+	public boolean havePayoffsChanged() {
+		return this.payoffsChanged;
+	}
+
+	/**
+	 * Takes a new snapshot of the payoffs of the game, if they have 
+	 * changed since the last snapshot. Snapshots are never modified once 
+	 * taken, so they can be read while the game keeps being played
+	 */
+	public void snapshotPayoffs() {
+		if(!this.payoffsChanged) {
+			return;
+		}
+
+		Map<Combination<AgentAction>,double[]> snapshot = 
+				new HashMap<Combination<AgentAction>,double[]>();
+
+		for(Combination<AgentAction> ac : this.payoffMatrix.keySet()) {
+			Double[] payoffs = this.payoffMatrix.get(ac);
+			double[] sPayoffs = new double[payoffs.length];
+			for(int role=0; role<payoffs.length; role++) {
+				sPayoffs[role] = payoffs[role];
+			}
+			snapshot.put(ac, sPayoffs);
+		}
+
+		this.payoffsSnapshot = Collections.unmodifiableMap(snapshot);
+		this.snapshotDensePayoffs();
+		this.payoffsChanged = false;
+		this.snapshotChanged = true;
+	}
+
+	/**
+	 * Takes the dense copy of the snapshot of the payoffs. The actions of 
+	 * each role are numbered in the order of its strategy space, and each
+	 * action combination is stored in the cell whose digits (in the mixed 
+	 * radix of the sizes of the strategy spaces) are its action numbers.
+	 * The stride of an action is its number times the weight of its digit
+	 */
+	private void snapshotDensePayoffs() {
+		int numRoles = this.numPlayers;
+		List<Map<AgentAction,Integer>> actionStrides = 
+				new ArrayList<Map<AgentAction,Integer>>(numRoles);
+
+		/* Stride of each action of each role (the last role 
+		 * being the least significant digit) */
+		int numCells = 1;
+		for(int role=numRoles-1; role>=0; role--) {
+			List<AgentAction> actions = this.payoffMatrix.getStrategySpace(role);
+			Map<AgentAction,Integer> roleStrides = new HashMap<AgentAction,Integer>();
+			for(int a=0; a<actions.size(); a++) {
+				roleStrides.put(actions.get(a), a * numCells);
+			}
+			actionStrides.add(0, roleStrides);
+			numCells *= actions.size();
+		}
+
+		/* Stride of the action of each role of each action combination */
+		int[] strides = new int[this.acOrdinals.size() * numRoles];
+		for(int ord=0; ord<this.acOrdinals.size(); ord++) {
+			Combination<AgentAction> ac = this.acOrdinals.get(ord);
+			for(int role=0; role<numRoles; role++) {
+				strides[ord * numRoles + role] = 
+						actionStrides.get(role).get(ac.get(role));
+			}
+		}
+
+		/* Payoffs of each cell */
+		double[] dense = new double[numCells * numRoles];
+		Arrays.fill(dense, Double.NaN);
+		for(Map.Entry<Combination<AgentAction>,double[]> entry : 
+			this.payoffsSnapshot.entrySet()) {
+			
+			Combination<AgentAction> ac = entry.getKey();
+			int cell = 0;
+			for(int role=0; role<numRoles; role++) {
+				cell += actionStrides.get(role).get(ac.get(role));
+			}
+			System.arraycopy(entry.getValue(), 0, dense, cell * numRoles, numRoles);
+		}
+
+		this.denseSnapshot = dense;
+		this.snapshotStrides = strides;
+	}
+
+	/**
+	 * Returns the last snapshot of the payoffs of the game
+	 * 
+	 * @return the payoffs of each action combination, by role
+	 */
+	public Map<Combination<AgentAction>,double[]> getPayoffsSnapshot() {
+		return this.payoffsSnapshot;
+	}
+
+	/**
+	 * Returns the payoff of a role for an action combination 
+	 * in the last snapshot of the payoffs of the game
+	 * 
+	 * @param ac the action combination
+	 * @param role the role
+	 * @return the payoff of the role in the last snapshot
+	 */
+	public double getSnapshotPayoff(Combination<AgentAction> ac, int role) {
+		return this.payoffsSnapshot.get(ac)[role];
+	}
+
+	/**
+	 * Returns the stride of the action that a role performs in the action
+	 * combination with a given ordinal, in the last snapshot of the 
+	 * payoffs. The cell of the payoffs of the actions performed by each 
+	 * role is the sum of the strides of the actions of the roles
+	 * 
+	 * @param ordinal the ordinal of the action combination
+	 * @param role the role
+	 * @return the stride of the action of the role
+	 * @see #getSnapshotPayoff(int, int)
+	 */
+	public int getSnapshotStride(int ordinal, int role) {
+		return this.snapshotStrides[ordinal * this.numPlayers + role];
+	}
+
+	/**
+	 * Returns the payoff of a role for a cell of the last snapshot 
+	 * of the payoffs of the game
+	 * 
+	 * @param cell the cell of the actions performed by each role
+	 * @param role the role
+	 * @return the payoff of the role in the last snapshot, or NaN if
+	 * 					the actions of the cell have not been performed together
+	 * @see #getSnapshotStride(int, int)
+	 */
+	public double getSnapshotPayoff(int cell, int role) {
+		return this.denseSnapshot[cell * this.numPlayers + role];
+	}
+
+	/**
+	 * Returns <tt>true</tt> if a new snapshot of the payoffs has been
+	 * taken since the last time the game was replicated
+	 * 
+	 * @return <tt>true</tt> if the snapshot has changed
+	 */
+	public boolean hasSnapshotChanged() {
+		return this.snapshotChanged;
+	}
+
+	/**
+	 * Marks the snapshot as already used to replicate the game
+	 */
+	public void clearSnapshotChanged() {
+		this.snapshotChanged = false;
 	}
 	
 	/**
@@ -226,19 +518,31 @@ public class Game implements NGNNode {
 	}
 
 	/**
+	 * Returns the frequency with which the game is played, that is, the 
+	 * number of times it has been played divided by the overall number 
+	 * of games played. It is computed on read, so that the frequencies of 
+	 * the games need not be updated each time any game is played
 	 * 
-	 * @return
+	 * @return the frequency of the game
 	 */
 	public double getFrequency() {
-		return frequency;
+		long numGames = (this.numGamesPlayed != null ? 
+				this.numGamesPlayed.get() : 0);
+		
+		if(numGames == 0) {
+			return 0.0;
+		}
+		return this.timesPlayed / numGames;
 	}
 
 	/**
+	 * Sets the counter of the overall number of games played, 
+	 * with respect to which the frequency of the game is computed
 	 * 
-	 * @param frequency
+	 * @param numGamesPlayed the counter of games played
 	 */
-	public void setFrequency(double frequency) {
-		this.frequency = frequency;
+	public void setGamesPlayedCounter(AtomicLong numGamesPlayed) {
+		this.numGamesPlayed = numGamesPlayed;
 	}
 
 	/**
@@ -250,25 +554,43 @@ public class Game implements NGNNode {
 	
 	/**
 	 * Returns true if the payoff matrix of the game has enough 
-	 * information to assess its payoffs with a minimum guarantee 
+	 * information to assess its payoffs with a minimum guarantee. That is,
+	 * if the sliding window of each action combination and each role 
+	 * has at least the minimum number of values
 	 *  
 	 * @return
 	 */
 	public boolean isValid() {
-		
-		/* For each action combination and each role of the game, check 
-		 * whether its corresponding sliding window has enough information */
-		for(Combination<AgentAction> ac : this.payoffMatrix.getCombinations()) {
-			for(int role=0; role<this.getNumRoles(); role++) {
-				
-				/* Retrieve number of values and check the condition mentioned above */
-				int numValues = this.rewards.get(ac)[role].getNumPunctualValues();
-				if(numValues < this.minNumValues) {
-					return false;
-				}
-			}
+		return this.numValidCells >= this.numCells;
+	}
+
+	/**
+	 * Notifies the validity listeners that the validity of the game changed
+	 */
+	private void fireValidityChanged() {
+		for(GameValidityListener listener : this.validityListeners) {
+			listener.validityChanged(this);
 		}
-		return true;
+	}
+
+	/**
+	 * Returns the action combination with a given ordinal, that is, 
+	 * the action combination that was added to the game in that position
+	 * 
+	 * @param ordinal the ordinal of the action combination
+	 * @return the action combination with the given ordinal
+	 */
+	public Combination<AgentAction> getActionCombination(int ordinal) {
+		return this.acOrdinals.get(ordinal);
+	}
+
+	/**
+	 * Returns the number of action combinations of the game
+	 * 
+	 * @return the number of action combinations of the game
+	 */
+	public int getNumActionCombinations() {
+		return this.acOrdinals.size();
 	}
 
 	/**
@@ -295,7 +617,7 @@ public class Game implements NGNNode {
 	public String toString () {
 		DecimalFormat df = new DecimalFormat("####0.00000");
 		String s = "Game " + this.getUniqueId() + " (Freq. " + 
-				df.format(this.frequency) + ")\n";
+				df.format(this.getFrequency()) + ")\n";
 
 		s += this.getDescription();
 		
@@ -0,0 +1,25 @@
+/**
+ * 
+ * @author Javier Morales (javier.morales@cs.ox.ac.uk)
+ */
+package uk.ac.ox.cs.ensm.game;
+
+/**
+ * A listener that is notified each time a {@code Game} becomes valid
+ * (i.e., every action combination and role of the game has enough rewards
+ * to assess its payoffs) or stops being valid (i.e., a new action 
+ * combination has been added to the game)
+ * 
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ * @see Game#isValid()
+ */
+public interface GameValidityListener {
+
+	/**
+	 * Notifies that the validity of a game has changed. The new validity
+	 * can be retrieved by means of {@code Game.isValid()}
+	 * 
+	 * @param game the game whose validity has changed
+	 */
+	public void validityChanged(Game game);
+}
@@ -5,23 +5,33 @@
 package uk.ac.ox.cs.ensm.game;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import uk.ac.ox.cs.ensm.EvolutionaryNSM;
 import uk.ac.ox.cs.ensm.agent.AgentAction;
 import uk.ac.ox.cs.ensm.agent.AgentContext;
 import uk.ac.ox.cs.ensm.agent.AgentInteraction;
+import uk.ac.ox.cs.ensm.agent.AgentPopulation;
 import uk.ac.ox.cs.ensm.agent.Combination;
 import uk.ac.ox.cs.ensm.agent.EvolutionaryAgent;
 import uk.ac.ox.cs.ensm.agent.language.NormSynthesisGrammar;
-import uk.ac.ox.cs.ensm.config.DomainFunctions;
+import uk.ac.ox.cs.ensm.config.BatchDomainFunctions;
+import uk.ac.ox.cs.ensm.config.BatchDomainFunctionsAdapter;
 import uk.ac.ox.cs.ensm.config.EvolutionaryNSMSettings;
 import uk.ac.ox.cs.ensm.config.Goal;
+import uk.ac.ox.cs.ensm.game.PayoffAccumulator.Outcome;
 import uk.ac.ox.cs.ensm.network.NormativeGamesNetwork;
 import uk.ac.ox.cs.ensm.norm.Norm;
 import uk.ac.ox.cs.ensm.norm.generation.NormsGenerator;
@@ -45,7 +55,7 @@ public class GamesManager {
 	private NormsGenerator normsGenerator;
 
 	/* Agent population*/
-	private DomainFunctions dmFunctions;
+	private BatchDomainFunctions dmFunctions;
 
 	/* Actions available to the agents */
 	private List<AgentAction> actions;
@@ -54,16 +64,35 @@ public class GamesManager {
 	private EvolutionaryNSMSettings ensmSettings;
 
 	/* Overall number of games played so far */
-	private double numGamesPlayed;
+	private AtomicLong numGamesPlayed;
+
+	/* Epoch stamps of the agents (by slot) of each thread that updates the
+	 * games played, and of the games (by id). An agent has been assigned 
+	 * a game in the current view transition if its stamp equals the epoch 
+	 * of the thread, and a game has been played during the current tick if 
+	 * its stamp equals the tick epoch */
+	private ThreadLocal<AgentStamps> agentStamps;
+	private int[] gameStamps;
+	private int tickEpoch;
+
+	/* Outcomes of the games played during the current tick */
+	private PayoffAccumulator outcomes;
+
+	/* Index of the perception in which each new game of the current tick 
+	 * was detected */
+	private Map<Game,Integer> newGamesPerceptions;
 
 	/* Conflict ratio window size */
 	private int rwWindowSize;
 
 	/* Agent population */
-	private Map<Long, EvolutionaryAgent> agentPopulation;
+	private AgentPopulation population;
 
 	/* Evoutionary norm synthesis machine */
 	private EvolutionaryNSM ensm;
+
+	/* Threads that extract the conflicts and interactions of perceptions */
+	private ExecutorService executor;
 	
 	/**
 	 * Constructor 
@@ -74,17 +103,29 @@ public class GamesManager {
 
 		this.ensm = ensm;
 		this.gamesPlayedThisTick = new ArrayList<Game>();
-		this.numGamesPlayed = 0.0;
+		this.numGamesPlayed = new AtomicLong();
+		this.newGamesPerceptions = new IdentityHashMap<Game,Integer>();
+		this.gameStamps = new int[0];
+		this.tickEpoch = 0;
+		this.agentStamps = new ThreadLocal<AgentStamps>() {
+			@Override
+			protected AgentStamps initialValue() {
+				return new AgentStamps();
+			}
+		};
 		
-		this.agentPopulation = ensm.getAgentPopulation();
+		this.population = ensm.getPopulation();
 		this.ensmSettings = ensm.getSettings();
-		this.dmFunctions = ensm.getDomainFunctions();
+		this.dmFunctions = BatchDomainFunctionsAdapter.adapt(
+				ensm.getDomainFunctions());
 		this.ngNetwork = ensm.getNormativeGamesNetwork();
 		
 		this.normsGenerator = new NormsGenerator(ensmSettings, 
 				dmFunctions, ngNetwork, ensm.getGrammar());
 
 		this.rwWindowSize = ensmSettings.getRewardWindowSize();
+		this.outcomes = new PayoffAccumulator(
+				ensmSettings.getNumPerceptionThreads());
 
 		/* Sort action spaces */
 		this.retrieveActionSpaces(ensm.getGrammar());
@@ -102,18 +143,141 @@ public class GamesManager {
 
 		/* Clear list of games played during this tick */
 		this.gamesPlayedThisTick.clear();
+		this.tickEpoch++;
 
-		/* Add new games, create their corresponding normative games,
-		 * and evaluate the outcomes of each game played in the last tick */
-		for(ViewTransition vTrans : vTranss) {
-			newNormativeGames.addAll(this.detectNewGames(vTrans));
-			this.updatePlayedGames(vTrans);
+		/* Extract the conflicts and the interactions of each perception */
+		List<Perception> perceptions = this.extractPerceptions(vTranss);
+		
+		/* Add new games and create their corresponding normative games,
+		 * keeping track of the perception in which each game was detected */
+		this.newGamesPerceptions.clear();
+		for(int p=0; p<perceptions.size(); p++) {
+			for(NormativeGame nGame : this.detectNewGames(perceptions.get(p))) {
+				this.newGamesPerceptions.put(nGame.getGame(), p);
+				newNormativeGames.add(nGame);
+			}
 		}
+		
+		/* Evaluate the outcomes of each game played in the last tick, either
+		 * one perception after another or concurrently. In both cases, the 
+		 * interactions of a perception only match the games detected up to 
+		 * that perception. If any perception fails, no outcome is committed */
+		try {
+			if(this.executor == null || perceptions.size() < 2) {
+				for(int p=0; p<perceptions.size(); p++) {
+					this.updatePlayedGames(p, perceptions.get(p));
+				}
+			}
+			else {
+				this.updatePlayedGamesConcurrently(perceptions);
+			}
+		}
+		catch (RuntimeException e) {
+			this.outcomes.drain();
+			throw e;
+		}
+		
+		/* Reduce the outcomes of the games into their payoffs */
+		this.commitOutcomes();
 
 		/* Return a list of the new normative games tracked during this step */
 		return newNormativeGames;
 	}
 
+	/**
+	 * Sets the threads that extract the conflicts and the agent interactions
+	 * of perceptions. If set, the perceptions of a step are extracted 
+	 * concurrently, although the games and their payoffs are still updated 
+	 * one perception after another, in order
+	 * 
+	 * @param executor the threads that extract perceptions
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Extracts the conflicts and the potential interactions of the agents 
+	 * of each view transition, concurrently if there are threads to do so. 
+	 * Extracting a perception only queries the domain, and hence it does not
+	 * depend on the games detected in other perceptions. The perceptions 
+	 * are returned in the order of the view transitions. If extracting a 
+	 * perception fails, the whole extraction fails, so that the games are 
+	 * not updated without it
+	 * 
+	 * @param vTranss the view transitions
+	 * @return the perception extracted from each view transition
+	 * @throws RuntimeException if extracting a perception fails, or the
+	 * 					thread is interrupted while waiting for the extraction
+	 */
+	private List<Perception> extractPerceptions(List<ViewTransition> vTranss) {
+		List<Perception> perceptions = new ArrayList<Perception>(vTranss.size());
+		
+		if(this.executor == null || vTranss.size() < 2) {
+			for(ViewTransition vTrans : vTranss) {
+				perceptions.add(this.extractPerception(vTrans));
+			}
+			return perceptions;
+		}
+		
+		List<Future<Perception>> futures = 
+				new ArrayList<Future<Perception>>(vTranss.size());
+		
+		for(final ViewTransition vTrans : vTranss) {
+			futures.add(this.executor.submit(new Callable<Perception>() {
+				@Override
+				public Perception call() {
+					return extractPerception(vTrans);
+				}
+			}));
+		}
+		for(Future<Perception> future : futures) {
+			try {
+				perceptions.add(future.get());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+			catch (ExecutionException e) {
+				throw new RuntimeException("Extracting a perception failed", 
+						e.getCause());
+			}
+		}
+		return perceptions;
+	}
+
+	/**
+	 * Extracts the conflicts of a view transition (along with the contexts 
+	 * and the actions of the conflicting agents) and the potential 
+	 * interactions of its agents 
+	 * 
+	 * @param vTrans the view transition
+	 * @return the perception extracted from the view transition
+	 */
+	private Perception extractPerception(ViewTransition vTrans) {
+		Goal g = ensmSettings.getSystemGoals().get(0); // Single goal by now 
+		Perception perception = new Perception(vTrans);
+
+		/* Detect conflicts */
+		List<Conflict> conflicts = this.dmFunctions.getConflicts(g, vTrans);
+
+		/* Retrieve action combination perform by the 
+		 * agents of each conflict (and their contexts) */
+		for(Conflict conflict : conflicts) {
+			List<AgentContext> contexts = new ArrayList<AgentContext>();
+			Combination<AgentAction> ac = this.getActionCombination(
+					vTrans, conflict, contexts);
+
+			perception.conflictContexts.add(contexts);
+			perception.conflictActions.add(ac);
+		}
+		
+		/* Retrieve potential interactions */
+		perception.interactions = this.getPotentialInteractions(vTrans);
+		return perception;
+	}
+
 	/**
 	 * Performs conflict-based detection of new games that agents can play. 
 	 * This approach will work only in scenarios in which conflicting agents 
@@ -121,28 +285,23 @@ public class GamesManager {
 	 * scenario in which the agents responsible for a conflict may avoid being  
 	 * involved in a conflict after performing an action combination 
 	 * 
-	 * @param vTrans a perception (view) of the scenario
+	 * @param perception a perception (view) of the scenario
 	 */
-	private List<NormativeGame> detectNewGames(ViewTransition vTrans) {
+	private List<NormativeGame> detectNewGames(Perception perception) {
 		List<NormativeGame> newNormativeGames = new ArrayList<NormativeGame>();
 
-		Goal g = ensmSettings.getSystemGoals().get(0); // Single goal by now 
-		View pView = vTrans.getView(-1);
+		View pView = perception.vTrans.getView(-1);
 
 		Set<Game> games = new HashSet<Game>();
 		
-		/* Detect conflicts and create their games */
-		List<Conflict> conflicts = this.dmFunctions.getConflicts(g, vTrans);
-		
 		/* Create a new game for each detected conflict */
-		for(Conflict conflict : conflicts) {
+		for(int i=0; i<perception.conflictActions.size(); i++) {
 
 			/* Retrieve action combination perform by the agents 
 			 * (and their contexts). Then, update the conflict rate
 			 * of that action combination to 1 */
-			List<AgentContext> contexts = new ArrayList<AgentContext>();
-			Combination<AgentAction> ac = this.getActionCombination(
-					vTrans, conflict, contexts);
+			List<AgentContext> contexts = perception.conflictContexts.get(i);
+			Combination<AgentAction> ac = perception.conflictActions.get(i);
 
 			List<Combination<AgentAction>> combinations =
 					this.generateActionCombinations(contexts.size());
@@ -162,6 +321,7 @@ public class GamesManager {
 				 * corresponding normative game, and add the norms that 
 				 * can regulate the game */
 				this.ngNetwork.add(game);
+				game.setGamesPlayedCounter(this.numGamesPlayed);
 				games.add(game);
 
 				/* Create its corresponding normative game */
@@ -201,9 +361,8 @@ public class GamesManager {
 					/* Create a new combination in which an action 
 					 * for a new role has been added */
 					Combination<AgentAction> newCombination = 
-							new Combination<AgentAction>(combination);
+							new Combination<AgentAction>(combination, action);
 
-					newCombination.add(action);
 					newCombinations.add(newCombination);
 				}				
 			}
@@ -216,31 +375,37 @@ public class GamesManager {
 
 	/**
 	 * Checks pairwise combinations of agents in the view, checking 
-	 * if they have a joint context. In that case, it adds a new
-	 * interaction between the normative systems they abide by,
-	 * and updates their respective conflict ratio 
+	 * if they have a joint context. In that case, it adds the outcome
+	 * of the game they play (the actions they performed and their 
+	 * rewards) to the outcomes of the tick
 	 * 
-	 * @param vTrans
-	 * @param agentsWithAppNorms
+	 * @param pIdx the index of the perception in the current tick
+	 * @param perception
 	 */
-	private void updatePlayedGames(ViewTransition vTrans) {
-		List<EvolutionaryAgent> checkedAgents = new ArrayList<EvolutionaryAgent>();
+	private void updatePlayedGames(int pIdx, Perception perception) {
+		ViewTransition vTrans = perception.vTrans;
+		
+		/* Start a new epoch, so that no agent is assigned a game yet */
+		AgentStamps stamps = this.agentStamps.get();
+		stamps.newEpoch(this.population.size());
 
 		/* Retrieve potential interactions */
-		List<AgentInteraction> potentialInteractions = 
-				this.getPotentialInteractions(vTrans);
+		List<AgentInteraction> potentialInteractions = perception.interactions;
 
 		/* For each potential interaction, check whether there is a game that 
-		 * describes the interaction between its agents. If so, update the 
-		 * payoff matrix of the game */
-		for(AgentInteraction pInteraction : potentialInteractions) {
+		 * describes the interaction between its agents. If so, add the 
+		 * outcome of the game */
+		for(int i=0; i<potentialInteractions.size(); i++) {
+			AgentInteraction pInteraction = potentialInteractions.get(i);
 			List<EvolutionaryAgent> iAgents = pInteraction.getAgents();
 
 			/* Check that none of the agents has been already assigned a game */
 			boolean assigned = false;
 			for(EvolutionaryAgent agent : iAgents) {
-				if(checkedAgents.contains(agent)) {
+				int slot = this.population.getSlot(agent.getId());
+				if(stamps.isStamped(slot)) {
 					assigned = true;
+					break;
 				}
 			}
 
@@ -253,37 +418,101 @@ public class GamesManager {
 			/* Retrieve the game played by the agents */
 			Game game = this.retrieveGame(pInteraction.getContexts());
 
-			/* Continue if the game does exist (has been previously tracked) */
+			/* Continue if the game does exist (has been previously tracked),
+			 * and it was not detected in a later perception of the tick */
 			if(game == null) {
 				continue;
 			}
+			Integer detectedIn = this.newGamesPerceptions.get(game);
+			if(detectedIn != null && detectedIn > pIdx) {
+				continue;
+			}
 
-			/* Increase the number of times that any game has been played */
-			this.numGamesPlayed++;
-			
 			/* Set the agents as already playing a game */
-			checkedAgents.addAll(iAgents);
+			for(EvolutionaryAgent agent : iAgents) {
+				stamps.stamp(this.population.getSlot(agent.getId()));
+			}
+
+			/* Compute the outcome of the game based on the information 
+			 * tracked in the agent interaction. Outcomes are reduced in
+			 * the order of the perceptions and their interactions */
+			long order = ((long)pIdx << 32) | i;
+			this.outcomes.add(this.getOutcome(order, game, pInteraction, vTrans));
+		}
+	}
+
+	/**
+	 * Checks the games played in several perceptions concurrently
+	 * 
+	 * @param perceptions the perceptions of the current tick
+	 * @throws RuntimeException if checking a perception fails, or the
+	 * 					thread is interrupted while waiting for the checks
+	 */
+	private void updatePlayedGamesConcurrently(List<Perception> perceptions) {
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		
+		for(int p=0; p<perceptions.size(); p++) {
+			final int pIdx = p;
+			final Perception perception = perceptions.get(p);
+			
+			tasks.add(new Callable<Object>() {
+				@Override
+				public Object call() {
+					updatePlayedGames(pIdx, perception);
+					return null;
+				}
+			});
+		}
+		try {
+			for(Future<Object> future : this.executor.invokeAll(tasks)) {
+				future.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e) {
+			throw new RuntimeException("Checking the games played failed", 
+					e.getCause());
+		}
+	}
+
+	/**
+	 * Reduces the outcomes of the games played during the current tick 
+	 * into the payoffs of the games, in order
+	 */
+	private void commitOutcomes() {
+		for(Outcome outcome : this.outcomes.drain()) {
+			Game game = outcome.getGame();
+			
+			/* Increase the number of times that any game has been played */
+			this.numGamesPlayed.incrementAndGet();
 
 			/* Update the conflict ratio of the coordination game based on 
-			 * the information tracked in the agent interaction */
-			this.updatePayoff(game, pInteraction, vTrans);
+			 * the outcome of the game */
+			this.updatePayoff(outcome);
 
 			/* Add the game to the list of games played during the current tick 
 			 * (necessary for normative systems evaluation purposes) */
-			if(!this.gamesPlayedThisTick.contains(game)) {
+			int gameIdx = (int)game.getId();
+			if(gameIdx >= this.gameStamps.length) {
+				this.gameStamps = Arrays.copyOf(this.gameStamps, 
+						Math.max(gameIdx + 1, this.gameStamps.length * 2));
+			}
+			if(this.gameStamps[gameIdx] != this.tickEpoch) {
+				this.gameStamps[gameIdx] = this.tickEpoch;
 				this.gamesPlayedThisTick.add(game);
 			}
 
 			/* Update game metrics: increase the number of times 
 			 * the game has been played */
 			game.incTimesPlayed();
-		}
-		
-		/* Update the frequencies of each tracked game */
-		for(Game game : this.ngNetwork.getGames()) {
-			double gFreq = game.getNumTimesPlayed();
-			gFreq /= numGamesPlayed;
-			game.setFrequency(gFreq);
+
+			/* Track the last game played by each agent */
+			for(int role=0; role<outcome.getNumRoles(); role++) {
+				this.population.setLastGameId(outcome.getSlot(role), game.getId());
+			}
 		}
 	}
 
@@ -297,18 +526,22 @@ public class GamesManager {
 		 * which we need to check for agent interactions */
 		View pView = vTrans.getView(-1);
 
-		/* 1. First, retrieve a list with the agents to check */
-		List<EvolutionaryAgent> agents = this.getAgentsToCheck(vTrans);
+		/* 1. First, retrieve the slots of the agents to check, 
+		 * and their contexts (all of them at once) */
+		long[] agIds = this.getAgentsInView(vTrans);
+		int[] slots = this.getSlots(agIds);
+		AgentContext[] agContexts = new AgentContext[agIds.length];
+		this.dmFunctions.getContexts(agIds, pView, agContexts);
 
 		/* 2. Check pairwise interactions */
-		for(int i=0; i < agents.size(); i++) {
-			for(int j=i+1; j < agents.size(); j++) {
+		for(int i=0; i < slots.length; i++) {
+			for(int j=i+1; j < slots.length; j++) {
 
 				/* Get the pair of agents */
-				EvolutionaryAgent ag1 = agents.get(i);
-				EvolutionaryAgent ag2 = agents.get(j);
-				AgentContext ag1Context = dmFunctions.getContext(ag1.getId(), pView);
-				AgentContext ag2Context = dmFunctions.getContext(ag2.getId(), pView);
+				EvolutionaryAgent ag1 = this.population.getAgent(slots[i]);
+				EvolutionaryAgent ag2 = this.population.getAgent(slots[j]);
+				AgentContext ag1Context = agContexts[i];
+				AgentContext ag2Context = agContexts[j];
 
 				List<EvolutionaryAgent> iAgents = new ArrayList<EvolutionaryAgent>();
 				List<AgentContext> iContexts = new ArrayList<AgentContext>();
@@ -331,9 +564,9 @@ public class GamesManager {
 		}
 
 		/* 3. Check single interactions */
-		for(int i=0; i < agents.size(); i++) {
-			EvolutionaryAgent ag = agents.get(i);
-			AgentContext agContext = dmFunctions.getContext(ag.getId(), pView);
+		for(int i=0; i < slots.length; i++) {
+			EvolutionaryAgent ag = this.population.getAgent(slots[i]);
+			AgentContext agContext = agContexts[i];
 
 			if(agContext != null) {
 				AgentInteraction interaction = new AgentInteraction(ag, agContext);
@@ -345,16 +578,17 @@ public class GamesManager {
 
 
 	/**
-	 * Updates the conflict rate of a coordination game based on the 
+	 * Returns the outcome of a coordination game based on the 
 	 * information provided by the interaction between a group of agents 
 	 * that have just played the game
 	 * 
+	 * @param order the order in which the outcome must be reduced
 	 * @param game
 	 * @param interaction
 	 * @param vTrans
 	 */
-	private void updatePayoff(Game game, AgentInteraction interaction, 
-			ViewTransition vTrans) {
+	private Outcome getOutcome(long order, Game game, 
+			AgentInteraction interaction, ViewTransition vTrans) {
 
 		Goal g = ensmSettings.getSystemGoals().get(0); // Single goal by now 
 
@@ -363,26 +597,35 @@ public class GamesManager {
 		List<EvolutionaryAgent> agentsByRole = this.
 				sortAgentsByRole(game, interaction);
 
-		/* Retrieve the action combination performed by the 
-		 * agents playing the game */
-		List<AgentAction> pActions = new ArrayList<AgentAction>();
-		for(EvolutionaryAgent agent : agentsByRole) {
-			AgentAction action = this.dmFunctions.getAction( 
-					agent.getId(), vTrans).get(0);
+		/* Retrieve the action combination performed by the agents 
+		 * playing the game, and their rewards (all of them at once) */
+		long[] agIds = this.getIds(agentsByRole);
+		AgentAction[] pActions = new AgentAction[agIds.length];
+		double[] rewards = new double[agIds.length];
+		this.dmFunctions.getActions(agIds, vTrans, pActions);
+		this.dmFunctions.getRewards(vTrans, agIds, g, rewards);
+		
+		Combination<AgentAction> ac =	new Combination<AgentAction>(
+				Arrays.asList(pActions));
 
-			pActions.add(action);
-		}
-		Combination<AgentAction> ac =	new Combination<AgentAction>(pActions);
+		return new Outcome(order, game, ac, rewards, this.getSlots(agIds));
+	}
 
-		/* Compute and set the payoff */
-		for(int role=0; role<agentsByRole.size(); role++) {
+	/**
+	 * Updates the conflict rate of a coordination game based on the 
+	 * outcome of the game played by a group of agents
+	 * 
+	 * @param outcome the outcome of the game
+	 */
+	private void updatePayoff(Outcome outcome) {
+		Game game = outcome.getGame();
+		Combination<AgentAction> ac = outcome.getActionCombination();
 
-			/* Retrieve the agent and her id */
-			EvolutionaryAgent agent = agentsByRole.get(role);
-			long agId = agent.getId();
+		/* Compute and set the payoff */
+		for(int role=0; role<outcome.getNumRoles(); role++) {
 
 			/* Get the reward of the agent */
-			double reward = this.dmFunctions.getReward(vTrans, agId, g);
+			double reward = outcome.getReward(role);
 
 			/* Retrieve the necessary parameters and compute the new payoff */
 			double explorationRate = this.ensmSettings.getExplorationRate();
@@ -414,21 +657,24 @@ public class GamesManager {
 			Conflict conflict, List<AgentContext> contexts) {
 
 		View pView = vTrans.getView(-1);
-		List<Long> agIds = conflict.getConflictingAgents();
-		List<AgentAction> actions = new ArrayList<AgentAction>();
+		List<Long> conflictingAgIds = conflict.getConflictingAgents();
+		long[] agIds = new long[conflictingAgIds.size()];
+		for(int i=0; i<agIds.length; i++) {
+			agIds[i] = conflictingAgIds.get(i);
+		}
+		
+		AgentContext[] agContexts = new AgentContext[agIds.length];
+		AgentAction[] actions = new AgentAction[agIds.length];
 
 		/* Only if there is at least one conflicting agent */
-		if(!agIds.isEmpty()) {
+		if(agIds.length > 0) {
 
 			/* Retrieve agent contexts and create the game */
-			for(long agId : agIds) {
-				AgentContext context = this.dmFunctions.getContext(agId, pView);
-				AgentAction action = this.dmFunctions.getAction(agId, vTrans).get(0);
-				contexts.add(context);
-				actions.add(action);
-			}
+			this.dmFunctions.getContexts(agIds, pView, agContexts);
+			this.dmFunctions.getActions(agIds, vTrans, actions);
+			contexts.addAll(Arrays.asList(agContexts));
 		}
-		return new Combination<AgentAction>(actions);
+		return new Combination<AgentAction>(Arrays.asList(actions));
 	}
 
 	/**
@@ -440,11 +686,10 @@ public class GamesManager {
 
 		/* Create norms to regulate the behaviours 
 		 * of the players of the game */
-		List<Combination<Norm>> normCombinations =
-				this.normsGenerator.generateNormCombinations(game);
+		List<Norm> norms = this.normsGenerator.generateNorms(game);
 
-		/* Create normative game along with its normative profiles */
-		NormativeGame nGame = new NormativeGame(game, normCombinations);
+		/* Create normative game along with its (implicit) normative profiles */
+		NormativeGame nGame = new NormativeGame(game, norms);
 
 		/* Set the initial frequency of each norm of the game */
 		double numNorms = nGame.getNormSpace().size();
@@ -572,22 +817,31 @@ public class GamesManager {
 
 
 	/**
-	 * @param vTrans
+	 * Returns the slots of the agents with the given ids
+	 * 
+	 * @param agIds the ids of the agents
+	 * @return an array with the slot of each agent
 	 */
-	private List<EvolutionaryAgent> getAgentsToCheck(ViewTransition vTrans) {
-
-		/* Retrieve the id's of the agents in the view transition */
-		Set<Long> agentIds = this.getAgentsInView(vTrans);
-
-		/* Generate a set of agents that existed in previous state */
-		Set<EvolutionaryAgent> agents = new HashSet<EvolutionaryAgent>();
-		for(long agId : agentIds) {
-			EvolutionaryAgent agent = this.agentPopulation.get(agId);
-			agents.add(agent);	
+	private int[] getSlots(long[] agIds) {
+		int[] slots = new int[agIds.length];
+		for(int i=0; i<slots.length; i++) {
+			slots[i] = this.population.getSlot(agIds[i]);
 		}
+		return slots;
+	}
 
-		/* Return set as a list for access purposes */
-		return new ArrayList<EvolutionaryAgent>(agents);
+	/**
+	 * Returns the ids of a list of agents
+	 * 
+	 * @param agents the agents
+	 * @return an array with the id of each agent
+	 */
+	private long[] getIds(List<EvolutionaryAgent> agents) {
+		long[] ids = new long[agents.size()];
+		for(int i=0; i<ids.length; i++) {
+			ids[i] = agents.get(i).getId();
+		}
+		return ids;
 	}
 
 	/**
@@ -595,21 +849,85 @@ public class GamesManager {
 	 * @param vTrans
 	 * @return
 	 */
-	private Set<Long> getAgentsInView(ViewTransition vTrans) {
-		Set<Long> agentIds = new HashSet<Long>();
-
-		View pView = vTrans.getView(-1);
-		View view = vTrans.getView(0);
+	private long[] getAgentsInView(ViewTransition vTrans) {
 
 		/* Just check norm applicability for those agents that
 		 * exist in all views of the stream */
-		List<Long> pViewAgentIds = pView.getAgentIds();
-		List<Long> viewAgentIds = view.getAgentIds();
-		for(Long agentId : pViewAgentIds)	{
-			if(viewAgentIds.contains(agentId)) {
-				agentIds.add(agentId);	
+		return vTrans.getCommonAgentIds(-1, 0);
+	}
+
+	//---------------------------------------------------------------------------
+	// Inner classes
+	//---------------------------------------------------------------------------
+
+	/**
+	 * The conflicts and the potential agent interactions extracted 
+	 * from a view transition
+	 */
+	private static class Perception {
+		
+		/* The view transition */
+		private ViewTransition vTrans;
+		
+		/* Contexts and action combination of the agents of each conflict */
+		private List<List<AgentContext>> conflictContexts;
+		private List<Combination<AgentAction>> conflictActions;
+		
+		/* Potential interactions between the agents */
+		private List<AgentInteraction> interactions;
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param vTrans the view transition
+		 */
+		private Perception(ViewTransition vTrans) {
+			this.vTrans = vTrans;
+			this.conflictContexts = new ArrayList<List<AgentContext>>();
+			this.conflictActions = new ArrayList<Combination<AgentAction>>();
+		}
+	}
+
+	/**
+	 * Epoch stamps of the agents (by slot) of a thread, to track the agents 
+	 * that have been already assigned a game in a view transition
+	 */
+	private static class AgentStamps {
+		
+		private int[] stamps = new int[0];	// Stamp of each agent slot
+		private int epoch = 0;							// Current epoch
+		
+		/**
+		 * Starts a new epoch, in which no agent is stamped
+		 * 
+		 * @param numAgents the number of agents of the population
+		 */
+		private void newEpoch(int numAgents) {
+			this.epoch++;
+			if(this.stamps.length < numAgents) {
+				this.stamps = Arrays.copyOf(this.stamps, 
+						Math.max(numAgents, this.stamps.length * 2));
 			}
 		}
-		return agentIds;
+		
+		/**
+		 * Stamps an agent in the current epoch
+		 * 
+		 * @param slot the slot of the agent
+		 */
+		private void stamp(int slot) {
+			this.stamps[slot] = this.epoch;
+		}
+		
+		/**
+		 * Returns <tt>true</tt> if an agent has been stamped in the 
+		 * current epoch
+		 * 
+		 * @param slot the slot of the agent
+		 * @return <tt>true</tt> if the agent has been stamped
+		 */
+		private boolean isStamped(int slot) {
+			return this.stamps[slot] == this.epoch;
+		}
 	}
 }
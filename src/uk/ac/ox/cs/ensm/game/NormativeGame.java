@@ -11,12 +11,25 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import uk.ac.ox.cs.ensm.agent.AgentAction;
 import uk.ac.ox.cs.ensm.agent.AgentContext;
 import uk.ac.ox.cs.ensm.agent.Combination;
 import uk.ac.ox.cs.ensm.network.NGNNode;
 import uk.ac.ox.cs.ensm.norm.Norm;
 
 /**
+ * A normative game is a game whose players choose norms (rather than 
+ * actions) to coordinate in a coordination game. Any norm of the game 
+ * can be enacted by any role, and hence the norm combinations of the game
+ * are all the tuples of norms, one for each role. Norm combinations are
+ * not materialised: each norm combination is identified by an index in
+ * [0, numNorms^numRoles), whose digits in base numNorms are the indexes
+ * of the norms enacted by each role (the first role being the most
+ * significant digit), and the utilities of the norm combinations are
+ * kept in a dense array. The utilities, fitness and frequencies of the
+ * norms are kept in slices of arrays that may be shared with other games
+ * (see {@link #moveValues(double[], int, double[], double[], int)})
+ * 
  * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
  *
  */
@@ -28,14 +41,25 @@ public class NormativeGame implements NGNNode {
 	/** Context of each agent in the game */
 	private List<AgentContext> contexts;
 	
-	/** Utility matrix */
-	private AsymmetricPayoffMatrix<Norm> uMatrix;
-	
-	/** Norms' fitness */
-	private Map<Norm,Double> normsFitness;
-	
-	/** Norms' frequencies */
-	private Map<Norm,Double> normsFreqs;
+	/** Norms of the game, the index of each norm, and the (unmodifiable)
+	 * norm space of the game sorted by norm id */
+	private List<Norm> norms;
+	private Map<Norm,Integer> normIndexes;
+	private List<Norm> normSpace;
+
+	/** Action combination prescribed by each norm (by norm index), captured
+	 * once so that they can be read while the game keeps being played */
+	private List<Combination<AgentAction>> normsActionCombinations;
+
+	/** Number of roles and number of norm combinations */
+	private int numRoles;
+	private int numNormCombinations;
+
+	/** Utilities of the norm combinations, and fitness and frequencies
+	 * of the norms. Replaced as a whole when the values are moved, so that
+	 * other threads never see the arrays of a slice with the offsets 
+	 * of another */
+	private volatile Values values;
 	
 //	/** Norms' fitness */
 //	private Map<Norm,BigDecimal> normsFitness;
@@ -43,49 +67,224 @@ public class NormativeGame implements NGNNode {
 //	/** Norms' frequencies */
 //	private Map<Norm,BigDecimal> normsFreqs;
 
+	/* The convergence and freezing state of the game is written by the
+	 * thread that replicates norms and read by the simulation thread (e.g.,
+	 * to assign agents the norms of frozen games), hence it is volatile.
+	 * The norm of a frozen game is kept in a field of its own, so that
+	 * the simulation thread reads the frozen state and its norm at once */
+	
 	/** Did the game converge to a unique norm? */
-	private boolean converged;
+	private volatile boolean converged;
 
 	/** Norm to which the agent population has converged */
-	private Norm convergedNorm;
+	private volatile Norm convergedNorm;
+
+	/** Is the game frozen (excluded from replication)? */
+	private volatile boolean frozen;
+
+	/** Norm of the game while it is frozen ({@code null} otherwise) */
+	private volatile Norm frozenNorm;
+
+	/** Snapshot of the payoffs of the game when it was frozen (only
+	 * used by the thread that replicates norms) */
+	private Map<Combination<AgentAction>,double[]> frozenPayoffs;
+
+	/** Have the norms' frequencies changed since the last replication? */
+	private boolean freqsChanged;
 
 	/** Number of times that the norms of the game have been replicated */
 	private int numReplications;
 
 	/**
 	 * Constructor
+	 * 
+	 * @param game the game to regulate
+	 * @param norms the norms that can regulate the game
 	 */
-	public NormativeGame(Game game, List<Combination<Norm>> norms) {
+	public NormativeGame(Game game, List<Norm> norms) {
 		this.game = game;
 		this.numReplications = 0;
 		
-		this.normsFitness	= new HashMap<Norm,Double>();
-		this.normsFreqs  	= new HashMap<Norm,Double>();
+		/* Index the norms of the game */
+		this.norms = new ArrayList<Norm>(norms);
+		this.normIndexes = new HashMap<Norm,Integer>();
+		for(int i=0; i<this.norms.size(); i++) {
+			this.normIndexes.put(this.norms.get(i), i);
+		}
+		this.normsActionCombinations = new ArrayList<Combination<AgentAction>>();
+		for(Norm norm : this.norms) {
+			this.normsActionCombinations.add(norm.getActionCombination());
+		}
+		List<Norm> sortedNorms = new ArrayList<Norm>(this.norms);
+		Collections.sort(sortedNorms);
+		this.normSpace = Collections.unmodifiableList(sortedNorms);
 		
-		/* Generate utility matrix */
-		this.uMatrix = new AsymmetricPayoffMatrix<Norm>(norms);
+		/* Generate the (dense) utility matrix */
+		this.numRoles = game.getNumRoles();
+		long numNCs = 1;
+		for(int role=0; role<this.numRoles; role++) {
+			numNCs *= this.norms.size();
+		}
+		if(numNCs * this.numRoles > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many norm combinations (" + 
+					numNCs + ") in game " + game.getDescription());
+		}
+		this.numNormCombinations = (int)numNCs;
+		this.values = new Values(
+				new double[this.numNormCombinations * this.numRoles], 0,
+				new double[this.norms.size()], new double[this.norms.size()], 0);
 	}
 
 	/**
-	 * Returns the norm space of the normative game
+	 * Moves the utilities, fitness and frequencies of the game to slices
+	 * of (possibly shared) arrays, copying their current values. From then
+	 * on, the game reads and writes them there
 	 * 
-	 * @return a list with all the norms of the norm space of the game
+	 * @param utilities the array of the utilities, indexed from 
+	 * 				<tt>uOffset</tt> by (norm combination index * number of roles
+	 * 				+ role)
+	 * @param uOffset the offset of the utilities of the game
+	 * @param freqs the array of the frequencies, indexed from 
+	 * 				<tt>nOffset</tt> by norm index
+	 * @param fitness the array of the fitness, indexed from 
+	 * 				<tt>nOffset</tt> by norm index
+	 * @param nOffset the offset of the frequencies and fitness of the game
 	 */
-	public List<Norm> getNormSpace() {
-		List<Norm> norms = new ArrayList<Norm>(
-				this.uMatrix.getStrategySpace(0));
+	public void moveValues(double[] utilities, int uOffset, double[] freqs,
+			double[] fitness, int nOffset) {
+		
+		Values v = this.values;
+		int numNorms = this.norms.size();
+		System.arraycopy(v.utilities, v.uOffset, utilities, uOffset, 
+				this.numNormCombinations * this.numRoles);
+		System.arraycopy(v.freqs, v.nOffset, freqs, nOffset, numNorms);
+		System.arraycopy(v.fitness, v.nOffset, fitness, nOffset, numNorms);
 		
-		Collections.sort(norms);
-		return norms;
+		this.values = new Values(utilities, uOffset, freqs, fitness, nOffset);
+	}
+
+	/**
+	 * Returns the norm space of the normative game, sorted by norm id
+	 * 
+	 * @return an (unmodifiable) list with all the norms of the
+	 * 					norm space of the game
+	 */
+	public List<Norm> getNormSpace() {
+		return this.normSpace;
+	}
+
+	/**
+	 * Returns the number of norms of the game
+	 * 
+	 * @return the number of norms of the game
+	 */
+	public int getNumNorms() {
+		return this.norms.size();
+	}
+
+	/**
+	 * Returns the norm with a given index
+	 * 
+	 * @param index the index of the norm
+	 * @return the norm with the given index
+	 */
+	public Norm getNorm(int index) {
+		return this.norms.get(index);
+	}
+
+	/**
+	 * Returns the action combination prescribed by the norm with a given
+	 * index. Unlike {@link Norm#getActionCombination()}, it does not read 
+	 * the action combinations of the game, and hence it can be called 
+	 * while the game is being played in another thread
+	 * 
+	 * @param index the index of the norm
+	 * @return the action combination prescribed by the norm
+	 */
+	public Combination<AgentAction> getActionCombination(int index) {
+		return this.normsActionCombinations.get(index);
+	}
+
+	/**
+	 * Returns the index of a norm of the game
+	 * 
+	 * @param norm the norm
+	 * @return the index of the norm, or -1 if the norm is not in the game
+	 */
+	public int getNormIndex(Norm norm) {
+		Integer index = this.normIndexes.get(norm);
+		return index == null ? -1 : index;
 	}
 
 	/**
-	 * Returns all the possible norm combinations of the game
+	 * Returns the number of norm combinations of the game,
+	 * that is, numNorms^numRoles
+	 * 
+	 * @return the number of norm combinations of the game
+	 */
+	public int getNumNormCombinations() {
+		return this.numNormCombinations;
+	}
+
+	/**
+	 * Returns the index of the norm that a given role enacts
+	 * in a norm combination
+	 * 
+	 * @param nc the index of the norm combination
+	 * @param role the role
+	 * @return the index of the norm enacted by the role
+	 */
+	public int getNormIndex(int nc, int role) {
+		int numNorms = this.norms.size();
+		for(int r=this.numRoles-1; r>role; r--) {
+			nc /= numNorms;
+		}
+		return nc % numNorms;
+	}
+
+	/**
+	 * Returns all the possible norm combinations of the game. Note that
+	 * this materialises every norm combination, and hence it should only 
+	 * be used with small games. Otherwise, norm combinations should be
+	 * enumerated by their indexes
 	 * 
 	 * @return a list of all the possible norm combinations of the game
+	 * @see #getNumNormCombinations()
 	 */
 	public List<Combination<Norm>> getNormCombinations() {
-		return this.uMatrix.getCombinations();
+		List<Combination<Norm>> ncs = new ArrayList<Combination<Norm>>();
+		for(int nc=0; nc<this.numNormCombinations; nc++) {
+			List<Norm> norms = new ArrayList<Norm>(this.numRoles);
+			for(int role=0; role<this.numRoles; role++) {
+				norms.add(this.norms.get(this.getNormIndex(nc, role)));
+			}
+			ncs.add(new Combination<Norm>(norms));
+		}
+		return ncs;
+	}
+
+	/**
+	 * Returns the utility of a norm combination for a given role
+	 * 
+	 * @param numRole a given role 
+	 * @param nc the index of a norm combination 
+	 * @return the utility of a norm combination for a given role
+	 */
+	public double getUtility(int numRole, int nc) {
+		Values v = this.values;
+		return v.utilities[v.uOffset + nc * this.numRoles + numRole];
+	}
+
+	/**
+	 * Sets the utility of a norm combination for a given role
+	 * 
+	 * @param numRole a given role 
+	 * @param nc the index of a norm combination
+	 * @param utility the utility of the norm combination for the given role
+	 */
+	public void setUtility(int numRole, int nc, double utility) {
+		Values v = this.values;
+		v.utilities[v.uOffset + nc * this.numRoles + numRole] = utility;
 	}
 
 	/**
@@ -96,15 +295,7 @@ public class NormativeGame implements NGNNode {
 	 * @return the utility of a norm combination for a given role
 	 */
 	public double getUtility(int numRole, Combination<Norm> nc) {
-		if(this.getNumRoles() == 1) {
-			Norm n1 = nc.get(0);
-			return this.uMatrix.getPayoff(numRole, new Combination<Norm>(n1));
-		}
-		else {
-			Norm n1 = nc.get(0);
-			Norm n2 = nc.get(1);
-			return this.uMatrix.getPayoff(numRole, new Combination<Norm>(n1,n2));
-		}
+		return this.getUtility(numRole, this.getNormCombinationIndex(nc));
 	}
 
 	/**
@@ -115,7 +306,26 @@ public class NormativeGame implements NGNNode {
 	 * @param utility the utility of the norm combination for the given role
 	 */
 	public void setUtility(int numRole, Combination<Norm> nc, double utility) {
-		this.uMatrix.setPayoff(numRole, nc, utility);
+		this.setUtility(numRole, this.getNormCombinationIndex(nc), utility);
+	}
+
+	/**
+	 * Returns the index of a norm combination
+	 * 
+	 * @param nc the norm combination
+	 * @return the index of the norm combination
+	 */
+	public int getNormCombinationIndex(Combination<Norm> nc) {
+		int index = 0;
+		for(int role=0; role<this.numRoles; role++) {
+			int normIndex = this.getNormIndex(nc.get(role));
+			if(normIndex < 0) {
+				throw new IllegalArgumentException("Norm " + nc.get(role) + 
+						" does not belong to game " + this.getName());
+			}
+			index = index * this.norms.size() + normIndex;
+		}
+		return index;
 	}
 
 	/**
@@ -125,7 +335,18 @@ public class NormativeGame implements NGNNode {
 	 * @return the fitness of a norm
 	 */
 	public double getFitness(Norm norm) {
-		return this.normsFitness.get(norm);
+		return this.getFitness(this.indexOf(norm));
+	}
+
+	/**
+	 * Returns the fitness of the norm with a given index
+	 * 
+	 * @param n the index of the norm
+	 * @return the fitness of the norm
+	 */
+	public double getFitness(int n) {
+		Values v = this.values;
+		return v.fitness[v.nOffset + n];
 	}
 
 	/**
@@ -135,7 +356,8 @@ public class NormativeGame implements NGNNode {
 	 * @param payoff
 	 */
 	public void setFitness(Norm norm, double fitness) {
-		this.normsFitness.put(norm, fitness);
+		Values v = this.values;
+		v.fitness[v.nOffset + this.indexOf(norm)] = fitness;
 	}
 
 	/**
@@ -144,7 +366,18 @@ public class NormativeGame implements NGNNode {
 	 * @return
 	 */
 	public double getFrequency(Norm norm) {
-		return this.normsFreqs.get(norm);
+		return this.getFrequency(this.indexOf(norm));
+	}
+
+	/**
+	 * Returns the frequency of the norm with a given index
+	 * 
+	 * @param n the index of the norm
+	 * @return the frequency of the norm
+	 */
+	public double getFrequency(int n) {
+		Values v = this.values;
+		return v.freqs[v.nOffset + n];
 	}
 
 	/**
@@ -161,7 +394,45 @@ public class NormativeGame implements NGNNode {
 	 * @param freq
 	 */
 	public void setFrequency(Norm norm, double freq) {
-		this.normsFreqs.put(norm, freq);
+		Values v = this.values;
+		int n = v.nOffset + this.indexOf(norm);
+		if(v.freqs[n] != freq) {
+			v.freqs[n] = freq;
+			this.freqsChanged = true;
+		}
+	}
+
+	/**
+	 * Returns the index of a norm of the game, failing if the
+	 * norm is not in the game
+	 * 
+	 * @param norm the norm
+	 * @return the index of the norm
+	 */
+	private int indexOf(Norm norm) {
+		int index = this.getNormIndex(norm);
+		if(index < 0) {
+			throw new IllegalArgumentException("Norm " + norm + 
+					" does not belong to game " + this.getName());
+		}
+		return index;
+	}
+
+	/**
+	 * Returns <tt>true</tt> if the frequency of some norm of the game
+	 * has changed since the last time the game was replicated
+	 * 
+	 * @return <tt>true</tt> if the frequencies of the norms have changed
+	 */
+	public boolean haveFrequenciesChanged() {
+		return this.freqsChanged;
+	}
+
+	/**
+	 * Marks the frequencies of the norms of the game as unchanged
+	 */
+	public void clearFrequenciesChanged() {
+		this.freqsChanged = false;
 	}
 
 	/**
@@ -262,8 +533,8 @@ public class NormativeGame implements NGNNode {
 		/* Show fitness and frequencies of each norm*/
 		s += "\nFitness (and frequencies):\n"; 
 		for(Norm norm: this.getNormSpace()) {
-			double fitness = this.normsFitness.get(norm);
-			double freq = this.normsFreqs.get(norm);
+			double fitness = this.getFitness(norm);
+			double freq = this.getFrequency(norm);
 			
 			s += norm.getName() + ": " + df.format(fitness) +
 					"(" + df.format(freq) + ")\n";
@@ -309,6 +580,79 @@ public class NormativeGame implements NGNNode {
 		this.convergedNorm = norm;
 	}
 	
+	/**
+	 * Freezes the game once it has converged. A frozen game is not
+	 * replicated anymore, and every agent is assigned its converged norm.
+	 * The payoffs snapshot of the game is kept to detect whether
+	 * the payoffs drift afterwards
+	 */
+	public void freeze() {
+		this.frozenPayoffs = this.game.getPayoffsSnapshot();
+		this.frozenNorm = this.convergedNorm;
+		this.frozen = true;
+	}
+
+	/**
+	 * Unfreezes the game, so that its norms are replicated again
+	 * until the game converges again
+	 */
+	public void unfreeze() {
+		this.frozen = false;
+		this.frozenNorm = null;
+		this.converged = false;
+		this.convergedNorm = null;
+		this.frozenPayoffs = null;
+	}
+
+	/**
+	 * Returns <tt>true</tt> if the game is frozen
+	 * 
+	 * @return <tt>true</tt> if the game is frozen
+	 */
+	public boolean isFrozen() {
+		return this.frozen;
+	}
+
+	/**
+	 * Returns the norm that every agent is assigned while the game is 
+	 * frozen. Unlike checking {@link #isFrozen()} and then reading the 
+	 * converged norm, it cannot observe a game that is being unfrozen 
+	 * by another thread halfway
+	 * 
+	 * @return the norm of the game if it is frozen, or {@code null}
+	 * 					otherwise
+	 */
+	public Norm getFrozenNorm() {
+		return this.frozenNorm;
+	}
+
+	/**
+	 * Returns the maximum difference between the last payoffs snapshot of
+	 * the game and the snapshot it had when it was frozen. If the game has
+	 * new action combinations since then, the drift is infinite
+	 * 
+	 * @return the maximum payoff drift since the game was frozen
+	 */
+	public double getPayoffDrift() {
+		Map<Combination<AgentAction>,double[]> snapshot = 
+				this.game.getPayoffsSnapshot();
+		double drift = 0.0;
+
+		for(Combination<AgentAction> ac : snapshot.keySet()) {
+			double[] payoffs = this.frozenPayoffs.get(ac);
+			if(payoffs == null) {
+				return Double.POSITIVE_INFINITY;
+			}
+			for(int role=0; role<payoffs.length; role++) {
+				double diff = Math.abs(snapshot.get(ac)[role] - payoffs[role]);
+				if(diff > drift) {
+					drift = diff;
+				}
+			}
+		}
+		return drift;
+	}
+
 	/**
 	 * 
 	 */
@@ -323,4 +667,26 @@ public class NormativeGame implements NGNNode {
 	public int getNumReplications() {
 		return this.numReplications;
 	}
+
+	/**
+	 * The arrays (and offsets) where the utilities, fitness 
+	 * and frequencies of a normative game are kept
+	 */
+	private static class Values {
+		
+		private final double[] utilities;	// Utility of each (nc, role)
+		private final int uOffset;				// Offset of the utilities
+		private final double[] freqs;			// Frequency of each norm
+		private final double[] fitness;		// Fitness of each norm
+		private final int nOffset;				// Offset of freqs and fitness
+		
+		private Values(double[] utilities, int uOffset, double[] freqs,
+				double[] fitness, int nOffset) {
+			this.utilities = utilities;
+			this.uOffset = uOffset;
+			this.freqs = freqs;
+			this.fitness = fitness;
+			this.nOffset = nOffset;
+		}
+	}
 }
@@ -0,0 +1,179 @@
+/**
+ * 
+ * @author Javier Morales (javier.morales@cs.ox.ac.uk)
+ */
+package uk.ac.ox.cs.ensm.game;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import uk.ac.ox.cs.ensm.agent.AgentAction;
+import uk.ac.ox.cs.ensm.agent.Combination;
+
+/**
+ * Accumulates the outcomes of the games played during a tick, so that 
+ * they can be computed by several threads at once and then reduced into 
+ * the payoff matrices of the games by a single thread. Outcomes are added 
+ * to one of several stripes (depending on the thread that adds them), so 
+ * that threads seldom contend for the same lock. Each outcome is tagged
+ * with an order, and outcomes are drained in that order, so that payoffs
+ * are updated the same regardless of the threads that computed them
+ * 
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ */
+public class PayoffAccumulator {
+
+	//---------------------------------------------------------------------------
+	// Attributes
+	//---------------------------------------------------------------------------
+
+	private List<List<Outcome>> stripes;	// Outcomes added by each stripe
+
+	//---------------------------------------------------------------------------
+	// Methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Constructor
+	 * 
+	 * @param numStripes the number of stripes (e.g., the number of 
+	 * 					threads that add outcomes)
+	 */
+	public PayoffAccumulator(int numStripes) {
+		this.stripes = new ArrayList<List<Outcome>>();
+		for(int i=0; i<Math.max(numStripes, 1); i++) {
+			this.stripes.add(new ArrayList<Outcome>());
+		}
+	}
+
+	/**
+	 * Adds the outcome of a game. It can be called by several threads 
+	 * at once
+	 * 
+	 * @param outcome the outcome of the game
+	 */
+	public void add(Outcome outcome) {
+		int idx = (int)(Thread.currentThread().getId() % this.stripes.size());
+		List<Outcome> stripe = this.stripes.get(idx);
+		
+		synchronized(stripe) {
+			stripe.add(outcome);
+		}
+	}
+
+	/**
+	 * Removes all the outcomes added so far, and returns them sorted 
+	 * by their order
+	 * 
+	 * @return the outcomes added so far, sorted by their order
+	 */
+	public List<Outcome> drain() {
+		List<Outcome> outcomes = new ArrayList<Outcome>();
+		for(List<Outcome> stripe : this.stripes) {
+			synchronized(stripe) {
+				outcomes.addAll(stripe);
+				stripe.clear();
+			}
+		}
+		Collections.sort(outcomes);
+		return outcomes;
+	}
+
+	//---------------------------------------------------------------------------
+	// Inner classes
+	//---------------------------------------------------------------------------
+
+	/**
+	 * The outcome of a game played by a group of agents: the action 
+	 * combination they performed and the reward of each role 
+	 */
+	public static class Outcome implements Comparable<Outcome> {
+
+		private long order;													// Order of the outcome
+		private Game game;													// The game played
+		private Combination<AgentAction> ac;				// Actions performed
+		private double[] rewards;										// Reward of each role
+		private int[] slots;												// Agent slot of each role
+
+		/**
+		 * Constructor
+		 * 
+		 * @param order the order in which the outcome must be reduced
+		 * @param game the game played
+		 * @param ac the action combination performed by the agents
+		 * @param rewards the reward of each role
+		 * @param slots the slot of the agent that played each role
+		 */
+		public Outcome(long order, Game game, Combination<AgentAction> ac,
+				double[] rewards, int[] slots) {
+
+			this.order = order;
+			this.game = game;
+			this.ac = ac;
+			this.rewards = rewards;
+			this.slots = slots;
+		}
+
+		/**
+		 * Returns the game played
+		 * 
+		 * @return the game played
+		 */
+		public Game getGame() {
+			return this.game;
+		}
+
+		/**
+		 * Returns the action combination performed by the agents
+		 * 
+		 * @return the action combination performed by the agents
+		 */
+		public Combination<AgentAction> getActionCombination() {
+			return this.ac;
+		}
+
+		/**
+		 * Returns the reward of a role
+		 * 
+		 * @param role the role
+		 * @return the reward of the role
+		 */
+		public double getReward(int role) {
+			return this.rewards[role];
+		}
+
+		/**
+		 * Returns the slot of the agent that played a role
+		 * 
+		 * @param role the role
+		 * @return the slot of the agent that played the role
+		 */
+		public int getSlot(int role) {
+			return this.slots[role];
+		}
+
+		/**
+		 * Returns the number of roles of the outcome
+		 * 
+		 * @return the number of roles
+		 */
+		public int getNumRoles() {
+			return this.rewards.length;
+		}
+
+		/**
+		 * Compares two outcomes by their order
+		 */
+		@Override
+		public int compareTo(Outcome other) {
+			if(this.order < other.order) {
+				return -1;
+			}
+			else if(this.order > other.order) {
+				return 1;
+			}
+			return 0;
+		}
+	}
+}
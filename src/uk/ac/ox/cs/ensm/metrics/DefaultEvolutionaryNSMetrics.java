@@ -246,7 +246,7 @@ public class DefaultEvolutionaryNSMetrics implements EvolutionaryNSMetrics {
 		converged = this.isPolymorfic()? 2 : converged;
 
 		int numGames = this.ngNetwork.getGames().size();
-		int numNss = this.ngNetwork.getNormativeSystems().size();
+		long numNss = this.ngNetwork.getNumCreatedNormativeSystems();
 		int numGenNorms = this.ngNetwork.getNorms().size();
 		int numNormsConverged = -1;
 		
@@ -0,0 +1,771 @@
+package uk.ac.ox.cs.ensm.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.ac.ox.cs.ensm.network.edges.NetworkEdge;
+import uk.ac.ox.cs.ensm.network.edges.NetworkEdgeType;
+
+/**
+ * A compact multigraph whose vertices are identified by int ids and whose
+ * edges are stored in primitive arrays. Each edge keeps its source and
+ * destination, although adjacency is undirected (an edge is incident to
+ * both of its ends). Incident edges are indexed by edge type:
+ * <ol>
+ * <li>	a compressed (CSR-style) adjacency array for each edge type, that
+ * 			contains the incident edges of each vertex contiguously; and
+ * <li>	an append buffer for each edge type, that contains the edges added
+ * 			since the last time the adjacency arrays were rebuilt.
+ * </ol>
+ * Removed edges are marked as removed (tombstones) and skipped. Once the
+ * append buffers or the removed edges grow large, the graph is compacted:
+ * edges are renumbered and the adjacency arrays are rebuilt. Ids of
+ * removed vertices are reused
+ *
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ * @param <T> the type of the vertices
+ */
+public class CompactGraph<T> {
+
+	//---------------------------------------------------------------------------
+	// Static attributes
+	//---------------------------------------------------------------------------
+
+	private static final int NONE = -1;												// No vertex/edge
+	private static final int NUM_TYPES = NetworkEdgeType.values().length;
+	private static final int MIN_CAPACITY = 16;								// Initial array size
+	private static final int MIN_COMPACTION = 64;							// Min changes to compact
+
+	//---------------------------------------------------------------------------
+	// Attributes
+	//---------------------------------------------------------------------------
+
+	/* Vertices, indexed by id, and ids of removed vertices to reuse */
+	private Map<T,Integer> vertexIds;
+	private Object[] vertices;
+	private int[] degrees;
+	private int numVertexIds;
+	private int[] freeIds;
+	private int numFreeIds;
+
+	/* Edges, indexed by id. Removed edges have source NONE */
+	private Map<NetworkEdge,Integer> edgeIds;
+	private NetworkEdge[] edges;
+	private int[] edgeSources;
+	private int[] edgeDests;
+	private int[] edgeTypes;
+	private int numEdgeIds;
+	private int numRemovedEdges;
+
+	/* Compressed adjacency for each edge type. The incident edges of vertex v
+	 * are adjEdges[t][adjOffsets[t][v]] ... adjEdges[t][adjOffsets[t][v+1]-1] */
+	private int[][] adjOffsets;
+	private int[][] adjEdges;
+	private int numAdjVertices;
+
+	/* Append buffers. For each edge type and vertex, a linked list of the
+	 * incident edges added since the adjacency arrays were rebuilt */
+	private int[][] appendHeads;
+	private int[] appendEdges;
+	private int[] appendNext;
+	private int numAppends;
+
+	//---------------------------------------------------------------------------
+	// Methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Constructor
+	 */
+	public CompactGraph() {
+		this.vertexIds = new HashMap<T,Integer>();
+		this.vertices = new Object[MIN_CAPACITY];
+		this.degrees = new int[MIN_CAPACITY];
+		this.freeIds = new int[MIN_CAPACITY];
+
+		this.edgeIds = new IdentityHashMap<NetworkEdge,Integer>();
+		this.edges = new NetworkEdge[MIN_CAPACITY];
+		this.edgeSources = new int[MIN_CAPACITY];
+		this.edgeDests = new int[MIN_CAPACITY];
+		this.edgeTypes = new int[MIN_CAPACITY];
+
+		this.adjOffsets = new int[NUM_TYPES][1];
+		this.adjEdges = new int[NUM_TYPES][0];
+		this.appendHeads = new int[NUM_TYPES][MIN_CAPACITY];
+		for(int t=0; t<NUM_TYPES; t++) {
+			Arrays.fill(this.appendHeads[t], NONE);
+		}
+		this.appendEdges = new int[MIN_CAPACITY];
+		this.appendNext = new int[MIN_CAPACITY];
+	}
+
+	/**
+	 * Adds a vertex to the graph if it does not exist yet
+	 *
+	 * @param vertex the vertex to add
+	 * @return <tt>true</tt> if the vertex has been added
+	 */
+	public boolean addVertex(T vertex) {
+		if(this.vertexIds.containsKey(vertex)) {
+			return false;
+		}
+
+		int id;
+		if(this.numFreeIds > 0) {
+			id = this.freeIds[--this.numFreeIds];
+		}
+		else {
+			id = this.numVertexIds++;
+			this.ensureVertexCapacity(this.numVertexIds);
+		}
+		this.vertices[id] = vertex;
+		this.degrees[id] = 0;
+		this.vertexIds.put(vertex, id);
+		return true;
+	}
+
+	/**
+	 * Removes a vertex and all its incident edges from the graph
+	 *
+	 * @param vertex the vertex to remove
+	 * @return <tt>true</tt> if the vertex has been removed
+	 */
+	public boolean removeVertex(T vertex) {
+		Integer id = this.vertexIds.remove(vertex);
+		if(id == null) {
+			return false;
+		}
+
+		/* Remove incident edges */
+		EdgeCursor cursor = new EdgeCursor(id, 0, NUM_TYPES);
+		for(int e=cursor.next(); e!=NONE; e=cursor.next()) {
+			this.removeEdge(e);
+		}
+		for(int t=0; t<NUM_TYPES; t++) {
+			this.appendHeads[t][id] = NONE;
+		}
+
+		/* Free the id of the vertex, so that it can be reused */
+		this.vertices[id] = null;
+		if(this.numFreeIds == this.freeIds.length) {
+			this.freeIds = Arrays.copyOf(this.freeIds, this.freeIds.length * 2);
+		}
+		this.freeIds[this.numFreeIds++] = id;
+
+		this.compactIfNecessary();
+		return true;
+	}
+
+	/**
+	 * Returns <tt>true</tt> if the graph contains the vertex
+	 *
+	 * @param vertex the vertex
+	 * @return <tt>true</tt> if the graph contains the vertex
+	 */
+	public boolean containsVertex(T vertex) {
+		return this.vertexIds.containsKey(vertex);
+	}
+
+	/**
+	 * Returns the id of a vertex
+	 *
+	 * @param vertex the vertex
+	 * @return the id of the vertex, or -1 if the graph does not contain it
+	 */
+	public int getId(T vertex) {
+		Integer id = this.vertexIds.get(vertex);
+		return id == null ? NONE : id;
+	}
+
+	/**
+	 * Returns the vertex with a given id
+	 *
+	 * @param id the id of the vertex
+	 * @return the vertex, or {@code null} if there is no vertex with the id
+	 */
+	@SuppressWarnings("unchecked")
+	public T getVertex(int id) {
+		if(id < 0 || id >= this.numVertexIds) {
+			return null;
+		}
+		return (T)this.vertices[id];
+	}
+
+	/**
+	 * Returns an upper bound of the ids of the vertices of the graph
+	 *
+	 * @return an upper bound of the ids of the vertices
+	 */
+	public int getIdBound() {
+		return this.numVertexIds;
+	}
+
+	/**
+	 * Returns an (unmodifiable) view of the vertices of the graph
+	 *
+	 * @return the vertices of the graph
+	 */
+	public Collection<T> getVertices() {
+		return Collections.unmodifiableCollection(this.vertexIds.keySet());
+	}
+
+	/**
+	 * Returns the number of vertices of the graph
+	 *
+	 * @return the number of vertices of the graph
+	 */
+	public int getVertexCount() {
+		return this.vertexIds.size();
+	}
+
+	/**
+	 * Adds an edge from a vertex to another. The vertices are added
+	 * to the graph if they do not exist yet
+	 *
+	 * @param edge the edge
+	 * @param source the source of the edge
+	 * @param dest the destination of the edge
+	 * @return <tt>true</tt> if the edge has been added
+	 */
+	public boolean addEdge(NetworkEdge edge, T source, T dest) {
+		if(this.edgeIds.containsKey(edge)) {
+			return false;
+		}
+		this.addVertex(source);
+		this.addVertex(dest);
+
+		int src = this.vertexIds.get(source);
+		int dst = this.vertexIds.get(dest);
+		int type = edge.getType().ordinal();
+
+		int e = this.numEdgeIds++;
+		this.ensureEdgeCapacity(this.numEdgeIds);
+		this.edges[e] = edge;
+		this.edgeSources[e] = src;
+		this.edgeDests[e] = dst;
+		this.edgeTypes[e] = type;
+		this.edgeIds.put(edge, e);
+
+		/* Index the edge in the append buffers of both ends */
+		this.append(type, src, e);
+		this.degrees[src]++;
+		if(dst != src) {
+			this.append(type, dst, e);
+			this.degrees[dst]++;
+		}
+
+		this.compactIfNecessary();
+		return true;
+	}
+
+	/**
+	 * Removes an edge from the graph
+	 *
+	 * @param edge the edge to remove
+	 * @return <tt>true</tt> if the edge has been removed
+	 */
+	public boolean removeEdge(NetworkEdge edge) {
+		Integer e = this.edgeIds.get(edge);
+		if(e == null) {
+			return false;
+		}
+		this.removeEdge(e);
+		this.compactIfNecessary();
+		return true;
+	}
+
+	/**
+	 * Returns <tt>true</tt> if the graph contains the edge
+	 *
+	 * @param edge the edge
+	 * @return <tt>true</tt> if the graph contains the edge
+	 */
+	public boolean containsEdge(NetworkEdge edge) {
+		return this.edgeIds.containsKey(edge);
+	}
+
+	/**
+	 * Returns all the edges of the graph
+	 *
+	 * @return a list with all the edges of the graph
+	 */
+	public List<NetworkEdge> getEdges() {
+		List<NetworkEdge> ret = new ArrayList<NetworkEdge>(this.edgeIds.size());
+		for(int e=0; e<this.numEdgeIds; e++) {
+			if(this.edgeSources[e] != NONE) {
+				ret.add(this.edges[e]);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns the number of edges of the graph
+	 *
+	 * @return the number of edges of the graph
+	 */
+	public int getEdgeCount() {
+		return this.edgeIds.size();
+	}
+
+	/**
+	 * Returns the source of an edge
+	 *
+	 * @param edge the edge
+	 * @return the source of the edge, or {@code null} if the
+	 * 					graph does not contain the edge
+	 */
+	@SuppressWarnings("unchecked")
+	public T getSource(NetworkEdge edge) {
+		Integer e = this.edgeIds.get(edge);
+		return e == null ? null : (T)this.vertices[this.edgeSources[e]];
+	}
+
+	/**
+	 * Returns the destination of an edge
+	 *
+	 * @param edge the edge
+	 * @return the destination of the edge, or {@code null} if the
+	 * 					graph does not contain the edge
+	 */
+	@SuppressWarnings("unchecked")
+	public T getDest(NetworkEdge edge) {
+		Integer e = this.edgeIds.get(edge);
+		return e == null ? null : (T)this.vertices[this.edgeDests[e]];
+	}
+
+	/**
+	 * Returns the number of edges incident to a vertex
+	 *
+	 * @param vertex the vertex
+	 * @return the number of edges incident to the vertex
+	 */
+	public int getDegree(T vertex) {
+		int v = this.getId(vertex);
+		return v == NONE ? 0 : this.degrees[v];
+	}
+
+	/**
+	 * Returns the edges incident to a vertex
+	 *
+	 * @param vertex the vertex
+	 * @return the edges incident to the vertex
+	 */
+	public List<NetworkEdge> getIncidentEdges(T vertex) {
+		return this.collectEdges(vertex, null, NONE);
+	}
+
+	/**
+	 * Returns the edges of a type incident to a vertex
+	 *
+	 * @param vertex the vertex
+	 * @param type the type of the edges
+	 * @return the edges of the given type incident to the vertex
+	 */
+	public List<NetworkEdge> getIncidentEdges(T vertex, NetworkEdgeType type) {
+		return this.collectEdges(vertex, type, NONE);
+	}
+
+	/**
+	 * Returns the edges of a type whose source is a vertex
+	 *
+	 * @param vertex the vertex
+	 * @param type the type of the edges
+	 * @return the edges of the given type that start at the vertex
+	 */
+	public List<NetworkEdge> getOutEdges(T vertex, NetworkEdgeType type) {
+		return this.collectEdges(vertex, type, 0);
+	}
+
+	/**
+	 * Returns the edges of a type whose destination is a vertex
+	 *
+	 * @param vertex the vertex
+	 * @param type the type of the edges
+	 * @return the edges of the given type that finish at the vertex
+	 */
+	public List<NetworkEdge> getInEdges(T vertex, NetworkEdgeType type) {
+		return this.collectEdges(vertex, type, 1);
+	}
+
+	/**
+	 * Returns the destinations of the edges of a type whose source
+	 * is a vertex
+	 *
+	 * @param vertex the vertex
+	 * @param type the type of the edges
+	 * @return the vertices reached by the edges of the given type
+	 * 					that start at the vertex
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> getSuccessors(T vertex, NetworkEdgeType type) {
+		List<T> ret = new ArrayList<T>();
+		int v = this.getId(vertex);
+		if(v == NONE) {
+			return ret;
+		}
+
+		int t = type.ordinal();
+		EdgeCursor cursor = new EdgeCursor(v, t, t+1);
+		for(int e=cursor.next(); e!=NONE; e=cursor.next()) {
+			if(this.edgeSources[e] == v) {
+				ret.add((T)this.vertices[this.edgeDests[e]]);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns the sources of the edges of a type whose destination
+	 * is a vertex
+	 *
+	 * @param vertex the vertex
+	 * @param type the type of the edges
+	 * @return the vertices from which the edges of the given type
+	 * 					that finish at the vertex start
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> getPredecessors(T vertex, NetworkEdgeType type) {
+		List<T> ret = new ArrayList<T>();
+		int v = this.getId(vertex);
+		if(v == NONE) {
+			return ret;
+		}
+
+		int t = type.ordinal();
+		EdgeCursor cursor = new EdgeCursor(v, t, t+1);
+		for(int e=cursor.next(); e!=NONE; e=cursor.next()) {
+			if(this.edgeDests[e] == v) {
+				ret.add((T)this.vertices[this.edgeSources[e]]);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns the edges between two vertices, in any direction
+	 *
+	 * @param v1 a vertex
+	 * @param v2 another vertex
+	 * @return the edges between the two vertices
+	 */
+	public List<NetworkEdge> getEdges(T v1, T v2) {
+		List<NetworkEdge> ret = new ArrayList<NetworkEdge>();
+		int id1 = this.getId(v1);
+		int id2 = this.getId(v2);
+		if(id1 == NONE || id2 == NONE) {
+			return ret;
+		}
+
+		/* Traverse the edges of the vertex with the lowest degree */
+		int v = this.degrees[id1] <= this.degrees[id2] ? id1 : id2;
+		int o = v == id1 ? id2 : id1;
+
+		EdgeCursor cursor = new EdgeCursor(v, 0, NUM_TYPES);
+		for(int e=cursor.next(); e!=NONE; e=cursor.next()) {
+			if(this.getOpposite(e, v) == o) {
+				ret.add(this.edges[e]);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns an edge of a type between two vertices (in any direction)
+	 *
+	 * @param v1 a vertex
+	 * @param v2 another vertex
+	 * @param type the type of the edge
+	 * @return an edge of the given type between the two vertices,
+	 * 					or {@code null} if there is none
+	 */
+	public NetworkEdge findEdge(T v1, T v2, NetworkEdgeType type) {
+		int id1 = this.getId(v1);
+		int id2 = this.getId(v2);
+		if(id1 == NONE || id2 == NONE) {
+			return null;
+		}
+
+		int v = this.degrees[id1] <= this.degrees[id2] ? id1 : id2;
+		int o = v == id1 ? id2 : id1;
+		int t = type.ordinal();
+
+		EdgeCursor cursor = new EdgeCursor(v, t, t+1);
+		for(int e=cursor.next(); e!=NONE; e=cursor.next()) {
+			if(this.getOpposite(e, v) == o) {
+				return this.edges[e];
+			}
+		}
+		return null;
+	}
+
+	//---------------------------------------------------------------------------
+	// Private methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Collects the edges incident to a vertex
+	 *
+	 * @param vertex the vertex
+	 * @param type the type of the edges, or {@code null} for any type
+	 * @param direction 0 for outgoing edges, 1 for incoming edges,
+	 * 				or NONE for both
+	 * @return the edges
+	 */
+	private List<NetworkEdge> collectEdges(T vertex, NetworkEdgeType type,
+			int direction) {
+
+		List<NetworkEdge> ret = new ArrayList<NetworkEdge>();
+		int v = this.getId(vertex);
+		if(v == NONE) {
+			return ret;
+		}
+
+		int tFrom = type == null ? 0 : type.ordinal();
+		int tTo = type == null ? NUM_TYPES : tFrom + 1;
+
+		EdgeCursor cursor = new EdgeCursor(v, tFrom, tTo);
+		for(int e=cursor.next(); e!=NONE; e=cursor.next()) {
+			if(direction == NONE ||
+					(direction == 0 && this.edgeSources[e] == v) ||
+					(direction == 1 && this.edgeDests[e] == v)) {
+				ret.add(this.edges[e]);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns the end of an edge opposite to a vertex
+	 */
+	private int getOpposite(int e, int v) {
+		return this.edgeSources[e] == v ? this.edgeDests[e] : this.edgeSources[e];
+	}
+
+	/**
+	 * Marks an edge as removed
+	 */
+	private void removeEdge(int e) {
+		int src = this.edgeSources[e];
+		int dst = this.edgeDests[e];
+
+		this.edgeIds.remove(this.edges[e]);
+		this.edges[e] = null;
+		this.edgeSources[e] = NONE;
+		this.edgeDests[e] = NONE;
+		this.numRemovedEdges++;
+
+		this.degrees[src]--;
+		if(dst != src) {
+			this.degrees[dst]--;
+		}
+	}
+
+	/**
+	 * Appends an edge to the append buffer of a vertex for an edge type
+	 */
+	private void append(int type, int v, int e) {
+		if(this.numAppends == this.appendEdges.length) {
+			int capacity = this.appendEdges.length * 2;
+			this.appendEdges = Arrays.copyOf(this.appendEdges, capacity);
+			this.appendNext = Arrays.copyOf(this.appendNext, capacity);
+		}
+		int node = this.numAppends++;
+		this.appendEdges[node] = e;
+		this.appendNext[node] = this.appendHeads[type][v];
+		this.appendHeads[type][v] = node;
+	}
+
+	/**
+	 * Compacts the graph if the append buffers or the removed edges
+	 * are larger than the live edges of the graph
+	 */
+	private void compactIfNecessary() {
+		int numEdges = this.edgeIds.size();
+		if(this.numAppends > Math.max(numEdges, MIN_COMPACTION) ||
+				this.numRemovedEdges > Math.max(numEdges, MIN_COMPACTION)) {
+			this.compact();
+		}
+	}
+
+	/**
+	 * Renumbers the live edges contiguously and rebuilds the
+	 * compressed adjacency arrays, emptying the append buffers
+	 */
+	private void compact() {
+
+		/* 1. Renumber the live edges */
+		int numEdges = 0;
+		for(int e=0; e<this.numEdgeIds; e++) {
+			if(this.edgeSources[e] == NONE) {
+				continue;
+			}
+			if(numEdges != e) {
+				this.edges[numEdges] = this.edges[e];
+				this.edgeSources[numEdges] = this.edgeSources[e];
+				this.edgeDests[numEdges] = this.edgeDests[e];
+				this.edgeTypes[numEdges] = this.edgeTypes[e];
+				this.edgeIds.put(this.edges[numEdges], numEdges);
+			}
+			numEdges++;
+		}
+		Arrays.fill(this.edges, numEdges, this.numEdgeIds, null);
+		this.numEdgeIds = numEdges;
+		this.numRemovedEdges = 0;
+
+		/* 2. Count the incident edges of each vertex for each type */
+		int n = this.numVertexIds;
+		for(int t=0; t<NUM_TYPES; t++) {
+			this.adjOffsets[t] = new int[n + 1];
+		}
+		for(int e=0; e<numEdges; e++) {
+			int[] offsets = this.adjOffsets[this.edgeTypes[e]];
+			offsets[this.edgeSources[e] + 1]++;
+			if(this.edgeDests[e] != this.edgeSources[e]) {
+				offsets[this.edgeDests[e] + 1]++;
+			}
+		}
+
+		/* 3. Compute offsets (prefix sums) and fill adjacency arrays */
+		int[][] positions = new int[NUM_TYPES][];
+		for(int t=0; t<NUM_TYPES; t++) {
+			int[] offsets = this.adjOffsets[t];
+			for(int v=0; v<n; v++) {
+				offsets[v+1] += offsets[v];
+			}
+			this.adjEdges[t] = new int[offsets[n]];
+			positions[t] = Arrays.copyOf(offsets, n);
+		}
+		for(int e=0; e<numEdges; e++) {
+			int t = this.edgeTypes[e];
+			int src = this.edgeSources[e];
+			int dst = this.edgeDests[e];
+			this.adjEdges[t][positions[t][src]++] = e;
+			if(dst != src) {
+				this.adjEdges[t][positions[t][dst]++] = e;
+			}
+		}
+		this.numAdjVertices = n;
+
+		/* 4. Empty append buffers */
+		for(int t=0; t<NUM_TYPES; t++) {
+			Arrays.fill(this.appendHeads[t], NONE);
+		}
+		this.numAppends = 0;
+	}
+
+	/**
+	 * Ensures the vertex arrays can hold a number of vertex ids
+	 */
+	private void ensureVertexCapacity(int capacity) {
+		if(capacity <= this.vertices.length) {
+			return;
+		}
+		int newCapacity = Math.max(capacity, this.vertices.length * 2);
+		this.vertices = Arrays.copyOf(this.vertices, newCapacity);
+		this.degrees = Arrays.copyOf(this.degrees, newCapacity);
+
+		for(int t=0; t<NUM_TYPES; t++) {
+			int oldCapacity = this.appendHeads[t].length;
+			this.appendHeads[t] = Arrays.copyOf(this.appendHeads[t], newCapacity);
+			Arrays.fill(this.appendHeads[t], oldCapacity, newCapacity, NONE);
+		}
+	}
+
+	/**
+	 * Ensures the edge arrays can hold a number of edge ids
+	 */
+	private void ensureEdgeCapacity(int capacity) {
+		if(capacity <= this.edges.length) {
+			return;
+		}
+		int newCapacity = Math.max(capacity, this.edges.length * 2);
+		this.edges = Arrays.copyOf(this.edges, newCapacity);
+		this.edgeSources = Arrays.copyOf(this.edgeSources, newCapacity);
+		this.edgeDests = Arrays.copyOf(this.edgeDests, newCapacity);
+		this.edgeTypes = Arrays.copyOf(this.edgeTypes, newCapacity);
+	}
+
+	//---------------------------------------------------------------------------
+	// Inner classes
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Iterates over the live edges incident to a vertex for a range of edge
+	 * types, first those in the adjacency arrays and then those in the
+	 * append buffers. The graph must not be modified during the iteration
+	 *
+	 * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+	 */
+	private class EdgeCursor {
+
+		private int v;			// The vertex
+		private int t;			// Current edge type
+		private int tTo;		// Last edge type (exclusive)
+		private int pos;		// Position in the adjacency array
+		private int end;		// End of the vertex range in the adjacency array
+		private int node;		// Current node of the append buffer
+
+		/**
+		 * Constructor
+		 *
+		 * @param v the id of the vertex
+		 * @param tFrom the first edge type (inclusive)
+		 * @param tTo the last edge type (exclusive)
+		 */
+		EdgeCursor(int v, int tFrom, int tTo) {
+			this.v = v;
+			this.tTo = tTo;
+			this.t = tFrom - 1;
+			this.nextType();
+		}
+
+		/**
+		 * Returns the next live edge, or NONE if there are no more edges
+		 */
+		int next() {
+			while(this.t < this.tTo) {
+				while(this.pos < this.end) {
+					int e = adjEdges[this.t][this.pos++];
+					if(edgeSources[e] != NONE) {
+						return e;
+					}
+				}
+				while(this.node != NONE) {
+					int e = appendEdges[this.node];
+					this.node = appendNext[this.node];
+					if(edgeSources[e] != NONE) {
+						return e;
+					}
+				}
+				this.nextType();
+			}
+			return NONE;
+		}
+
+		/**
+		 * Moves to the next edge type
+		 */
+		private void nextType() {
+			this.t++;
+			if(this.t >= this.tTo) {
+				return;
+			}
+			if(this.v < numAdjVertices) {
+				this.pos = adjOffsets[this.t][this.v];
+				this.end = adjOffsets[this.t][this.v + 1];
+			}
+			else {
+				this.pos = 0;
+				this.end = 0;
+			}
+			this.node = appendHeads[this.t][this.v];
+		}
+	}
+}
@@ -1,13 +1,19 @@
 package uk.ac.ox.cs.ensm.network;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import uk.ac.ox.cs.ensm.EvolutionaryNSM;
 import uk.ac.ox.cs.ensm.network.edges.GeneralisationRelationship;
-import uk.ac.ox.cs.ensm.network.edges.NetworkEdge;
 import uk.ac.ox.cs.ensm.network.edges.NetworkEdgeType;
 
 /**
@@ -24,6 +30,11 @@ import uk.ac.ox.cs.ensm.network.edges.NetworkEdgeType;
  * <li>	the generalisation level of each node in the network, which stands
  * 			for the height of the node in the generalisation graph
  * </ol>
+ * The network keeps an index of the ancestors of each node (a bit set of
+ * node ids) that is updated each time a generalisation relationship is
+ * added or removed, so that checking whether a node is an ancestor of
+ * another, or whether a node is represented, does not need to traverse
+ * the network
  * 
  * @author "Javier Morales (jmorales@iiia.csic.es)"
  * @param <T>
@@ -36,10 +47,13 @@ public class GeneralisationNetwork<T> extends UndirectedNodesNetwork<T> {
 	
 	private Map<T,Integer> genLevels;								// generalisation levels
 
-	private List<T> activeNodes;
-	private List<T> inactiveNodes;
-	private List<T> representedNodes;
-	private List<T> notRepresentedNodes;
+	private BitSet[] ancestors;											// ancestors of each node (by id)
+	private BitSet activeIds;												// ids of the active nodes
+	
+	private Set<T> activeNodes;
+	private Set<T> inactiveNodes;
+	private Set<T> representedNodes;
+	private Set<T> notRepresentedNodes;
 	
 	//---------------------------------------------------------------------------
 	// Methods
@@ -51,10 +65,12 @@ public class GeneralisationNetwork<T> extends UndirectedNodesNetwork<T> {
 	public GeneralisationNetwork(EvolutionaryNSM ensm) {
 		super(ensm);
 		this.genLevels = new HashMap<T, Integer>();
-		this.activeNodes = new ArrayList<T>();
-		this.inactiveNodes = new ArrayList<T>();
-		this.representedNodes = new ArrayList<T>();
-		this.notRepresentedNodes = new ArrayList<T>();
+		this.ancestors = new BitSet[0];
+		this.activeIds = new BitSet();
+		this.activeNodes = new LinkedHashSet<T>();
+		this.inactiveNodes = new LinkedHashSet<T>();
+		this.representedNodes = new LinkedHashSet<T>();
+		this.notRepresentedNodes = new LinkedHashSet<T>();
 	}
 
 	/**
@@ -67,8 +83,42 @@ public class GeneralisationNetwork<T> extends UndirectedNodesNetwork<T> {
 		/* Set the generalisation level of the node and add it to the network */
 		this.genLevels.put(node, 1); 
 		super.add(node);
+		
+		int id = this.graph.getId(node);
+		this.ensureAncestorsCapacity(id + 1);
+		if(this.ancestors[id] == null) {
+			this.ancestors[id] = new BitSet();
+		}
 	}
 	
+	/**
+	 * Removes a given {@code node} from the network, and updates the
+	 * ancestors of its descendants
+	 * 
+	 * @param node the node to remove
+	 */
+	public void remove(T node) {
+		int id = this.graph.getId(node);
+		if(id < 0) {
+			return;
+		}
+		List<T> descendants = this.getDescendants(node, false);
+		
+		super.remove(node);
+		this.ancestors[id] = null;
+		this.activeIds.clear(id);
+		this.genLevels.remove(node);
+		
+		this.activeNodes.remove(node);
+		this.inactiveNodes.remove(node);
+		this.representedNodes.remove(node);
+		this.notRepresentedNodes.remove(node);
+		
+		this.rebuildAncestors(descendants);
+		for(T descendant : descendants) {
+			this.recomputeControlLists(descendant);
+		}
+	}
 	
 	/**
 	 * 
@@ -84,9 +134,22 @@ public class GeneralisationNetwork<T> extends UndirectedNodesNetwork<T> {
 		int parentGenLevel = this.genLevels.get(parent);
 		this.genLevels.put(parent, Math.max((childGenLevel+1), parentGenLevel));
 		
+		/* The parent and its ancestors become ancestors 
+		 * of the child and of all its descendants */
+		int parentId = this.graph.getId(parent);
+		BitSet newAncestors = (BitSet)this.ancestors[parentId].clone();
+		newAncestors.set(parentId);
+		
+		List<T> descendants = this.getDescendants(child, true);
+		for(T descendant : descendants) {
+			this.ancestors[this.graph.getId(descendant)].or(newAncestors);
+		}
+		
 		/* Recompute control lists in case the set of 
 		 * active/inactive/represented norms have changed */
-		this.recomputeControlLists(child);
+		for(T descendant : descendants) {
+			this.recomputeControlLists(descendant);
+		}
 	}
 	
 	/**
@@ -96,17 +159,45 @@ public class GeneralisationNetwork<T> extends UndirectedNodesNetwork<T> {
 	 */
 	public void removeGeneralisation(T child, T parent) {
 		super.removeRelationship(child, parent, NetworkEdgeType.Generalisation);
+		
+		/* The child and its descendants may have lost some ancestors */
+		List<T> descendants = this.getDescendants(child, true);
+		this.rebuildAncestors(descendants);
+		for(T descendant : descendants) {
+			this.recomputeControlLists(descendant);
+		}
 	}
 	
 	/**
 	 * 
 	 */
 	public void setState(T node, NetworkNodeState state) {
+		int id = this.graph.getId(node);
+		if(id < 0) {
+			return;
+		}
+		boolean wasActive = this.activeIds.get(id);
+		boolean isActive = state == NetworkNodeState.Active;
+		
 		super.setState(node, state);
+		if(isActive) {
+			this.activeIds.set(id);
+		}
+		else {
+			this.activeIds.clear(id);
+		}
 		
 		/* Recompute control lists in case the set of 
-		 * active/inactive/represented norms have changed */
-		this.recomputeControlLists(node);
+		 * active/inactive/represented norms have changed. If the node 
+		 * has been (de)activated, its descendants may have changed as well */
+		if(wasActive != isActive) {
+			for(T descendant : this.getDescendants(node, true)) {
+				this.recomputeControlLists(descendant);
+			}
+		}
+		else {
+			this.recomputeControlLists(node);	
+		}
 	}
 
 	/**
@@ -122,22 +213,10 @@ public class GeneralisationNetwork<T> extends UndirectedNodesNetwork<T> {
 	 * 					with the given {@code node}
 	 */
 	public List<T> getParents(T node) {
-		List<T> parents = new ArrayList<T>();
-
-		/* The node has no parents (no outgoing generalisation relationships) */
-		if(this.graph.getOutEdges(node) == null) {
-			return parents;
-		}
-		/* Check relationships with other nodes */
-		for(NetworkEdge edge : this.graph.getOutEdges(node)) {
-			
-			/* If it is a generalisation relationship, retrieve
-			 * its destination (the parent, general node) */ 
-			if(edge.getType() == NetworkEdgeType.Generalisation) {
-				parents.add(this.graph.getDest(edge));
-			}
-		}
-		return parents;
+		
+		/* Retrieve the destinations of the outgoing generalisation 
+		 * relationships of the node (its parent, general nodes) */ 
+		return this.graph.getSuccessors(node, NetworkEdgeType.Generalisation);
 	}
 
 	/**
@@ -153,23 +232,10 @@ public class GeneralisationNetwork<T> extends UndirectedNodesNetwork<T> {
 	 * 					with the given {@code node}
 	 */
 	public List<T> getChildren(T node) {
-		List<T> children = new ArrayList<T>();
-
-		/* The node has no children (no incoming generalisation relationships) */
-		if(this.graph.getInEdges(node) == null) {
-			return children;
-		}
 
-		/* Check relationships with other nodes */
-		for(NetworkEdge edge : this.graph.getInEdges(node))	 {
-			
-			/* If it is a generalisation relationship, retrieve
-			 * its source (the child, specific node) */ 
-			if(edge.getType() == NetworkEdgeType.Generalisation) {
-				children.add(this.graph.getSource(edge));
-			}
-		}
-		return children;
+		/* Retrieve the sources of the incoming generalisation 
+		 * relationships of the node (its children, specific nodes) */ 
+		return this.graph.getPredecessors(node, NetworkEdgeType.Generalisation);
 	}
 	
 
@@ -184,22 +250,22 @@ public class GeneralisationNetwork<T> extends UndirectedNodesNetwork<T> {
 	 * 				that are children of the node's parents
 	 */
 	public List<T> getBrothers(T node) {
-		List<T> brothers = new ArrayList<T>();
+		Set<T> brothers = new LinkedHashSet<T>();
 		List<T> parents = this.getParents(node);
+		int genLevel = this.getGeneralisationLevel(node);
 
 		for(T parent : parents) {
 			List<T> children = this.getChildren(parent);
 			
 			for(T child : children) {
-				if(!child.equals(node) && !brothers.contains(child)
-						&& this.getGeneralisationLevel(node) == 
-						this.getGeneralisationLevel(child)) {
+				if(!child.equals(node) && 
+						genLevel == this.getGeneralisationLevel(child)) {
 					
 					brothers.add(child);
 				}
 			}
 		}
-		return brothers;
+		return new ArrayList<T>(brothers);
 	}
 
 	/**
@@ -213,18 +279,18 @@ public class GeneralisationNetwork<T> extends UndirectedNodesNetwork<T> {
 	 * 				those nodes that are children of the node's parents
 	 */
 	public List<T> getBrothers(T node, T parent) {
-		List<T> brothers = new ArrayList<T>();
+		Set<T> brothers = new LinkedHashSet<T>();
 		List<T> children = this.getChildren(parent);
+		int genLevel = this.getGeneralisationLevel(node);
 		
 		for(T child : children) {
-			if(!child.equals(node) && !brothers.contains(child)
-					&& this.getGeneralisationLevel(node) == 
-					this.getGeneralisationLevel(child)) {
+			if(!child.equals(node) && 
+					genLevel == this.getGeneralisationLevel(child)) {
 				
 				brothers.add(child);
 			}
 		}
-		return brothers;
+		return new ArrayList<T>(brothers);
 	}
 	
 	/**
@@ -246,47 +312,51 @@ public class GeneralisationNetwork<T> extends UndirectedNodesNetwork<T> {
 	}
 	
 	/**
-	 * Returns a {@code List} of the norms that are active in the network
+	 * Returns an (unmodifiable) {@code Set} of the norms that are active
+	 * in the network
 	 * 
-	 * @return a {@code List} of the norms that are active in the network
+	 * @return a {@code Set} of the norms that are active in the network
 	 */
-	public List<T> getActiveNodes() {
-		return this.activeNodes;
+	public Set<T> getActiveNodes() {
+		return Collections.unmodifiableSet(this.activeNodes);
 	}
 
 	/**
-	 * Returns a {@code List} of the norms that are inactive in the network
+	 * Returns an (unmodifiable) {@code Set} of the norms that are inactive
+	 * in the network
 	 * 
-	 * @return a {@code List} of the norms that are inactive in the network
+	 * @return a {@code Set} of the norms that are inactive in the network
 	 */
-	public List<T> getInactiveNodes() {
-		return this.inactiveNodes;
+	public Set<T> getInactiveNodes() {
+		return Collections.unmodifiableSet(this.inactiveNodes);
 	}
 	
 	/**
-	 * Returns a {@code List} of all the norms that whether are active
-	 * in the network or are inactive but represented by an active norm.
+	 * Returns an (unmodifiable) {@code Set} of all the norms that whether
+	 * are active in the network or are inactive but represented by an
+	 * active norm.
 	 * 
-	 * @return a {@code List} of all the norms that whether are active
+	 * @return a {@code Set} of all the norms that whether are active
 	 * 					in the network or are inactive but represented by an
 	 * 					active norm
 	 */
-	public List<T> getRepresentedNodes() {
-		return this.representedNodes;
+	public Set<T> getRepresentedNodes() {
+		return Collections.unmodifiableSet(this.representedNodes);
 	}
 	
 	/**
-	 * Returns a {@code List} of all the norms that are not represented
-	 * in the normative network. That is, those norms that are inactive
-	 * in the normative network and all its ancestors are inactive as well
+	 * Returns an (unmodifiable) {@code Set} of all the norms that are not
+	 * represented in the normative network. That is, those norms that are
+	 * inactive in the normative network and all its ancestors are inactive
+	 * as well
 	 * 
-	 * @return a {@code List} of all the norms that are not represented
+	 * @return a {@code Set} of all the norms that are not represented
 	 * 					in the normative network. That is, those norms that are inactive
 	 *			 		in the normative network and all its ancestors are
 	 *					inactive as well
 	 */
-	public List<T> getNotRepresentedNodes() {
-		return this.notRepresentedNodes;
+	public Set<T> getNotRepresentedNodes() {
+		return Collections.unmodifiableSet(this.notRepresentedNodes);
 	}
 	
 	/**
@@ -317,19 +387,12 @@ public class GeneralisationNetwork<T> extends UndirectedNodesNetwork<T> {
 	 * or it is inactive but some of its ancestors are active in the network
 	 */
 	public boolean isRepresented(T node) {
-		if(this.getState(node) == NetworkNodeState.Active) {
-			return true;
-		}
-		else {
-			List<T> parents = this.getParents(node);
-			
-			for(T parent : parents) {
-				if(this.isRepresented(parent)) {
-					return true;
-				}
-			}
+		int id = this.graph.getId(node);
+		if(id < 0) {
+			return false;
 		}
-		return false;
+		return this.activeIds.get(id) || 
+				this.ancestors[id].intersects(this.activeIds);
 //		NetworkNodeState state = this.getState(node);
 //		
 //		return state == NetworkNodeState.ACTIVE || 
@@ -337,22 +400,20 @@ public class GeneralisationNetwork<T> extends UndirectedNodesNetwork<T> {
 	}
 	
 	/**
+	 * Returns <tt>true</tt> if {@code ancestor} generalises the given
+	 * {@code node}, whether directly or through other nodes
 	 * 
-	 * @param ancestor
-	 * @param norm
-	 * @return
+	 * @param ancestor the candidate ancestor
+	 * @param node the node
+	 * @return <tt>true</tt> if {@code ancestor} is an ancestor of the node
 	 */
 	public boolean isAncestor(T ancestor, T node) {
-		List<T> parents = this.getParents(node);
-		for(T parent : parents) {
-			if(parent.equals(ancestor)) {
-				return true;
-			}
-			else {
-				return this.isAncestor(ancestor, parent);
-			}
+		int ancestorId = this.graph.getId(ancestor);
+		int id = this.graph.getId(node);
+		if(ancestorId < 0 || id < 0) {
+			return false;
 		}
-		return false;
+		return this.ancestors[id].get(ancestorId);
 	}
 
 	/**
@@ -367,6 +428,10 @@ public class GeneralisationNetwork<T> extends UndirectedNodesNetwork<T> {
 		return this.getChildren(node).size() <= 0;
 	}
 	
+	//---------------------------------------------------------------------------
+	// Private methods
+	//---------------------------------------------------------------------------
+	
 	/**
 	 * 
 	 */
@@ -374,29 +439,99 @@ public class GeneralisationNetwork<T> extends UndirectedNodesNetwork<T> {
 		NetworkNodeState state = this.getState(node);
 		
 		if(state == NetworkNodeState.Active) {
-			if(!this.activeNodes.contains(node)) {
-				this.activeNodes.add(node);	
-			}
+			this.activeNodes.add(node);	
 			this.inactiveNodes.remove(node);
 		}
 		else {
-			if(!this.inactiveNodes.contains(node)) {
-				this.inactiveNodes.add(node);	
-			}
+			this.inactiveNodes.add(node);	
 			this.activeNodes.remove(node);
 		}
 		
 		if(this.isRepresented(node)) {
-			if(!this.representedNodes.contains(node)) {
-				this.representedNodes.add(node);	
-			}
+			this.representedNodes.add(node);	
 			this.notRepresentedNodes.remove(node);
 		}
 		else {
-			if(!this.notRepresentedNodes.contains(node)) {
-				this.notRepresentedNodes.add(node);	
-			}
+			this.notRepresentedNodes.add(node);	
 			this.representedNodes.remove(node);
 		}
 	}
+	
+	/**
+	 * Returns the descendants of a node (the nodes it generalises,
+	 * whether directly or through other nodes) in breadth-first order
+	 * 
+	 * @param node the node
+	 * @param includeNode whether to include the node itself in the list
+	 * @return the descendants of the node
+	 */
+	private List<T> getDescendants(T node, boolean includeNode) {
+		List<T> descendants = new ArrayList<T>();
+		BitSet visited = new BitSet();
+		LinkedList<T> pending = new LinkedList<T>();
+		
+		visited.set(this.graph.getId(node));
+		pending.add(node);
+		if(includeNode) {
+			descendants.add(node);
+		}
+		
+		while(!pending.isEmpty()) {
+			for(T child : this.getChildren(pending.poll())) {
+				int childId = this.graph.getId(child);
+				if(!visited.get(childId)) {
+					visited.set(childId);
+					pending.add(child);
+					descendants.add(child);
+				}
+			}
+		}
+		return descendants;
+	}
+	
+	/**
+	 * Recomputes the ancestors of the given nodes from the ancestors
+	 * of their parents. The ancestors of any other node must be up to date
+	 * 
+	 * @param nodes the nodes whose ancestors must be recomputed
+	 */
+	private void rebuildAncestors(List<T> nodes) {
+		Set<T> pending = new HashSet<T>(nodes);
+		for(T node : nodes) {
+			this.rebuildAncestors(node, pending);
+		}
+	}
+	
+	/**
+	 * Recomputes the ancestors of a node (and those of its pending
+	 * ancestors) and returns them
+	 * 
+	 * @param node the node
+	 * @param pending the nodes whose ancestors have not been recomputed yet
+	 * @return the ancestors of the node
+	 */
+	private BitSet rebuildAncestors(T node, Set<T> pending) {
+		int id = this.graph.getId(node);
+		if(pending.remove(node)) {
+			BitSet nodeAncestors = new BitSet();
+			for(T parent : this.getParents(node)) {
+				nodeAncestors.or(this.rebuildAncestors(parent, pending));
+				nodeAncestors.set(this.graph.getId(parent));
+			}
+			this.ancestors[id] = nodeAncestors;
+		}
+		return this.ancestors[id];
+	}
+	
+	/**
+	 * Grows the ancestors index to hold the given number of node ids
+	 * 
+	 * @param capacity the number of node ids
+	 */
+	private void ensureAncestorsCapacity(int capacity) {
+		if(capacity > this.ancestors.length) {
+			int newCapacity = Math.max(capacity, this.ancestors.length * 2);
+			this.ancestors = Arrays.copyOf(this.ancestors, newCapacity);
+		}
+	}
 }
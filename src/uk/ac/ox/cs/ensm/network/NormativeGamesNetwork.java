@@ -5,15 +5,21 @@
 package uk.ac.ox.cs.ensm.network;
 
 import java.math.BigDecimal;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import uk.ac.ox.cs.ensm.EvolutionaryNSM;
 import uk.ac.ox.cs.ensm.game.Game;
+import uk.ac.ox.cs.ensm.game.GameValidityListener;
 import uk.ac.ox.cs.ensm.game.NormCombination;
 import uk.ac.ox.cs.ensm.game.NormativeGame;
 import uk.ac.ox.cs.ensm.network.edges.ConcurrencyRelationship;
@@ -43,7 +49,8 @@ import uk.ac.ox.cs.ensm.ns.NormativeSystem;
  * @see NormativeSystem
  * @see NSFitness
  */
-public class NormativeGamesNetwork extends UndirectedNodesNetwork<NGNNode> {
+public class NormativeGamesNetwork extends UndirectedNodesNetwork<NGNNode> 
+implements GameValidityListener {
 
 	//---------------------------------------------------------------------------
 	// Static attributes
@@ -65,10 +72,34 @@ public class NormativeGamesNetwork extends UndirectedNodesNetwork<NGNNode> {
 	private Map<String,Game>						gamesIndexedByDesc;
 	private Map<Long,Norm> 							normsIndex;
 	
-	/* Frequency of each normative profile */
+	/* Frequency of each normative profile (norms may be replicated
+	 * in a different thread than the one that creates them) */
 	private Map<Norm, Double> normFrequencies;
 	private Map<NormCombination, Double> npFrequencies;
 	
+	/* Read-only lists of games, normative games and valid normative games.
+	 * Lists are rebuilt (never modified) when the games change, so callers 
+	 * may keep them (e.g., in another thread) while new games are added */
+	private long gamesVersion;										// Version of the games
+	private long gamesListVersion;								// Version of the lists
+	private long validityVersion;									// Version of games validity
+	private long validListVersion;								// Version of the valid list
+	private List<Game> gamesList;
+	private List<NormativeGame> nGamesList;
+	private List<NormativeGame> validNGamesList;
+	
+	/* Active normative systems and norms, indexed by id */
+	private Map<Long,NormativeSystem> activeNSs;
+	private Map<Long,Norm> activeNorms;
+	
+	/* Retention of inactive normative systems. Each time a normative system
+	 * becomes inactive, it is queued along with the round in which it did */
+	private int nsRetentionRounds;								// Rounds before eviction
+	private long numRounds;												// Rounds so far
+	private Deque<NormativeSystem> inactiveNSs;		// Deactivated NSs (FIFO)
+	private Deque<Long> inactiveNSsRounds;				// Round of each deactivation
+	private Map<Long,Long> deactivationRounds;		// Last deactivation of each NS
+	private long numEvictedNSs;										// Number of evicted NSs
 
 	//---------------------------------------------------------------------------
 	// Methods
@@ -87,8 +118,23 @@ public class NormativeGamesNetwork extends UndirectedNodesNetwork<NGNNode> {
 		
 		this.gamesIndexedByDesc = new HashMap<String,Game>();
 		
-		this.normFrequencies 	= new HashMap<Norm,Double>();
+		this.normFrequencies 	= new ConcurrentHashMap<Norm,Double>();
 		this.npFrequencies 		= new HashMap<NormCombination,Double>();
+		
+		this.gamesVersion = 0;
+		this.gamesListVersion = -1;
+		this.validityVersion = 0;
+		this.validListVersion = -1;
+		
+		this.activeNSs 		= new LinkedHashMap<Long,NormativeSystem>();
+		this.activeNorms 	= new LinkedHashMap<Long,Norm>();
+		
+		this.nsRetentionRounds = ensmSettings.getNormativeSystemsRetentionRounds();
+		this.numRounds = 0;
+		this.inactiveNSs = new ArrayDeque<NormativeSystem>();
+		this.inactiveNSsRounds = new ArrayDeque<Long>();
+		this.deactivationRounds = new HashMap<Long,Long>();
+		this.numEvictedNSs = 0;
 	}
 
 	/**
@@ -115,6 +161,10 @@ public class NormativeGamesNetwork extends UndirectedNodesNetwork<NGNNode> {
 			}
 			this.gamesIndex.put(node.getId(), game);
 			this.gamesIndexedByDesc.put(game.getDescription(), game);
+			this.gamesVersion++;
+			
+			/* Keep track of the games that become (in)valid */
+			game.addValidityListener(this);
 		}
 
 		else if(node instanceof NormativeGame) {
@@ -128,6 +178,7 @@ public class NormativeGamesNetwork extends UndirectedNodesNetwork<NGNNode> {
 					new GNGRelationship(game, nGame));
 
 			this.nGamesIndex.put(game.getId(), nGame);
+			this.gamesVersion++;
 		}
 
 		/* Norm settings */
@@ -180,53 +231,124 @@ public class NormativeGamesNetwork extends UndirectedNodesNetwork<NGNNode> {
 	}
 
 	/**
-	 * Sets the state of a norm to the given state in the normative
-	 * network, and updates the omega function to update
-	 * the normative system
+	 * Sets the state of a node to the given state in the normative
+	 * network, and keeps track of the active normative systems and norms
 	 * 
-	 * @param norm the norm to activate
-	 * @see OmegaFunction
+	 * @param node the node
+	 * @param state the new state of the node
+	 */
+	@Override
+	public void setState(NGNNode node, NetworkNodeState state) {
+		if(!this.contains(node)) {
+			return;
+		}
+		NetworkNodeState prevState = this.getState(node);
+		super.setState(node, state);
+		
+		if(node instanceof NormativeSystem) {
+			NormativeSystem ns = (NormativeSystem)node;
+			if(state == NetworkNodeState.Active) {
+				this.activeNSs.put(ns.getId(), ns);
+				this.deactivationRounds.remove(ns.getId());
+			}
+			else if(prevState == NetworkNodeState.Active) {
+				this.activeNSs.remove(ns.getId());
+				
+				/* Queue the normative system for eviction */
+				if(this.nsRetentionRounds >= 0) {
+					this.inactiveNSs.addLast(ns);
+					this.inactiveNSsRounds.addLast(this.numRounds);
+					this.deactivationRounds.put(ns.getId(), this.numRounds);
+				}
+			}
+		}
+		else if(node instanceof Norm) {
+			Norm norm = (Norm)node;
+			if(state == NetworkNodeState.Active) {
+				this.activeNorms.put(norm.getId(), norm);
+			}
+			else {
+				this.activeNorms.remove(norm.getId());
+			}
+		}
+	}
+	
+	/**
+	 * Sets the state of a normative system to the given state
+	 * in the normative network
+	 * 
+	 * @param ns the normative system
+	 * @param state the new state of the normative system
 	 */
 	public void setState(NormativeSystem ns, NetworkNodeState state) {
-		super.setState(ns, state);
+		this.setState((NGNNode)ns, state);
 	}
 
 	/**
-	 * Returns the {@code List} of all the norms in the network
+	 * Returns an (unmodifiable) {@code List} of all the games in the network.
+	 * The list is not updated when new games are added
 	 * 
-	 * @return the {@code List} of all the norms in the network
+	 * @return the {@code List} of all the games in the network
 	 */
 	public List<Game> getGames() {
-		return new ArrayList<Game>(this.gamesIndex.values());
+		this.updateGamesLists();
+		return this.gamesList;
 	}
 
 	/**
-	 * @param game
-	 * @return
+	 * Returns an (unmodifiable) {@code List} of all the normative games in
+	 * the network. The list is not updated when new games are added
+	 * 
+	 * @return the {@code List} of all the normative games in the network
 	 */
 	public List<NormativeGame> getNormativeGames() {
-		List<NormativeGame> nGames = new ArrayList<NormativeGame>();
-		for(Game game : this.getGames()) {
-			nGames.add(this.getNormativeGame(game));
-		}
-		return nGames;
+		this.updateGamesLists();
+		return this.nGamesList;
 	}
 
 	/**
-	 * Returns a list of the normative games with enough information
-	 * to assess their utility and replicate their norms 
+	 * Returns an (unmodifiable) list of the normative games with enough
+	 * information to assess their utility and replicate their norms. The 
+	 * list is not updated when new games are added or become valid
 	 * 
-	 * @param game
-	 * @return
+	 * @return the normative games with enough information to be replicated
 	 */
 	public List<NormativeGame> getValidNormativeGames() {
-		List<NormativeGame> nGames = new ArrayList<NormativeGame>();
-		for(Game game : this.getGames()) {
-			if(game.isValid()) {
-				nGames.add(this.getNormativeGame(game));
+		this.updateGamesLists();
+		
+		/* Rebuild the list only if the validity of some game has changed */
+		if(this.validListVersion != this.validityVersion) {
+			List<NormativeGame> validNGames = new ArrayList<NormativeGame>();
+			for(int i=0; i<this.gamesList.size(); i++) {
+				if(this.gamesList.get(i).isValid()) {
+					validNGames.add(this.nGamesList.get(i));
+				}
 			}
+			this.validNGamesList = Collections.unmodifiableList(validNGames);
+			this.validListVersion = this.validityVersion;
 		}
-		return nGames;
+		return this.validNGamesList;
+	}
+	
+	/**
+	 * Invoked when a game of the network becomes valid (or invalid), 
+	 * so that the list of valid normative games is rebuilt
+	 * 
+	 * @param game the game whose validity has changed
+	 */
+	@Override
+	public void validityChanged(Game game) {
+		this.validityVersion++;
+	}
+	
+	/**
+	 * Returns the version of the games of the network, which increases 
+	 * each time a game or normative game is added to the network
+	 * 
+	 * @return the version of the games of the network
+	 */
+	public long getGamesVersion() {
+		return this.gamesVersion;
 	}
 
 	/**
@@ -246,20 +368,32 @@ public class NormativeGamesNetwork extends UndirectedNodesNetwork<NGNNode> {
 		return new ArrayList<NormativeSystem>(this.nsIndex.values());
 	}
 
+	/**
+	 * Returns the number of normative systems created so far, including
+	 * those that have been evicted from the network
+	 * 
+	 * @return the number of normative systems created so far
+	 */
+	public long getNumCreatedNormativeSystems() {
+		return this.NS_COUNT;
+	}
+	
+	/**
+	 * Returns the number of normative systems that have been evicted
+	 * from the network after being inactive for too long
+	 * 
+	 * @return the number of evicted normative systems
+	 */
+	public long getNumEvictedNormativeSystems() {
+		return this.numEvictedNSs;
+	}
+	
 	/**
 	 * 
 	 * @return
 	 */
 	public List<NormativeSystem> getActiveNormativeSystems() {
-		List<NormativeSystem> activeNSs = new ArrayList<NormativeSystem>();
-		List<NormativeSystem> nss = this.getNormativeSystems();
-
-		for(NormativeSystem ns : nss) {
-			if(this.getState(ns) == NetworkNodeState.Active) {
-				activeNSs.add(ns);
-			}
-		}
-		return activeNSs;
+		return new ArrayList<NormativeSystem>(this.activeNSs.values());
 	}
 
 	/**
@@ -267,26 +401,20 @@ public class NormativeGamesNetwork extends UndirectedNodesNetwork<NGNNode> {
 	 * @return
 	 */
 	public List<Norm> getActiveNorms() {
-		List<Norm> activeNorms = new ArrayList<Norm>();
-		List<Norm> norms = this.getNorms();
-
-		for(Norm ns : norms) {
-			if(this.getState(ns) == NetworkNodeState.Active) {
-				activeNorms.add(ns);
-			}
-		}
-		return activeNorms;
+		return new ArrayList<Norm>(this.activeNorms.values());
 	}
 
 	/**
+	 * Returns the normative systems followed by at least one agent. Only
+	 * active normative systems may have followers, since followers are
+	 * reset once a normative system becomes inactive
 	 * 
 	 * @return
 	 */
 	public List<NormativeSystem> getFollowedNormativeSystems() {
 		List<NormativeSystem> followedNSs = new ArrayList<NormativeSystem>();
-		List<NormativeSystem> nss = this.getNormativeSystems();
 
-		for(NormativeSystem ns : nss) {
+		for(NormativeSystem ns : this.activeNSs.values()) {
 			if(ns.getNumFollowers() > 0) {
 				followedNSs.add(ns);
 			}
@@ -483,18 +611,24 @@ public class NormativeGamesNetwork extends UndirectedNodesNetwork<NGNNode> {
 	}
 
 	/**
-	 * 
+	 * Deactivates the active normative systems and norms to start a new
+	 * round of normative systems, and evicts those normative systems that
+	 * have been inactive for too long
 	 */
 	public void clearNormativeSystems() {
-		for(NormativeSystem ns : this.getNormativeSystems()) {
+		this.numRounds++;
+		
+		for(NormativeSystem ns : this.getActiveNormativeSystems()) {
 			this.setState(ns, NetworkNodeState.Inactive);
 			ns.setFrequency(BigDecimal.ZERO);
 			ns.resetNumFollowers();
 		}
 
-		for(Norm norm : this.getNorms()) {
+		for(Norm norm : this.getActiveNorms()) {
 			this.setState(norm, NetworkNodeState.Inactive);
 		}
+		
+		this.evictInactiveNormativeSystems();
 	}
 
 	/**
@@ -553,4 +687,54 @@ public class NormativeGamesNetwork extends UndirectedNodesNetwork<NGNNode> {
 		return matches;
 	}
 
+	//---------------------------------------------------------------------------
+	// Private methods
+	//---------------------------------------------------------------------------
+	
+	/**
+	 * Rebuilds the lists of games and normative games if some game has
+	 * been added since they were last built
+	 */
+	private void updateGamesLists() {
+		if(this.gamesListVersion == this.gamesVersion) {
+			return;
+		}
+		List<Game> games = new ArrayList<Game>(this.gamesIndex.values());
+		List<NormativeGame> nGames = new ArrayList<NormativeGame>();
+		for(Game game : games) {
+			nGames.add(this.getNormativeGame(game));
+		}
+		this.gamesList = Collections.unmodifiableList(games);
+		this.nGamesList = Collections.unmodifiableList(nGames);
+		this.gamesListVersion = this.gamesVersion;
+		
+		/* New games may be valid already */
+		this.validityVersion++;
+	}
+	
+	/**
+	 * Removes from the network (along with their relationships) the
+	 * normative systems that have not been active during the last rounds.
+	 * Only their ids are kept, since ids are never reused
+	 */
+	private void evictInactiveNormativeSystems() {
+		while(!this.inactiveNSs.isEmpty() && this.numRounds - 
+				this.inactiveNSsRounds.peekFirst() >= this.nsRetentionRounds) {
+			
+			NormativeSystem ns = this.inactiveNSs.pollFirst();
+			long round = this.inactiveNSsRounds.pollFirst();
+			
+			/* Skip normative systems that have been activated again
+			 * (and perhaps deactivated in a later round) */
+			Long lastRound = this.deactivationRounds.get(ns.getId());
+			if(lastRound == null || lastRound != round) {
+				continue;
+			}
+			
+			this.deactivationRounds.remove(ns.getId());
+			this.nsIndex.remove(ns.getDescription());
+			this.remove(ns);
+			this.numEvictedNSs++;
+		}
+	}
 }
@@ -295,22 +295,10 @@ public class NormativeNetwork extends GeneralisationNetwork<Norm> {
 	 * @return
 	 */
 	public List<Norm> getSubstitutableNorms(Norm norm) {
-		List<Norm> ret = new ArrayList<Norm>();
 		
-		/* The node has no parents (no outgoing generalisation relationships) */
-		if(this.graph.getOutEdges(norm) == null) {
-			return ret;
-		}
-		/* Check relationships with other nodes */
-		for(NetworkEdge edge : this.graph.getOutEdges(norm)) {
-			
-			/* If it is a generalisation relationship, retrieve
-			 * its destination (the parent, general node) */ 
-			if(edge.getType() == NetworkEdgeType.Substitutability) {
-				ret.add(this.graph.getDest(edge));
-			}
-		}
-		return ret;
+		/* Retrieve the destinations of the outgoing 
+		 * substitutability relationships of the norm */ 
+		return this.graph.getSuccessors(norm, NetworkEdgeType.Substitutability);
 	}
 	
 //	/**
@@ -401,7 +389,7 @@ public class NormativeNetwork extends GeneralisationNetwork<Norm> {
 			return null;
 		}
 		norm = this.retrieveNorm(norm);
-		return this.states.get(norm);
+		return super.getState(norm);
 	}
 	
 	/**
@@ -485,19 +473,11 @@ public class NormativeNetwork extends GeneralisationNetwork<Norm> {
 			return false;
 		}
 		norm = this.retrieveNorm(norm);
-		
-		List<Norm> parents = this.getParents(norm);
-		for(Norm parent : parents) {
-			if(parent.equals(ancestor)) {
-				return true;
-			}
-			else {
-				if(this.isAncestor(ancestor, parent)) {
-					return true;
-				}
-			}
+		ancestor = this.retrieveNorm(ancestor);
+		if(ancestor == null) {
+			return false;
 		}
-		return false;
+		return super.isAncestor(ancestor, norm);
 	}
 	
 	/**
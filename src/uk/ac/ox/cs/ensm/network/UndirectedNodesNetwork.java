@@ -1,12 +1,9 @@
 package uk.ac.ox.cs.ensm.network;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
-import edu.uci.ics.jung.graph.UndirectedSparseMultigraph;
 import sun.text.normalizer.Utility;
 import uk.ac.ox.cs.ensm.EvolutionaryNSM;
 import uk.ac.ox.cs.ensm.config.EvolutionaryNSMSettings;
@@ -40,11 +37,11 @@ public class UndirectedNodesNetwork<T> {
 	protected EvolutionaryNSM ensm;							// the norm synthesis machine
 	protected EvolutionaryNSMSettings ensmSettings;		// the norm synthesis settings
 	
-	protected UndirectedSparseMultigraph<T, NetworkEdge> graph;		// graph of nodes	
+	protected CompactGraph<T> graph;							// graph of nodes	
 	
 //	protected Map<T,T> index;											// index of nodes
-	protected Map<T,NetworkNodeState> states;			// state of each node
-	protected Map<T,SlidingValueWindow> nsFitness;						// utilities of each node
+	protected NetworkNodeState[] states;					// state of each node (by id)
+	protected SlidingValueWindow[] nsFitness;			// utilities of each node (by id)
 	
 	//---------------------------------------------------------------------------
 	// Methods
@@ -58,9 +55,9 @@ public class UndirectedNodesNetwork<T> {
 		this.ensmSettings = nsm.getSettings();		
 		
 //		this.index = new HashMap<T,T>();
-		this.graph = new UndirectedSparseMultigraph<T,NetworkEdge>();
-		this.states = new HashMap<T, NetworkNodeState>();
-		this.nsFitness = new HashMap<T, SlidingValueWindow>();
+		this.graph = new CompactGraph<T>();
+		this.states = new NetworkNodeState[0];
+		this.nsFitness = new SlidingValueWindow[0];
 	}
 
 	/**
@@ -69,13 +66,15 @@ public class UndirectedNodesNetwork<T> {
 	 * @param node the node to add
 	 */
 	public void add(T node) {
-		if(!this.graph.containsVertex(node)) {
-			this.graph.addVertex(node);
+		if(this.graph.addVertex(node)) {
+			int id = this.graph.getId(node);
+			this.ensureCapacity(id + 1);
 			
 			/* Set node utility */
 			int fitnessRangeSz = ensmSettings.getNSFitnessRangeSize();
 			SlidingValueWindow fitness = new SlidingValueWindow(fitnessRangeSz);
-			this.nsFitness.put(node, fitness);
+			this.nsFitness[id] = fitness;
+			this.states[id] = null;
 		}
 	}
 
@@ -85,15 +84,19 @@ public class UndirectedNodesNetwork<T> {
 	 * @param node the node to remove
 	 */
 	public void remove(T node) {
-		if(this.graph.containsVertex(node)) {
+		int id = this.graph.getId(node);
+		if(id >= 0) {
 			this.graph.removeVertex(node);
+			this.nsFitness[id] = null;
+			this.states[id] = null;
 		}
 	}	
 
 	/**
 	 * Adds a relationship between a node {@code nA} and a node
 	 * {@code nB}, in the direction nA to nB, just in case
-	 * the relationship does not exist yet
+	 * the relationship does not exist yet. Nodes that are not in the
+	 * network yet are added first, so that they have a state and a fitness
 	 * 
 	 * @param nA the child node
 	 * @param nB the parent node
@@ -101,6 +104,12 @@ public class UndirectedNodesNetwork<T> {
 	 * @see NetworkEdgeType
 	 */
 	protected void addRelationship(T nA, T nB, NetworkEdge edge) {
+		if(!this.graph.containsVertex(nA)) {
+			this.add(nA);
+		}
+		if(!this.graph.containsVertex(nB)) {
+			this.add(nB);
+		}
 		this.graph.addEdge(edge, nA, nB);
 	}
 	
@@ -113,16 +122,10 @@ public class UndirectedNodesNetwork<T> {
 	 * @param nB the parent node
 	 */
 	protected void removeRelationship(T nA, T nB, NetworkEdgeType type) {
-		List<NetworkEdge> remove = new ArrayList<NetworkEdge>();
-		
-		for(NetworkEdge edge : this.graph.getIncidentEdges(nA)) {
-			if(edge.getType() == type &&
-					this.graph.getIncidentVertices(edge).contains(nB))	{
-				remove.add(edge);
-			}
-		}
-		for(NetworkEdge edge: remove) {
+		NetworkEdge edge = this.graph.findEdge(nA, nB, type);
+		while(edge != null) {
 			this.graph.removeEdge(edge);
+			edge = this.graph.findEdge(nA, nB, type);
 		}
 	}
 	
@@ -135,14 +138,7 @@ public class UndirectedNodesNetwork<T> {
 	 * @param nB the parent node
 	 */
 	protected void removeRelationships(T nA, T nB) {
-		List<NetworkEdge> remove = new ArrayList<NetworkEdge>();
-		
-		for(NetworkEdge edge : this.graph.getIncidentEdges(nA)) {
-			if(this.graph.getIncidentVertices(edge).contains(nB)) {
-				remove.add(edge);
-			}
-		}
-		for(NetworkEdge edge: remove) {
+		for(NetworkEdge edge: this.graph.getEdges(nA, nB)) {
 			this.graph.removeEdge(edge);
 		}
 	}
@@ -162,10 +158,19 @@ public class UndirectedNodesNetwork<T> {
 	 * @return
 	 */
 	public List<NetworkEdge> getRelationships(T node) {
-		List<NetworkEdge> edges = new ArrayList<NetworkEdge>(
-				this.graph.getIncidentEdges(node));
-		
-		return edges;
+		return this.graph.getIncidentEdges(node);
+	}
+
+	/**
+	 * Returns a {@code List} of the network edges (that is, the relationships)
+	 * of a given {@code type} of a node
+	 * 
+	 * @param node the node
+	 * @param type the type of the relationships
+	 * @return the relationships of the given type of the node
+	 */
+	public List<NetworkEdge> getRelationships(T node, NetworkEdgeType type) {
+		return this.graph.getIncidentEdges(node, type);
 	}
 	
 	/**
@@ -179,23 +184,7 @@ public class UndirectedNodesNetwork<T> {
 	 * 					at node {@code node2}
 	 */
 	public List<NetworkEdge> getRelationships(T node1, T node2) {
-		List<NetworkEdge> edges = new ArrayList<NetworkEdge>();
-		Collection<NetworkEdge> incEdges = this.graph.getIncidentEdges(node1);
-		
-		for(NetworkEdge edge : incEdges) {
-			
-			List<T> incdVertices = new ArrayList<T>(
-					this.graph.getIncidentVertices(edge));
-			
-			T nd1 = incdVertices.get(0);
-			T nd2 = incdVertices.get(1);
-			
-			if((nd1.equals(node1) && nd2.equals(node2)) || 
-					(nd1.equals(node2) && nd2.equals(node1))) {
-				edges.add(edge);
-			}
-		}
-		return edges;
+		return this.graph.getEdges(node1, node2);
 	}
 	
 	/**
@@ -206,7 +195,7 @@ public class UndirectedNodesNetwork<T> {
 	 * @see Utility
 	 */
 	public double getFitness(T node) {
-		return this.nsFitness.get(node).getCurrentPunctualValue();
+		return this.nsFitness[this.graph.getId(node)].getCurrentPunctualValue();
 	}
 	
 	/**
@@ -217,7 +206,7 @@ public class UndirectedNodesNetwork<T> {
 	 * @see Utility
 	 */
 	public double getAvgFitness(T node) {
-		return this.nsFitness.get(node).getCurrentAverage();
+		return this.nsFitness[this.graph.getId(node)].getCurrentAverage();
 	}
 	
 	/**
@@ -228,7 +217,7 @@ public class UndirectedNodesNetwork<T> {
 	 * @see Utility
 	 */
 	public SlidingValueWindow getFitnessRange(T node) {
-		return this.nsFitness.get(node);
+		return this.nsFitness[this.graph.getId(node)];
 	}
 	
 	/**
@@ -246,8 +235,9 @@ public class UndirectedNodesNetwork<T> {
 	 * @return
 	 */
 	public NetworkNodeState getState(T node) {
-		if(this.contains(node)) {
-			return this.states.get(node);
+		int id = this.graph.getId(node);
+		if(id >= 0) {
+			return this.states[id];
 		}
 		return null;
 	}
@@ -262,7 +252,7 @@ public class UndirectedNodesNetwork<T> {
 	 * @param fitness the new score
 	 */
 	public void setFitness(T node, double fitness) {
-		this.nsFitness.get(node).addValue(fitness);
+		this.nsFitness[this.graph.getId(node)].addValue(fitness);
 	}
 
 	/**
@@ -271,8 +261,9 @@ public class UndirectedNodesNetwork<T> {
 	 * @param state
 	 */
 	public void setState(T node, NetworkNodeState state) {
-		if(this.contains(node)) {
-			this.states.put(node, state);	
+		int id = this.graph.getId(node);
+		if(id >= 0) {
+			this.states[id] = state;	
 		}
 	}
 
@@ -285,4 +276,21 @@ public class UndirectedNodesNetwork<T> {
 	public boolean contains(T n)	{
 		return this.graph.containsVertex(n);
 	}
+
+	//---------------------------------------------------------------------------
+	// Private methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Ensures the arrays of states and fitness can hold a number of node ids
+	 * 
+	 * @param capacity the number of node ids
+	 */
+	private void ensureCapacity(int capacity) {
+		if(capacity > this.states.length) {
+			int newCapacity = Math.max(capacity, this.states.length * 2);
+			this.states = Arrays.copyOf(this.states, newCapacity);
+			this.nsFitness = Arrays.copyOf(this.nsFitness, newCapacity);
+		}
+	}
 }
@@ -1,8 +1,6 @@
 package uk.ac.ox.cs.ensm.norm;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import uk.ac.ox.cs.ensm.agent.AgentAction;
 import uk.ac.ox.cs.ensm.agent.AgentContext;
@@ -12,6 +10,11 @@ import uk.ac.ox.cs.ensm.network.NGNNode;
 import uk.ac.ox.cs.ensm.network.NetworkNode;
 
 /**
+ * A norm prescribes the players of a game to perform a given action 
+ * combination. Norms are lightweight: a norm just refers to its game and
+ * to the ordinal of its action combination in the game, and both the
+ * action combination and the agent contexts are resolved through the game
+ * 
  * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
  *
  */
@@ -27,13 +30,9 @@ public class Norm implements Comparable<Norm>, NetworkNode, NGNNode {
 	/** Coordination game the norm belongs to */
 	private Game game;
 
-	/** Agent contexts (one for each role) */
-	private List<AgentContext> contexts;
-	
-	/** Action combination prescribed to coordinate the players  */
-	private Combination<AgentAction> actionCombination;
-
-	private Map<AgentContext,List<AgentAction>> prohibitions;
+	/** Ordinal of the action combination prescribed to coordinate 
+	 * the players in the game */
+	private int ordinal;
 	
 	//---------------------------------------------------------------------------
 	// Public methods
@@ -41,24 +40,32 @@ public class Norm implements Comparable<Norm>, NetworkNode, NGNNode {
 	
 	/**
 	 * Constructor
+	 * 
+	 * @param game the game the norm regulates
+	 * @param ordinal the ordinal of the prescribed action combination 
+	 * 				in the game
 	 */
-	public Norm(Game game, List<AgentContext> contexts, 
-			Combination<AgentAction> actionCombination) {
-
+	public Norm(Game game, int ordinal) {
 		this.game = game;
-		this.contexts = contexts;
-		this.actionCombination = actionCombination;
-		this.prohibitions = new HashMap<AgentContext,List<AgentAction>>();
+		this.ordinal = ordinal;
 	}
 
 	/**
-	 * Returns the action prescribed for a role
+	 * Returns the action combination prescribed by the norm
 	 * 
-	 * @param role
-	 * @return
+	 * @return the action combination prescribed by the norm
 	 */
 	public Combination<AgentAction> getActionCombination() {
-		return this.actionCombination;
+		return this.game.getActionCombination(this.ordinal);
+	}
+
+	/**
+	 * Returns the ordinal of the prescribed action combination in the game
+	 * 
+	 * @return the ordinal of the prescribed action combination
+	 */
+	public int getOrdinal() {
+		return this.ordinal;
 	}
 
 	/**
@@ -111,10 +118,10 @@ public class Norm implements Comparable<Norm>, NetworkNode, NGNNode {
 		String s = "";
 		
 //		Collections.sort(contexts);
-		for(AgentContext c : this.contexts) {
+		for(AgentContext c : this.getContexts()) {
 			s += c.toString() + "\n";
 		}
-		s += this.actionCombination.toString();
+		s += this.getActionCombination().toString();
 		
 		return s;
 	}
@@ -141,12 +148,7 @@ public class Norm implements Comparable<Norm>, NetworkNode, NGNNode {
 			return false;
 		}
 
-		if(this.actionCombination.equals(otherNorm.getActionCombination())) {
-			return true; 
-		}
-		else {
-			return false;
-		}
+		return this.ordinal == otherNorm.getOrdinal();
 	}
 
 	/* (non-Javadoc)
@@ -154,7 +156,7 @@ public class Norm implements Comparable<Norm>, NetworkNode, NGNNode {
 	 */
 	@Override
 	public String getDescription() {
-		return this.actionCombination.toString();
+		return this.getActionCombination().toString();
 	}
 
 	/* (non-Javadoc)
@@ -172,19 +174,11 @@ public class Norm implements Comparable<Norm>, NetworkNode, NGNNode {
 	}
 
 	/**
-	 * Returns the agents' contexts
+	 * Returns the agents' contexts (those of the game)
 	 * 
 	 * @return
 	 */
 	public List<AgentContext> getContexts() {
-		return this.contexts;
+		return this.game.getAgentContexts();
 	}
-
-	/**
-	 * 
-	 * @param contexts
-	 */
-	public void setContexts(List<AgentContext> contexts) {
-		this.contexts = contexts;
-	}	
 }
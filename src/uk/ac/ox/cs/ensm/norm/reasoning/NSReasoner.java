@@ -218,18 +218,11 @@ public class NSReasoner extends NormEngine {
 	 */
 	public Set<Long> getAgentsInView(ViewTransition vTrans) {
 		Set<Long> agentIds = new HashSet<Long>();
-		
-		View pView = vTrans.getView(-1);
-		View view = vTrans.getView(0);
 
 		/* Just check norm applicability for those agents that
 		 * exist in all views of the stream */
-		List<Long> pViewAgentIds = pView.getAgentIds();
-		List<Long> viewAgentIds = view.getAgentIds();
-		for(Long agentId : pViewAgentIds)	{
-			if(viewAgentIds.contains(agentId)) {
-				agentIds.add(agentId);	
-			}
+		for(long agentId : vTrans.getCommonAgentIds(-1, 0))	{
+			agentIds.add(agentId);	
 		}
 		return agentIds;
 	}
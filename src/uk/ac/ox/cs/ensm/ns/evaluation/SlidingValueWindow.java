@@ -27,6 +27,8 @@ public class SlidingValueWindow {
 
 	private long maxSlidingValues;
 	private boolean hasNewValue;
+	private double stdError;		// Standard error of the mean (NaN if unknown)
+	private int numMarkedValues;	// Number of values at the last mark
 	
 	private List<Double> punctualValues;
 	private List<Double> movingAverage;
@@ -59,6 +61,8 @@ public class SlidingValueWindow {
 		
 		this.maxSlidingValues = size;
 		this.hasNewValue = false;
+		this.stdError = Double.NaN;
+		this.numMarkedValues = 0;
 	}
 
 	/**
@@ -68,6 +72,7 @@ public class SlidingValueWindow {
 	 */
 	public void addValue(double value) {
 		this.hasNewValue = true;
+		this.stdError = Double.NaN;
 		
 		/* Add new punctual value */
 		this.add(punctualValues, slidingPunctualValues, value);
@@ -271,6 +276,64 @@ public class SlidingValueWindow {
 		this.slidingTopBoundary.clear();
 		this.slidingBottomBoundary.clear();
 		this.hasNewValue = false;
+		this.stdError = Double.NaN;
+		this.numMarkedValues = 0;
+	}
+
+	/**
+	 * Marks the current values of the window as old. From then on, the
+	 * standard error only takes into account the values added afterwards
+	 */
+	public void mark() {
+		this.numMarkedValues = this.punctualValues.size();
+		this.stdError = Double.NaN;
+	}
+
+	/**
+	 * Returns the number of values added since the last mark
+	 * 
+	 * @return the number of values added since the last mark
+	 */
+	public int getNumValuesSinceMark() {
+		return this.punctualValues.size() - this.numMarkedValues;
+	}
+
+	/**
+	 * Returns the standard error of the mean of the values in the sliding
+	 * window added since the last mark, computed from their sample variance.
+	 * It is cached until a new value is added (or the window is marked), so
+	 * that it can be checked every tick at no cost
+	 * 
+	 * @return the standard error of the mean of the values in the window
+	 * 					added since the last mark, or infinity if there are less 
+	 * 					than two such values
+	 */
+	public double getStandardError() {
+		if(Double.isNaN(this.stdError)) {
+			int numValues = Math.min(this.slidingPunctualValues.size(),
+					this.getNumValuesSinceMark());
+			if(numValues < 2) {
+				this.stdError = Double.POSITIVE_INFINITY;
+			}
+			else {
+				double sum = 0.0;
+				Iterator<Double> it = this.slidingPunctualValues.descendingIterator();
+				for(int i=0; i<numValues; i++) {
+					sum += it.next();
+				}
+				double avg = sum / numValues;
+				
+				double sumSq = 0.0;
+				it = this.slidingPunctualValues.descendingIterator();
+				for(int i=0; i<numValues; i++) {
+					double num = it.next();
+					sumSq += (num - avg) * (num - avg);
+				}
+				double var = sumSq / (numValues - 1);
+				this.stdError = Math.sqrt(var / numValues);
+			}
+		}
+		return this.stdError;
 	}
 	
 	//---------------------------------------------------------------------------
@@ -11,6 +11,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import uk.ac.ox.cs.ensm.agent.language.NormSynthesisGrammar;
 import uk.ac.ox.cs.ensm.agent.language.PredicatesDomains;
@@ -33,7 +37,8 @@ public class NSGenerator {
 	// Attributes methods
 	//---------------------------------------------------------------------------
 
-	private Random random;
+	private RandomStreams streams;	// A random stream for each game and round
+	private long numRounds;					// Number of rounds sampled so far
 	private NormativeGamesNetwork ngNetwork;
 	//	private DomainFunctions dmFunctions;
 	//	private PredicatesDomains predDomains;
@@ -41,6 +46,9 @@ public class NSGenerator {
 	/* Map of NS reasoners, one for each normative system */
 	private Map<NormativeSystem,NSReasoner> nsReasoners;
 
+	/* Threads that choose the norms of each game (if any) */
+	private ExecutorService executor;
+
 
 	//---------------------------------------------------------------------------
 	// Public methods
@@ -48,13 +56,15 @@ public class NSGenerator {
 
 
 	/**
-	 * 
+	 * Constructor. The random streams with which norms are chosen are 
+	 * derived from a master seed drawn from {@code random}
 	 */
 	public NSGenerator(Random random, NormativeGamesNetwork ngNetwork,
 			NormSynthesisGrammar grammar, PredicatesDomains predDomains, 
 			DomainFunctions dmFunctions, EvolutionaryNSMSettings ensmSettings) {
 
-		this.random = random;
+		this.streams = new RandomStreams(random.nextLong());
+		this.numRounds = 0;
 		this.ngNetwork = ngNetwork;
 
 		/* Create map to keep track the reasoner of each normative system */
@@ -62,44 +72,96 @@ public class NSGenerator {
 	}
 
 	/**
+	 * Sets the threads that choose the norms of the games. If set, the norms
+	 * of each game are chosen concurrently. Since each game is sampled with 
+	 * its own random stream, the normative systems are the same regardless 
+	 * of the number of threads
 	 * 
+	 * @param executor the threads that choose the norms of the games
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Generates a new normative system for each agent, and registers
+	 * the new normative systems in the normative games network
 	 * 
-	 * @param numAgs
-	 * @param npFreqs
-	 * @return
+	 * @param numAgs the number of agents
+	 * @return a list containing the normative system of each agent
 	 */
 	public List<NormativeSystem> generateNormativeSystems(long numAgs) {
-		List<NormativeGame> nGames = this.ngNetwork.getNormativeGames();
+		List<NormativeSystem> nss = this.sampleNormativeSystems(
+				this.getGamesToSample(), numAgs);
+
+		return this.registerNormativeSystems(nss);
+	}
+
+	/**
+	 * Returns the normative games to choose norms from, obviating the 
+	 * normative games whose frequency is lower than 0.0001 (unused)
+	 * 
+	 * @return the normative games to choose norms from
+	 */
+	public List<NormativeGame> getGamesToSample() {
+		return this.removeUnusedGames(this.ngNetwork.getNormativeGames(), 0.0001);
+	}
+
+	/**
+	 * Creates a new normative system for each agent by choosing a norm for
+	 * each normative game. This method does not modify the normative games
+	 * network, and hence it can be called from a thread different from
+	 * the one that updates the network. The norms of each game are chosen 
+	 * with a random stream of its own for the current round
+	 * 
+	 * @param nGames the normative games to choose norms from
+	 * @param numAgs the number of agents
+	 * @return a list containing the (not yet registered) normative 
+	 * 					system of each agent
+	 */
+	public List<NormativeSystem> sampleNormativeSystems(
+			List<NormativeGame> nGames, long numAgs) {
+
 		List<NormativeSystem> nss = new ArrayList<NormativeSystem>();
-		BigDecimal numAgents = new BigDecimal(numAgs);
 
 		/* Create list of new, empty  normative systems 
 		 * to be filled with norms */
 		for(int i=0; i<numAgs; i++) {
 			nss.add(new NormativeSystem());
 		}
-		
-		/* Obviates the normative games whose frequency is 
-		 * lower than 0.0001 (unused) */
-		nGames = this.removeUnusedGames(nGames, 0.0001);
 
 		/* Iterate over each agent and each game, choosing a norm 
 		 * to coordinate in the game with probability equal to 
 		 * the actual frequency of the norm in that game */
-		for(NormativeGame game : nGames) {
-			List<Norm> norms = this.chooseNormsProportionally(game, numAgs); 
-
+		long round = ++this.numRounds;
+		List<List<Norm>> gamesNorms = this.chooseNorms(nGames, numAgs, round);
+		
+		for(List<Norm> norms : gamesNorms) {
 			for(int agId=0; agId<numAgs; agId++) {
 				Norm norm = norms.get(agId); // get the norm chosen for the agent
 				nss.get(agId).add(norm); // Add it to the normative system of the agent	
 			}
 		}
+		return nss;
+	}
+
+	/**
+	 * Registers the normative systems of the agents in the normative games
+	 * network, replacing the normative systems that were active so far
+	 * 
+	 * @param nss the normative system of each agent
+	 * @return the normative system of each agent, as stored in the network
+	 */
+	public List<NormativeSystem> registerNormativeSystems(
+			List<NormativeSystem> nss) {
+
+		BigDecimal numAgents = new BigDecimal(nss.size());
 
 		/* Create normative systems */
 		this.ngNetwork.clearNormativeSystems();
 
 		BigDecimal totalFreq = BigDecimal.ZERO;
-		for(int nsIdx=0; nsIdx<numAgs; nsIdx++) {
+		for(int nsIdx=0; nsIdx<nss.size(); nsIdx++) {
 			NormativeSystem ns = nss.get(nsIdx);
 			
 			/* Add the normative system to the NGN */
@@ -131,13 +193,83 @@ public class NSGenerator {
 		return ret;
 	}
 
+	/**
+	 * Chooses the norm of each agent in each game, concurrently if there 
+	 * are threads to do so
+	 * 
+	 * @param nGames the normative games
+	 * @param numAgs the number of agents
+	 * @param round the round to choose the norms for
+	 * @return the norms chosen for the agents in each game, in the 
+	 * 					order of the games
+	 * @throws RuntimeException if choosing the norms of a game fails, or 
+	 * 					the thread is interrupted while waiting for the choices
+	 */
+	private List<List<Norm>> chooseNorms(List<NormativeGame> nGames, 
+			final long numAgs, final long round) {
+		
+		List<List<Norm>> gamesNorms = new ArrayList<List<Norm>>(nGames.size());
+		
+		if(this.executor == null || nGames.size() < 2) {
+			for(NormativeGame game : nGames) {
+				gamesNorms.add(this.chooseNorms(game, numAgs, round));
+			}
+			return gamesNorms;
+		}
+		
+		List<Callable<List<Norm>>> tasks = new ArrayList<Callable<List<Norm>>>();
+		for(final NormativeGame game : nGames) {
+			tasks.add(new Callable<List<Norm>>() {
+				@Override
+				public List<Norm> call() {
+					return chooseNorms(game, numAgs, round);
+				}
+			});
+		}
+		try {
+			for(Future<List<Norm>> future : this.executor.invokeAll(tasks)) {
+				gamesNorms.add(future.get());
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e) {
+			throw new RuntimeException("Choosing the norms of a game failed", 
+					e.getCause());
+		}
+		return gamesNorms;
+	}
+	
+	/**
+	 * Chooses the norm of each agent in a game
+	 * 
+	 * @param game the normative game
+	 * @param numAgs the number of agents
+	 * @param round the round to choose the norms for
+	 * @return the norm chosen for each agent
+	 */
+	private List<Norm> chooseNorms(NormativeGame game, long numAgs, 
+			long round) {
+		
+		/* Frozen games always assign the norm they converged to */
+		Norm frozenNorm = game.getFrozenNorm();
+		if(frozenNorm != null) {
+			return Collections.nCopies((int)numAgs, frozenNorm);
+		}
+		Random random = this.streams.getStream(game.getId(), round);
+		return this.chooseNormsProportionally(game, numAgs, random);
+	}
+	
 	/**
 	 * @param game
 	 * @param numAgs
+	 * @param random the random stream of the game
 	 * @return
 	 */
 	private List<Norm> chooseNormsProportionally(NormativeGame game, 
-			long numAgents) {
+			long numAgents, Random random) {
 		
 		/* 1. Generate a data structure that helps us choose a norm for
 		 * the game based on its frequency */
@@ -158,7 +290,7 @@ public class NSGenerator {
 		
 		int numAddNorms = (int)numAgents - norms.size();
 		for(int i=0; i<numAddNorms; i++) {
-			int rndNorm = this.random.nextInt(norms.size());
+			int rndNorm = random.nextInt(norms.size());
 			Norm norm = norms.get(rndNorm);
 			norms.add(norm);
 		}
@@ -174,6 +306,7 @@ public class NSGenerator {
 	 */
 	public List<Norm> chooseNormsRandomly(NormativeGame game, long numAgents) {
 		List<Norm> agNorms = new ArrayList<Norm>();
+		Random random = this.streams.getStream(game.getId(), this.numRounds);
 		
 		/* 1. Generate a data structure that helps us choose a norm for
 		 * the game based on its frequency */
@@ -189,7 +322,7 @@ public class NSGenerator {
 		
 		/* 2. For each agent, randomly choose a norm and add it to the list */
 		for(int agId=0; agId<numAgents; agId++) {
-			int rndNorm = this.random.nextInt(gameNorms.size());	
+			int rndNorm = random.nextInt(gameNorms.size());	
 			agNorms.add(gameNorms.get(rndNorm));
 		}
 		return agNorms;
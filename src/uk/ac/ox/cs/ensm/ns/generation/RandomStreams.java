@@ -0,0 +1,88 @@
+/**
+ * 
+ * @author Javier Morales (javier.morales@cs.ox.ac.uk)
+ */
+package uk.ac.ox.cs.ensm.ns.generation;
+
+import java.util.Random;
+
+/**
+ * Independent streams of random numbers derived from a master seed. 
+ * Each stream is identified by a pair of keys (e.g., the id of a game and
+ * a round), and its seed is derived from the master seed and the keys by 
+ * means of the SplitMix64 finaliser. Hence, a stream produces the same 
+ * numbers regardless of the streams used before it, or of the thread that 
+ * uses it, and computations that use a stream for each unit of work (e.g., 
+ * each game) are reproducible when their units are computed in parallel
+ * 
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ */
+public class RandomStreams {
+
+	//---------------------------------------------------------------------------
+	// Static attributes
+	//---------------------------------------------------------------------------
+
+	/** Increment of the SplitMix64 generator (the golden gamma) */
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+	
+	//---------------------------------------------------------------------------
+	// Attributes
+	//---------------------------------------------------------------------------
+
+	private long masterSeed;	// Seed from which the streams are derived
+
+	//---------------------------------------------------------------------------
+	// Methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Constructor
+	 * 
+	 * @param masterSeed the seed from which the streams are derived
+	 */
+	public RandomStreams(long masterSeed) {
+		this.masterSeed = masterSeed;
+	}
+
+	/**
+	 * Returns a new stream of random numbers for a pair of keys. Two streams
+	 * created for the same keys produce the same numbers
+	 * 
+	 * @param key1 the first key (e.g., the id of a game)
+	 * @param key2 the second key (e.g., a round)
+	 * @return a stream of random numbers for the keys
+	 */
+	public Random getStream(long key1, long key2) {
+		long seed = mix(this.masterSeed + GOLDEN_GAMMA);
+		seed = mix(seed + key1 * GOLDEN_GAMMA);
+		seed = mix(seed + key2 * GOLDEN_GAMMA);
+		return new Random(seed);
+	}
+
+	/**
+	 * Returns the master seed of the streams
+	 * 
+	 * @return the master seed
+	 */
+	public long getMasterSeed() {
+		return this.masterSeed;
+	}
+
+	//---------------------------------------------------------------------------
+	// Private methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * SplitMix64 finaliser. Mixes the bits of a value so that close values
+	 * are mapped to unrelated values 
+	 * 
+	 * @param z the value to mix
+	 * @return the mixed value
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,342 @@
+/**
+ * 
+ * @author Javier Morales (javier.morales@cs.ox.ac.uk)
+ */
+package uk.ac.ox.cs.ensm.ns.replication;
+
+import uk.ac.ox.cs.ensm.game.NormativeGame;
+
+/**
+ * Computes the evolutionarily stable state (ESS) of small normative games 
+ * analytically, so that their norms need not be replicated round after 
+ * round until they converge. The norms of a normative game are the 
+ * strategies of a single population whose agents enact any role, and 
+ * hence the fitness of a norm is linear in the frequencies of the norms:
+ * <ul>
+ * <li>	in 1-role games, the fitness of each norm is constant, and the ESS
+ * 			is the norm with the greatest utility;
+ * <li>	in 2-role games, the fitness of norm {@code i} is {@code (Mx)_i},
+ * 			where {@code M[i][j]} is the utility of enacting role 0 with norm 
+ * 			{@code i} against norm {@code j}, plus the utility of enacting 
+ * 			role 1 with norm {@code i} against norm {@code j}. The symmetric 
+ * 			equilibria of {@code M} are found by support enumeration, and 
+ * 			those that are regular ESSs are kept.
+ * </ul>
+ * The solver only returns an ESS when it is unique and regular. Otherwise
+ * (several ESSs, degenerate equilibria, more than 2 roles or too many 
+ * norms) the state the population converges to depends on the dynamics, 
+ * and the norms must be replicated
+ * 
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ */
+public class ESSSolver {
+
+	//---------------------------------------------------------------------------
+	// Static attributes
+	//---------------------------------------------------------------------------
+
+	/** Tolerance of the numerical comparisons */
+	private static final double EPSILON = 1e-9;
+
+	/** Maximum number of norms of a 2-role game (its supports are 
+	 * enumerated, and there are 2^n of them) */
+	private static final int MAX_NUM_NORMS = 12;
+
+	//---------------------------------------------------------------------------
+	// Methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Returns the frequency of each norm of a normative game (by norm 
+	 * index) in its evolutionarily stable state, based on the current 
+	 * utilities of its norm combinations
+	 * 
+	 * @param nGame the normative game
+	 * @return the frequency of each norm in the ESS of the game, or 
+	 * 					{@code null} if the game has no unique regular ESS
+	 */
+	public double[] solve(NormativeGame nGame) {
+		switch(nGame.getNumRoles()) {
+		case 1:
+			return this.solveOneRole(nGame);
+		case 2:
+			if(nGame.getNumNorms() > MAX_NUM_NORMS) {
+				return null;
+			}
+			return this.solveTwoRoles(this.getPayoffMatrix(nGame));
+		default:
+			return null;
+		}
+	}
+
+	//---------------------------------------------------------------------------
+	// Private methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Returns the ESS of a 1-role game, which is the norm with the greatest
+	 * utility (provided that no other norm ties with it)
+	 * 
+	 * @param nGame the normative game
+	 * @return the frequencies of the ESS, or {@code null} if there is a tie
+	 */
+	private double[] solveOneRole(NormativeGame nGame) {
+		int numNorms = nGame.getNumNorms();
+		double[] utilities = new double[numNorms];
+		for(int nc=0; nc<nGame.getNumNormCombinations(); nc++) {
+			utilities[nGame.getNormIndex(nc, 0)] = nGame.getUtility(0, nc);
+		}
+
+		int best = -1;
+		boolean tie = false;
+		for(int n=0; n<numNorms; n++) {
+			if(best < 0 || utilities[n] > utilities[best] + EPSILON) {
+				best = n;
+				tie = false;
+			}
+			else if(utilities[n] > utilities[best] - EPSILON) {
+				tie = true;
+			}
+		}
+		if(best < 0 || tie) {
+			return null;
+		}
+		double[] ess = new double[numNorms];
+		ess[best] = 1.0;
+		return ess;
+	}
+
+	/**
+	 * Returns the payoff matrix of the single population playing 
+	 * a 2-role game
+	 * 
+	 * @param nGame the normative game
+	 * @return the payoff matrix of the population
+	 */
+	private double[][] getPayoffMatrix(NormativeGame nGame) {
+		int numNorms = nGame.getNumNorms();
+		double[][] m = new double[numNorms][numNorms];
+		
+		for(int nc=0; nc<nGame.getNumNormCombinations(); nc++) {
+			int n0 = nGame.getNormIndex(nc, 0);
+			int n1 = nGame.getNormIndex(nc, 1);
+			m[n0][n1] += nGame.getUtility(0, nc);
+			m[n1][n0] += nGame.getUtility(1, nc);
+		}
+		return m;
+	}
+
+	/**
+	 * Enumerates the supports of a symmetric game, looking for its 
+	 * symmetric equilibria and checking which of them are regular ESSs
+	 * 
+	 * @param m the payoff matrix of the game
+	 * @return the frequencies of the ESS, or {@code null} if there is not
+	 * 					a unique regular ESS (or some equilibrium is degenerate)
+	 */
+	private double[] solveTwoRoles(double[][] m) {
+		int n = m.length;
+		double[] ess = null;
+
+		for(int mask=1; mask < (1 << n); mask++) {
+			int[] support = this.getSupport(mask, n);
+			double[] x = this.solveIndifference(m, support);
+			if(x == null) {
+				continue;
+			}
+
+			/* Check that the solution is a mixed strategy with full support */
+			boolean valid = true;
+			for(int i : support) {
+				if(x[i] <= EPSILON) {
+					valid = false;
+					break;
+				}
+			}
+			if(!valid) {
+				continue;
+			}
+
+			/* Check that no norm outside the support is a better reply. If 
+			 * one is as good as the support, the equilibrium is degenerate */
+			double v = this.getFitness(m, x, support[0]);
+			for(int i=0; i<n && valid; i++) {
+				if((mask & (1 << i)) != 0) {
+					continue;
+				}
+				double fitness = this.getFitness(m, x, i);
+				if(fitness > v + EPSILON) {
+					valid = false;
+				}
+				else if(fitness > v - EPSILON) {
+					return null;
+				}
+			}
+			if(!valid) {
+				continue;
+			}
+
+			/* A quasi-strict equilibrium is a (regular) ESS if the payoff 
+			 * matrix is negative definite on the support */
+			if(support.length == 1 || this.isNegativeDefinite(m, support)) {
+				if(ess != null) {
+					return null;
+				}
+				ess = x;
+			}
+		}
+		return ess;
+	}
+
+	/**
+	 * Returns the norms of a support
+	 * 
+	 * @param mask the bit mask of the support
+	 * @param numNorms the number of norms
+	 * @return the indexes of the norms of the support
+	 */
+	private int[] getSupport(int mask, int numNorms) {
+		int[] support = new int[Integer.bitCount(mask)];
+		int k = 0;
+		for(int i=0; i<numNorms; i++) {
+			if((mask & (1 << i)) != 0) {
+				support[k++] = i;
+			}
+		}
+		return support;
+	}
+
+	/**
+	 * Solves the linear system in which all the norms of a support have the 
+	 * same fitness and their frequencies add up to 1
+	 * 
+	 * @param m the payoff matrix
+	 * @param support the norms of the support
+	 * @return the frequency of each norm (0 outside the support), or 
+	 * 					{@code null} if the system is singular
+	 */
+	private double[] solveIndifference(double[][] m, int[] support) {
+		int k = support.length;
+
+		/* Unknowns: the frequencies of the norms of the support and their 
+		 * fitness. Equations: (Mx)_i - v = 0 for each i, and sum(x) = 1 */
+		double[][] a = new double[k+1][k+2];
+		for(int r=0; r<k; r++) {
+			for(int c=0; c<k; c++) {
+				a[r][c] = m[support[r]][support[c]];
+			}
+			a[r][k] = -1.0;
+		}
+		for(int c=0; c<k; c++) {
+			a[k][c] = 1.0;
+		}
+		a[k][k+1] = 1.0;
+
+		/* Gaussian elimination with partial pivoting */
+		for(int col=0; col<=k; col++) {
+			int pivot = col;
+			for(int r=col+1; r<=k; r++) {
+				if(Math.abs(a[r][col]) > Math.abs(a[pivot][col])) {
+					pivot = r;
+				}
+			}
+			if(Math.abs(a[pivot][col]) < EPSILON) {
+				return null;
+			}
+			double[] tmp = a[col];
+			a[col] = a[pivot];
+			a[pivot] = tmp;
+
+			for(int r=0; r<=k; r++) {
+				if(r == col) {
+					continue;
+				}
+				double factor = a[r][col] / a[col][col];
+				for(int c=col; c<=k+1; c++) {
+					a[r][c] -= factor * a[col][c];
+				}
+			}
+		}
+
+		double[] x = new double[m.length];
+		for(int i=0; i<k; i++) {
+			x[support[i]] = a[i][k+1] / a[i][i];
+		}
+		return x;
+	}
+
+	/**
+	 * Returns the fitness of a norm in a population state
+	 * 
+	 * @param m the payoff matrix
+	 * @param x the frequency of each norm
+	 * @param i the norm
+	 * @return the fitness of the norm
+	 */
+	private double getFitness(double[][] m, double[] x, int i) {
+		double fitness = 0.0;
+		for(int j=0; j<x.length; j++) {
+			fitness += m[i][j] * x[j];
+		}
+		return fitness;
+	}
+
+	/**
+	 * Returns <tt>true</tt> if the payoff matrix restricted to a support is
+	 * negative definite on the directions that keep the frequencies adding 
+	 * up to 1. The matrix is projected onto the basis e_i - e_last of those 
+	 * directions, and its symmetric part is checked by means of a Cholesky 
+	 * decomposition
+	 * 
+	 * @param m the payoff matrix
+	 * @param support the norms of the support
+	 * @return <tt>true</tt> if the matrix is negative definite on the support
+	 */
+	private boolean isNegativeDefinite(double[][] m, int[] support) {
+		int k = support.length - 1;
+		int last = support[k];
+		double[][] q = new double[k][k];
+
+		/* q = -(Z^T S Z), where S is the symmetric part of the matrix */
+		for(int r=0; r<k; r++) {
+			for(int c=0; c<k; c++) {
+				int i = support[r], j = support[c];
+				double zSz = this.sym(m, i, j) - this.sym(m, i, last) - 
+						this.sym(m, last, j) + this.sym(m, last, last);
+				q[r][c] = -zSz;
+			}
+		}
+
+		/* Cholesky decomposition of q (which must be positive definite) */
+		for(int j=0; j<k; j++) {
+			double d = q[j][j];
+			for(int p=0; p<j; p++) {
+				d -= q[j][p] * q[j][p];
+			}
+			if(d <= EPSILON) {
+				return false;
+			}
+			q[j][j] = Math.sqrt(d);
+			for(int i=j+1; i<k; i++) {
+				double s = q[i][j];
+				for(int p=0; p<j; p++) {
+					s -= q[i][p] * q[j][p];
+				}
+				q[i][j] = s / q[j][j];
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns an element of the symmetric part of a matrix
+	 * 
+	 * @param m the matrix
+	 * @param i the row
+	 * @param j the column
+	 * @return the element (i, j) of the symmetric part of the matrix
+	 */
+	private double sym(double[][] m, int i, int j) {
+		return (m[i][j] + m[j][i]) / 2.0;
+	}
+}
@@ -8,8 +8,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
-import uk.ac.ox.cs.ensm.agent.AgentAction;
-import uk.ac.ox.cs.ensm.agent.Combination;
 import uk.ac.ox.cs.ensm.config.DomainFunctions;
 import uk.ac.ox.cs.ensm.config.EvolutionaryNSMSettings;
 import uk.ac.ox.cs.ensm.game.Game;
@@ -38,6 +36,12 @@ public class NormsReplicator {
 	//---------------------------------------------------------------------------
 
 	private NormativeGamesNetwork ngNetwork;
+	private double maxPayoffDrift;	// Max payoff drift of frozen games
+	private double essStabilityThreshold;	// Max utility change of stable games
+	private ESSSolver essSolver;		// Solver of the ESS of stable games
+	private ReplicatorDynamics dynamics;	// Dynamics of the norms' frequencies
+	private ReplicatorKernel kernel;	// Packed values of the replicated games
+	private double[] nextFreqs;			// Euler step of the norms of a game
 	//	private BigDecimal reward;
 	//	private BigDecimal punishment;
 
@@ -57,6 +61,15 @@ public class NormsReplicator {
 			EvolutionaryNSMSettings ensmSettings) {
 
 		this.ngNetwork = ngNetwork;
+		this.maxPayoffDrift = ensmSettings.getConvergedGamesPayoffDriftThreshold();
+		this.essStabilityThreshold = ensmSettings.getESSSolverStabilityThreshold();
+		this.essSolver = new ESSSolver();
+		this.dynamics = new ReplicatorDynamics(
+				ensmSettings.getReplicatorIntegrator(), 
+				ensmSettings.getReplicatorNumSteps(),
+				ensmSettings.getReplicatorErrorTolerance());
+		this.kernel = new ReplicatorKernel();
+		this.nextFreqs = new double[0];
 
 		//		double dReward = ensmSettings.getRewardForAvoidingConflicts();
 		//		double dPunishment = ensmSettings.getPunishmentForHavingConflicts();
@@ -66,23 +79,105 @@ public class NormsReplicator {
 	}
 
 	/**
-	 * 
-	 * @param viewTransitions
-	 * @param normApplicability
-	 * @param normCompliance
-	 * @param normGroupCompliance
+	 * Replicates the norms of the valid normative games
 	 */
 	public void doReplication() {
+		this.doReplication(this.prepareReplication());
+	}
 
-		/* Loop of all games played so long */
+	/**
+	 * Retrieves the normative games to replicate and takes a snapshot of
+	 * the payoffs of their games. This must be done in the thread that
+	 * updates the payoffs, so that the norms can be replicated in another
+	 * thread while the games keep being played
+	 * 
+	 * @return the normative games to replicate
+	 */
+	public List<NormativeGame> prepareReplication() {
 		List<NormativeGame> nGames = this.ngNetwork.getValidNormativeGames();
 		for(NormativeGame nGame : nGames) {
+			nGame.getGame().snapshotPayoffs();
+		}
+		return nGames;
+	}
+
+	/**
+	 * Replicates the norms of a list of normative games, based on
+	 * the last snapshot of the payoffs of their games
+	 * 
+	 * @param nGames the normative games to replicate
+	 */
+	public void doReplication(List<NormativeGame> nGames) {
+		List<NormativeGame> nGamesToReplicate = new ArrayList<NormativeGame>();
+		List<Double> utilitiesChanges = new ArrayList<Double>();
+
+		/* Loop of all games played so long */
+		for(NormativeGame nGame : nGames) {
+			Game game = nGame.getGame();
+			boolean payoffsChanged = game.hasSnapshotChanged();
+
+			/* Skip frozen games unless their payoffs have drifted since
+			 * they converged, in which case they are replicated again */
+			if(nGame.isFrozen()) {
+				if(!payoffsChanged || 
+						nGame.getPayoffDrift() <= this.maxPayoffDrift) {
+					continue;
+				}
+				nGame.unfreeze();
+			}
 
-			/* Compute the utility and the fitness of each
-			 * norm of the game */
-			this.computeUtilities(nGame);
-			this.computeFitness(nGame);
-			this.replicateNorms(nGame);
+			/* Skip games whose payoffs have not changed since the last
+			 * replication and whose norms' frequencies did not change
+			 * in the last replication (their fitness would not change) */
+			if(!payoffsChanged && !nGame.haveFrequenciesChanged()) {
+				continue;
+			}
+			nGame.clearFrequenciesChanged();
+			this.kernel.add(nGame);
+
+			/* Compute the utility of each norm combination (only if the
+			 * payoffs have changed) */
+			double utilitiesChange = 0.0;
+			if(payoffsChanged) {
+				utilitiesChange = this.computeUtilities(nGame);
+				game.clearSnapshotChanged();
+			}
+			nGamesToReplicate.add(nGame);
+			utilitiesChanges.add(utilitiesChange);
+		}
+
+		/* Compute the fitness of each norm of the games (and their discrete 
+		 * replicator update) in blocks of games of the same shape */
+		this.kernel.computeFitness(nGamesToReplicate);
+		
+		boolean euler = (this.dynamics.getIntegrator() == 
+				ReplicatorIntegrator.Euler);
+		if(euler) {
+			this.kernel.eulerStep();
+		}
+
+		for(int g=0; g<nGamesToReplicate.size(); g++) {
+			NormativeGame nGame = nGamesToReplicate.get(g);
+			
+			/* If the payoffs of the game are stable, set its norms to its ESS
+			 * at once. Otherwise (or if the ESS is ambiguous), replicate them */
+			double[] ess = null;
+			if(this.isStable(nGame, utilitiesChanges.get(g))) {
+				ess = this.essSolver.solve(nGame);
+			}
+			if(ess != null) {
+				this.setEvolutionarilyStableState(nGame, ess);
+			}
+			else if(euler) {
+				if(this.nextFreqs.length < nGame.getNumNorms()) {
+					this.nextFreqs = new double[nGame.getNumNorms()];
+				}
+				this.kernel.getNextFrequencies(nGame, this.nextFreqs);
+				this.setFrequencies(nGame, this.nextFreqs);
+			}
+			else {
+				this.replicateNorms(nGame);
+			}
 
 			/* Update the frequencies of each norm of the game */
 			this.ngNetwork.updateNormsFrequencies(nGame);
@@ -90,137 +185,98 @@ public class NormsReplicator {
 	}
 
 	/**
+	 * Computes the utility of each norm combination of a normative game.
+	 * The cell of the payoffs snapshot of the action that each norm 
+	 * prescribes to each role is resolved once, and then norm combinations
+	 * are enumerated by index, keeping the norm index of each role
 	 * 
+	 * @param nGame the normative game
+	 * @return the maximum change of the utilities of the game
 	 */
-	private void computeUtilities(NormativeGame nGame) {
+	private double computeUtilities(NormativeGame nGame) {
 		Game game = nGame.getGame();
 		int numRoles = game.getNumRoles();
+		int numNorms = nGame.getNumNorms();
+		double maxChange = 0.0;
+
+		/* Stride of the action that each norm prescribes to 
+		 * each role, by (role * number of norms + norm index) */
+		int[] normStrides = new int[numRoles * numNorms];
+		for(int role=0; role<numRoles; role++) {
+			for(int n=0; n<numNorms; n++) {
+				normStrides[role * numNorms + n] = game.getSnapshotStride(
+						nGame.getNorm(n).getOrdinal(), role);
+			}
+		}
 
 		/* Iterate over each norm combination, computing its utility to 
 		 * coordinate each role of the corresponding coordination game */
-		for(Combination<Norm> nc : nGame.getNormCombinations()) {
-
-			/* Retrieve action combination dictated by the norms of 
-			 * the norm combination to each one of the roles */
-			Combination<AgentAction> ac = new Combination<AgentAction>();
+		int[] normIdxs = new int[numRoles];
+		for(int nc=0; nc<nGame.getNumNormCombinations(); nc++) {
 
+			/* Retrieve the cell of the action combination dictated by the 
+			 * norms of the norm combination to each one of the roles */
+			int cell = 0;
 			for(int role=0; role<numRoles; role++) {
-				AgentAction action = nc.get(role).getActionCombination().get(role);
-				ac.add(action);
+				cell += normStrides[role * numNorms + normIdxs[role]];
 			}
 
 			/* For each role of the game... */
 			for(int role=0; role<numRoles; role++) {
-				double utility = computeEffectiveness(ac, role, nGame);
+				double utility = game.getSnapshotPayoff(cell, role);
+				double change = Math.abs(utility - nGame.getUtility(role, nc));
+				if(change > maxChange) {
+					maxChange = change;
+				}
 
 				/* Update the utility of the norm combination */
 				nGame.setUtility(role, nc, utility);
 			}
-		}
-	}
 
-	/**
-	 * @param role
-	 * @param nGame
-	 * @param np
-	 */
-	private double computeEffectiveness(Combination<AgentAction> ac,
-			int role, NormativeGame nGame) {
-
-		Game game = nGame.getGame();
-		return game.getPayoff(ac, role);
-	}
-
-	/**
-	 * @param ns
-	 * @param game
-	 * @return
-	 */
-	private void computeFitness(NormativeGame nGame) {
-
-		/* Compute the fitness of each norm of the normative game */
-		for(Norm norm : nGame.getNormSpace()) {
-			double fitness = 0.0;
-
-			/* Iterate over each role of the game */
-			for(int role=0; role<nGame.getNumRoles(); role++) {
-
-				/* Retrieve all the norm combinations in which 
-				 * the norm applies to the given role */
-				List<Combination<Norm>> nCombinations = 
-						new ArrayList<Combination<Norm>>();
-
-				for(Combination<Norm> nc : nGame.getNormCombinations()) {
-					if(nc.get(role).equals(norm)) {
-						nCombinations.add(nc);
-					}
+			/* Move to the next norm combination (the last 
+			 * role being the least significant digit) */
+			for(int role=numRoles-1; role>=0; role--) {
+				if(++normIdxs[role] < numNorms) {
+					break;
 				}
-
-				/* Compute the fitness of the norm in terms of the utility
-				 * that an agent to whom the norm applies derives for any
-				 * possible role and norm combination */
-				for(Combination<Norm> nc : nCombinations) {
-
-					/* Compute the probability that a group of agents interact while 
-					 * having the norm combination (computed as the joint frequency 
-					 * of each one of the norms in the norm combination */
-					double normFreq = 1;
-					for(int i=0; i<nGame.getNumRoles(); i++) {
-
-						/* We do not consider the frequency of the norm applicable to 
-						 * the role that is being evaluated, only the frequency of 
-						 * the norms applicable to the other roles */
-						if(i == role) {
-							continue;
-						}
-						Norm n = nc.get(i);
-						normFreq = normFreq * nGame.getFrequency(n);
-					}
-
-					/* If the norm is applicable to a given role in the
-					 * norm combination, then consider the utility of the 
-					 * role by using its applicable norm */
-					double utility = nGame.getUtility(role, nc);
-					double weightedUtility = utility * normFreq;
-					fitness += weightedUtility;						
-				}	
+				normIdxs[role] = 0;
 			}
-
-			/* The new fitness of the norm averages the utility of the norm
-			 * for each possible role and for each action combination in which
-			 * the norm applies to an agent enacting that role */
-			nGame.setFitness(norm, fitness);
 		}
+		return maxChange;
 	}
 
-
 	/**
+	 * Updates the frequencies of the norms of a game by integrating their
+	 * replicator dynamics along a round, starting from the current 
+	 * frequencies and fitness of the norms
 	 * 
-	 * @param nsApplicability
-	 * @param normsActivatedDuringGeneration
+	 * @param game the normative game
 	 */
 	public void replicateNorms(NormativeGame game) {
+		double[] freqs = this.getFrequencies(game);
+		double[] fitness = new double[freqs.length];
+		for(int n=0; n<fitness.length; n++) {
+			fitness[n] = game.getFitness(n);
+		}
+		this.setFrequencies(game, this.dynamics.integrate(game, freqs, fitness));
+	}
 
-		/* Compute average fitness of all the normative profiles of the game */
-		double avgFitness = this.computeAvgRelativeFitness(game);
-
-		for(Norm norm : game.getNormSpace()) {
-
-			/* Update frequency of the norm based on its fitness with 
-			 * respect to the average fitness of all the norms of the game */
-			double freq = game.getFrequency(norm);
-			double fitness = game.getFitness(norm);
-			double newFreq = freq + freq * (fitness - avgFitness);
+	/**
+	 * Sets the frequencies of the norms of a game after replicating them
+	 * 
+	 * @param game the normative game
+	 * @param newFreqs the new frequency of each norm (by norm index), 
+	 * 				which may have more elements than norms
+	 */
+	private void setFrequencies(NormativeGame game, double[] newFreqs) {
+		for(int n=0; n<game.getNumNorms(); n++) {
+			Norm norm = game.getNorm(n);
+			double freq = game.getFrequency(n);
 			
 			/* Add new frequency of the norm */
-			game.setFrequency(norm, newFreq);
-			this.ngNetwork.setFrequency(norm, newFreq);
-
-			/* If the frequency of the norm is 100%, then the game has converged */
-			if(newFreq > 0.9) {
-				game.setConverged(true);
-				game.setConvergedNorm(norm);
-			}
+			game.setFrequency(norm, newFreqs[n]);
+			this.ngNetwork.setFrequency(norm, newFreqs[n]);
+			this.checkConvergence(game, norm, freq, newFreqs[n]);
 		}
 
 		/* Increase the number of times that the norms of 
@@ -229,18 +285,69 @@ public class NormsReplicator {
 	}
 
 	/**
-	 * @param ns
-	 * @param ngNetwork
-	 * @return
+	 * Sets the frequency of each norm of a normative game to its 
+	 * evolutionarily stable state, instead of replicating the norms
+	 * 
+	 * @param game the normative game
+	 * @param ess the frequency of each norm (by norm index) in the ESS
 	 */
-	private double computeAvgRelativeFitness(NormativeGame game) {
-		double avgFitness = 0.0;
+	private void setEvolutionarilyStableState(NormativeGame game, 
+			double[] ess) {
+		
+		this.setFrequencies(game, ess);
+	}
 
-		for(Norm norm : game.getNormSpace()) {
-			double normFitness = game.getFitness(norm);
-			double normFreq = game.getFrequency(norm);
-			avgFitness += normFreq * normFitness;
+	/**
+	 * Checks whether a normative game has converged after the frequency
+	 * of one of its norms has been updated
+	 * 
+	 * @param game the normative game
+	 * @param norm the norm
+	 * @param freq the previous frequency of the norm
+	 * @param newFreq the new frequency of the norm
+	 */
+	private void checkConvergence(NormativeGame game, Norm norm, double freq,
+			double newFreq) {
+		
+		/* If the frequency of the norm is 100%, then the game has converged.
+		 * Freeze it as long as the norm is not losing ground (otherwise, a
+		 * game that has just been unfrozen would be frozen again at once) */
+		if(newFreq > 0.9) {
+			game.setConvergedNorm(norm);
+			game.setConverged(true);
+
+			if(this.maxPayoffDrift >= 0 && newFreq >= freq) {
+				game.freeze();
+			}
+		}
+	}
+
+	/**
+	 * Returns <tt>true</tt> if the payoffs of a normative game are stable,
+	 * that is, if its norms have been replicated before and its utilities
+	 * have changed less than the stability threshold since then
+	 * 
+	 * @param game the normative game
+	 * @param utilitiesChange the change of the utilities of the game
+	 * @return <tt>true</tt> if the payoffs of the game are stable
+	 */
+	private boolean isStable(NormativeGame game, double utilitiesChange) {
+		return this.essStabilityThreshold >= 0 && 
+				game.getNumReplications() > 0 && 
+				utilitiesChange <= this.essStabilityThreshold;
+	}
+
+	/**
+	 * Returns the frequency of each norm of a normative game
+	 * 
+	 * @param nGame the normative game
+	 * @return the frequency of each norm (by norm index)
+	 */
+	private double[] getFrequencies(NormativeGame nGame) {
+		double[] freqs = new double[nGame.getNumNorms()];
+		for(int n=0; n<freqs.length; n++) {
+			freqs[n] = nGame.getFrequency(n);
 		}
-		return avgFitness;
+		return freqs;
 	}
 }
@@ -0,0 +1,138 @@
+/**
+ * 
+ * @author Javier Morales (javier.morales@cs.ox.ac.uk)
+ */
+package uk.ac.ox.cs.ensm.ns.replication;
+
+import uk.ac.ox.cs.ensm.config.EvolutionaryNSMSettings;
+import uk.ac.ox.cs.ensm.game.Game;
+import uk.ac.ox.cs.ensm.game.NormativeGame;
+import uk.ac.ox.cs.ensm.network.NormativeGamesNetwork;
+
+/**
+ * Decides when a round finishes and norms must be replicated. With fixed 
+ * rounds, norms are replicated every N ticks. With adaptive rounds, norms 
+ * are replicated as soon as the payoffs of enough games are confident, that
+ * is, when their action combinations have received enough rewards since the
+ * round started and the 95% confidence intervals of the mean of those 
+ * rewards are tight enough, or once a round reaches a maximum number 
+ * of ticks. Hence, norms are not replicated on too little information, nor
+ * do agents wait longer than needed once the games have been assessed
+ * 
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ */
+public class ReplicationScheduler {
+
+	//---------------------------------------------------------------------------
+	// Static attributes
+	//---------------------------------------------------------------------------
+
+	/** Critical value of the normal distribution for a 95% confidence */
+	private static final double Z_95 = 1.96;
+	
+	//---------------------------------------------------------------------------
+	// Attributes
+	//---------------------------------------------------------------------------
+
+	private NormativeGamesNetwork ngNetwork;
+	private long numTicksPerRound;				// Ticks of a fixed round
+	private double maxHalfWidth;					// Max half-width of confident games
+	private double minConfidentRatio;			// Min ratio of confident games
+	private long maxTicksPerRound;				// Max ticks of an adaptive round
+	private int minNewRewards;						// Min new rewards of confident games
+
+	//---------------------------------------------------------------------------
+	// Methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Constructor
+	 * 
+	 * @param ngNetwork the normative games network
+	 * @param settings the settings of the ENSM
+	 */
+	public ReplicationScheduler(NormativeGamesNetwork ngNetwork,
+			EvolutionaryNSMSettings settings) {
+		
+		this.ngNetwork = ngNetwork;
+		this.numTicksPerRound = settings.getNumTicksPerSimulationRound();
+		this.maxHalfWidth = settings.getReplicationConfidenceHalfWidth();
+		this.minConfidentRatio = settings.getReplicationConfidentGamesRatio();
+		this.maxTicksPerRound = settings.getMaxTicksPerSimulationRound();
+		this.minNewRewards = settings.getReplicationMinNewRewards();
+	}
+
+	/**
+	 * Starts a new round, marking the rewards received so far by every
+	 * game as old, so that the confidence of the payoffs in the new round
+	 * is only measured on the rewards received during it. It must be called
+	 * in the thread that updates the payoffs
+	 */
+	public void startRound() {
+		if(!this.isAdaptive()) {
+			return;
+		}
+		for(Game game : this.ngNetwork.getGames()) {
+			game.markRewards();
+		}
+	}
+
+	/**
+	 * Returns <tt>true</tt> if the current round has finished
+	 * 
+	 * @param numTicks the number of ticks since the last replication
+	 * @return <tt>true</tt> if norms must be replicated
+	 */
+	public boolean isRoundFinished(long numTicks) {
+		if(!this.isAdaptive()) {
+			return numTicks > this.numTicksPerRound;
+		}
+		if(numTicks > this.maxTicksPerRound) {
+			return true;
+		}
+		return this.getConfidentGamesRatio() >= this.minConfidentRatio;
+	}
+
+	/**
+	 * Returns <tt>true</tt> if rounds are adaptive
+	 * 
+	 * @return <tt>true</tt> if rounds are adaptive
+	 */
+	public boolean isAdaptive() {
+		return this.maxHalfWidth >= 0;
+	}
+
+	/**
+	 * Returns the ratio of the valid, unfrozen normative games whose 
+	 * payoffs are confident, based on the rewards received since the 
+	 * round started. Frozen games are not replicated, and hence 
+	 * they are not taken into account
+	 * 
+	 * @return the ratio of confident games, or 0 if there are no games
+	 * 					to replicate
+	 */
+	public double getConfidentGamesRatio() {
+		int numGames = 0;
+		int numConfidentGames = 0;
+		
+		for(NormativeGame nGame : this.ngNetwork.getValidNormativeGames()) {
+			if(nGame.isFrozen()) {
+				continue;
+			}
+			numGames++;
+			
+			Game game = nGame.getGame();
+			if(game.getMinNumRewardsSinceMark() < this.minNewRewards) {
+				continue;
+			}
+			double halfWidth = Z_95 * game.getMaxRewardStandardError();
+			if(halfWidth <= this.maxHalfWidth) {
+				numConfidentGames++;
+			}
+		}
+		if(numGames == 0) {
+			return 0.0;
+		}
+		return (double)numConfidentGames / numGames;
+	}
+}
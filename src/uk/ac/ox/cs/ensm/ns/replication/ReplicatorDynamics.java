@@ -0,0 +1,364 @@
+/**
+ * 
+ * @author Javier Morales (javier.morales@cs.ox.ac.uk)
+ */
+package uk.ac.ox.cs.ensm.ns.replication;
+
+import java.util.Arrays;
+
+import uk.ac.ox.cs.ensm.game.NormativeGame;
+
+/**
+ * The replicator dynamics of the norms of a normative game, which are 
+ * integrated along a replication round (a time span of 1) by means of
+ * a {@code ReplicatorIntegrator}. The frequency of each norm changes 
+ * proportionally to its frequency and to the difference between its 
+ * fitness and the average fitness of the norms of the game 
+ * 
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ * @see ReplicatorIntegrator
+ */
+public class ReplicatorDynamics {
+
+	//---------------------------------------------------------------------------
+	// Static attributes
+	//---------------------------------------------------------------------------
+
+	/** Minimum step size of the adaptive integrator */
+	private static final double MIN_STEP_SIZE = 1e-4;
+	
+	//---------------------------------------------------------------------------
+	// Attributes
+	//---------------------------------------------------------------------------
+
+	private ReplicatorIntegrator integrator;	// Integrator of the dynamics
+	private int numSteps;										// Steps per round
+	private double tolerance;								// Error tolerance of each step
+
+	//---------------------------------------------------------------------------
+	// Methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Constructor
+	 * 
+	 * @param integrator the integrator of the dynamics
+	 * @param numSteps the number of steps per round (the initial number of 
+	 * 					steps of the adaptive integrator)
+	 * @param tolerance the error tolerance of each step of the 
+	 * 					adaptive integrator
+	 * @throws IllegalArgumentException if the integrator is adaptive and
+	 * 					the tolerance is not positive
+	 */
+	public ReplicatorDynamics(ReplicatorIntegrator integrator, int numSteps,
+			double tolerance) {
+		
+		/* Otherwise, every step would shrink to the minimum step size */
+		if(integrator == ReplicatorIntegrator.AdaptiveRungeKutta && 
+				!(tolerance > 0)) {
+			throw new IllegalArgumentException("The error tolerance of the " +
+					"adaptive replicator integrator must be positive");
+		}
+		this.integrator = (integrator != null ? 
+				integrator : ReplicatorIntegrator.Euler);
+		this.numSteps = Math.max(numSteps, 1);
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Returns the integrator of the dynamics
+	 * 
+	 * @return the integrator of the dynamics
+	 */
+	public ReplicatorIntegrator getIntegrator() {
+		return this.integrator;
+	}
+
+	/**
+	 * Integrates the dynamics of the norms of a game along a round
+	 * 
+	 * @param nGame the normative game
+	 * @param freqs the frequency of each norm (by norm index)
+	 * @param fitness the fitness of each norm with the given frequencies
+	 * @return the frequency of each norm at the end of the round
+	 */
+	public double[] integrate(NormativeGame nGame, double[] freqs, 
+			double[] fitness) {
+		
+		double[] x = freqs.clone();
+		double h = 1.0 / this.numSteps;
+		
+		switch(this.integrator) {
+		case MultiStepEuler:
+			for(int s=0; s<this.numSteps; s++) {
+				this.eulerStep(nGame, x, h, s == 0 ? fitness : null);
+			}
+			return this.project(x);
+			
+		case RungeKutta4:
+			for(int s=0; s<this.numSteps; s++) {
+				x = this.rungeKuttaStep(nGame, x, h);
+			}
+			return this.project(x);
+			
+		case AdaptiveRungeKutta:
+			return this.project(this.integrateAdaptively(nGame, x, h));
+			
+		case ExponentialWeights:
+			for(int s=0; s<this.numSteps; s++) {
+				this.exponentialStep(nGame, x, h, s == 0 ? fitness : null);
+			}
+			return x;
+			
+		default:
+			this.eulerStep(nGame, x, 1.0, fitness);
+			return x;
+		}
+	}
+
+	/**
+	 * Computes the fitness of each norm of a normative game in terms of 
+	 * the utility that an agent to whom the norm applies derives for any 
+	 * possible role and norm combination, given the frequency of each norm
+	 * 
+	 * @param nGame the normative game
+	 * @param freqs the frequency of each norm (by norm index)
+	 * @param fitness the array to fill with the fitness of each norm
+	 */
+	public void computeFitness(NormativeGame nGame, double[] freqs, 
+			double[] fitness) {
+		
+		int numRoles = nGame.getNumRoles();
+		int[] normIdxs = new int[numRoles];
+		Arrays.fill(fitness, 0.0);
+
+		/* Each norm combination contributes to the fitness of the norm 
+		 * that each one of its roles enacts */
+		for(int nc=0; nc<nGame.getNumNormCombinations(); nc++) {
+			for(int role=0; role<numRoles; role++) {
+				normIdxs[role] = nGame.getNormIndex(nc, role);
+			}
+			
+			for(int role=0; role<numRoles; role++) {
+
+				/* Compute the probability that a group of agents interact while 
+				 * having the norm combination (computed as the joint frequency 
+				 * of the norms applicable to the other roles) */
+				double normFreq = 1;
+				for(int i=0; i<numRoles; i++) {
+					if(i != role) {
+						normFreq = normFreq * freqs[normIdxs[i]];
+					}
+				}
+
+				/* Consider the utility of the role by using its applicable norm */
+				fitness[normIdxs[role]] += nGame.getUtility(role, nc) * normFreq;
+			}
+		}
+	}
+
+	/**
+	 * Returns the average fitness of the norms of a game, 
+	 * weighted by their frequencies
+	 * 
+	 * @param freqs the frequency of each norm
+	 * @param fitness the fitness of each norm
+	 * @return the average fitness of the norms
+	 */
+	public double computeAvgFitness(double[] freqs, double[] fitness) {
+		double avgFitness = 0.0;
+		for(int n=0; n<freqs.length; n++) {
+			avgFitness += freqs[n] * fitness[n];
+		}
+		return avgFitness;
+	}
+
+	//---------------------------------------------------------------------------
+	// Private methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Computes the derivative of the frequency of each norm, 
+	 * x_i * (f_i(x) - avg(x))
+	 * 
+	 * @param nGame the normative game
+	 * @param x the frequency of each norm
+	 * @return the derivative of the frequency of each norm
+	 */
+	private double[] derivative(NormativeGame nGame, double[] x) {
+		double[] fitness = new double[x.length];
+		this.computeFitness(nGame, x, fitness);
+		return this.derivative(x, fitness);
+	}
+
+	/**
+	 * Computes the derivative of the frequency of each norm, given
+	 * the fitness of each norm
+	 * 
+	 * @param x the frequency of each norm
+	 * @param fitness the fitness of each norm
+	 * @return the derivative of the frequency of each norm
+	 */
+	private double[] derivative(double[] x, double[] fitness) {
+		double avgFitness = this.computeAvgFitness(x, fitness);
+		double[] dx = new double[x.length];
+		for(int n=0; n<x.length; n++) {
+			dx[n] = x[n] * (fitness[n] - avgFitness);
+		}
+		return dx;
+	}
+
+	/**
+	 * Performs an Euler step, updating the frequencies in place
+	 * 
+	 * @param nGame the normative game
+	 * @param x the frequency of each norm
+	 * @param h the step size
+	 * @param fitness the fitness of each norm, or {@code null} 
+	 * 					to compute it
+	 */
+	private void eulerStep(NormativeGame nGame, double[] x, double h, 
+			double[] fitness) {
+		
+		double[] dx = (fitness != null ? 
+				this.derivative(x, fitness) : this.derivative(nGame, x));
+		
+		for(int n=0; n<x.length; n++) {
+			x[n] += h * dx[n];
+		}
+	}
+
+	/**
+	 * Performs a classical Runge-Kutta step
+	 * 
+	 * @param nGame the normative game
+	 * @param x the frequency of each norm
+	 * @param h the step size
+	 * @return the frequency of each norm after the step
+	 */
+	private double[] rungeKuttaStep(NormativeGame nGame, double[] x, double h) {
+		double[] k1 = this.derivative(nGame, x);
+		double[] k2 = this.derivative(nGame, this.add(x, k1, h/2));
+		double[] k3 = this.derivative(nGame, this.add(x, k2, h/2));
+		double[] k4 = this.derivative(nGame, this.add(x, k3, h));
+
+		double[] next = new double[x.length];
+		for(int n=0; n<x.length; n++) {
+			next[n] = x[n] + h/6 * (k1[n] + 2*k2[n] + 2*k3[n] + k4[n]);
+		}
+		return next;
+	}
+
+	/**
+	 * Integrates the dynamics along a round with Runge-Kutta steps of 
+	 * adaptive size. The error of each step is estimated by comparing 
+	 * a step with two steps of half its size
+	 * 
+	 * @param nGame the normative game
+	 * @param x the frequency of each norm
+	 * @param h the initial step size
+	 * @return the frequency of each norm at the end of the round
+	 */
+	private double[] integrateAdaptively(NormativeGame nGame, double[] x, 
+			double h) {
+		
+		double t = 0.0;
+		while(t < 1.0) {
+			h = Math.min(h, 1.0 - t);
+			
+			double[] full = this.rungeKuttaStep(nGame, x, h);
+			double[] half = this.rungeKuttaStep(nGame, 
+					this.rungeKuttaStep(nGame, x, h/2), h/2);
+
+			double error = 0.0;
+			for(int n=0; n<x.length; n++) {
+				error = Math.max(error, Math.abs(full[n] - half[n]));
+			}
+
+			/* Accept the step if the error is tolerable (or the step cannot 
+			 * be smaller), and adapt the size of the next step */
+			if(error <= this.tolerance || h <= MIN_STEP_SIZE) {
+				x = half;
+				t += h;
+				if(error < this.tolerance / 32) {
+					h *= 2;
+				}
+			}
+			else {
+				h = Math.max(h / 2, MIN_STEP_SIZE);
+			}
+		}
+		return x;
+	}
+
+	/**
+	 * Performs a multiplicative weights step, updating the frequencies 
+	 * in place. Each frequency is multiplied by the exponential of the 
+	 * relative fitness of its norm, and then frequencies are normalised
+	 * 
+	 * @param nGame the normative game
+	 * @param x the frequency of each norm
+	 * @param h the step size
+	 * @param fitness the fitness of each norm, or {@code null} 
+	 * 					to compute it
+	 */
+	private void exponentialStep(NormativeGame nGame, double[] x, double h,
+			double[] fitness) {
+		
+		if(fitness == null) {
+			fitness = new double[x.length];
+			this.computeFitness(nGame, x, fitness);
+		}
+		double avgFitness = this.computeAvgFitness(x, fitness);
+		
+		double sum = 0.0;
+		for(int n=0; n<x.length; n++) {
+			x[n] *= Math.exp(h * (fitness[n] - avgFitness));
+			sum += x[n];
+		}
+		if(sum > 0) {
+			for(int n=0; n<x.length; n++) {
+				x[n] /= sum;
+			}
+		}
+	}
+
+	/**
+	 * Returns x + h * dx
+	 * 
+	 * @param x a vector
+	 * @param dx another vector
+	 * @param h the scale of the second vector
+	 * @return x + h * dx
+	 */
+	private double[] add(double[] x, double[] dx, double h) {
+		double[] sum = new double[x.length];
+		for(int n=0; n<x.length; n++) {
+			sum[n] = x[n] + h * dx[n];
+		}
+		return sum;
+	}
+
+	/**
+	 * Projects frequencies onto the simplex, by setting the negative 
+	 * frequencies to 0 and normalising them
+	 * 
+	 * @param x the frequency of each norm
+	 * @return the projected frequencies
+	 */
+	private double[] project(double[] x) {
+		double sum = 0.0;
+		for(int n=0; n<x.length; n++) {
+			if(x[n] < 0) {
+				x[n] = 0;
+			}
+			sum += x[n];
+		}
+		if(sum > 0) {
+			for(int n=0; n<x.length; n++) {
+				x[n] /= sum;
+			}
+		}
+		return x;
+	}
+}
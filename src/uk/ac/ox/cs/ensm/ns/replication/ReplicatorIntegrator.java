@@ -0,0 +1,34 @@
+package uk.ac.ox.cs.ensm.ns.replication;
+
+/**
+ * Enumeration that defines how the replicator dynamics are integrated 
+ * during each replication round:
+ * <ol>
+ * <li>	<tt>Euler</tt>: a single Euler step of size 1 (the discrete 
+ * 			replicator equation); 
+ * <li>	<tt>MultiStepEuler</tt>: several Euler steps, whose sizes add up to 1;
+ * <li>	<tt>RungeKutta4</tt>: several classical Runge-Kutta steps, whose 
+ * 			sizes add up to 1;
+ * <li>	<tt>AdaptiveRungeKutta</tt>: Runge-Kutta steps whose size is adapted 
+ * 			to keep the error of each step below a tolerance (estimated by 
+ * 			step doubling); and 
+ * <li>	<tt>ExponentialWeights</tt>: several multiplicative weights steps, 
+ * 			in which each frequency is multiplied by the exponential of its
+ * 			relative fitness and then normalised, so that frequencies 
+ * 			never leave the simplex.
+ * </ol>
+ * 
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ * @see ReplicatorDynamics
+ */
+public enum ReplicatorIntegrator {
+	Euler,
+	
+	MultiStepEuler,
+	
+	RungeKutta4,
+	
+	AdaptiveRungeKutta,
+	
+	ExponentialWeights;
+}
@@ -0,0 +1,287 @@
+/**
+ * 
+ * @author Javier Morales (javier.morales@cs.ox.ac.uk)
+ */
+package uk.ac.ox.cs.ensm.ns.replication;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.ac.ox.cs.ensm.game.NormativeGame;
+
+/**
+ * Computes the fitness and the replicator updates of many normative games
+ * at once. Games of the same shape (number of roles and number of norms)
+ * are packed into blocks of contiguous arrays (the utilities, frequencies
+ * and fitness of their games, one game after another). A game is packed
+ * once, when it is first added, and from then on its values live in its
+ * slice of the block (see {@link NormativeGame#moveValues}), so that they
+ * are updated in place rather than packed on each round. Blocks never
+ * grow (a new block is created when the last one of a shape is full),
+ * and hence the slice of a game never moves. Hence, a replication round
+ * consists of a few sequential passes over each block, instead of a pass
+ * over the structures of each game
+ * 
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ * @see ReplicatorDynamics
+ */
+public class ReplicatorKernel {
+
+	/** Max number of values (utilities) of a block, unless a
+	 * single game has more */
+	private static final int MAX_BLOCK_VALUES = 1 << 20;
+
+	/** Number of games of the first block of each shape (the
+	 * capacity of each new block doubles that of the last one) */
+	private static final int MIN_BLOCK_GAMES = 8;
+
+	//---------------------------------------------------------------------------
+	// Attributes
+	//---------------------------------------------------------------------------
+
+	private List<Block> blocks;				// Blocks of games of the same shape
+	private Map<Long,Block> lastBlocks;	// Last block of each shape
+	private Map<NormativeGame,Slot> slots;	// Slot of each game
+
+	//---------------------------------------------------------------------------
+	// Methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Constructor
+	 */
+	public ReplicatorKernel() {
+		this.blocks = new ArrayList<Block>();
+		this.lastBlocks = new HashMap<Long,Block>();
+		this.slots = new IdentityHashMap<NormativeGame,Slot>();
+	}
+
+	/**
+	 * Packs a game into the last block of its shape (if it was not packed
+	 * before), moving its utilities, frequencies and fitness there
+	 * 
+	 * @param nGame the normative game
+	 */
+	public void add(NormativeGame nGame) {
+		if(this.slots.containsKey(nGame)) {
+			return;
+		}
+		Long shape = ((long)nGame.getNumRoles() << 32) | nGame.getNumNorms();
+		Block block = this.lastBlocks.get(shape);
+
+		if(block == null || block.numGames == block.capacity) {
+			int capacity = (block == null ? MIN_BLOCK_GAMES : 2 * block.capacity);
+			long gameValues = (long)nGame.getNumNormCombinations() *
+					nGame.getNumRoles();
+			capacity = (int)Math.max(1,
+					Math.min(capacity, MAX_BLOCK_VALUES / gameValues));
+
+			block = new Block(nGame, capacity);
+			this.blocks.add(block);
+			this.lastBlocks.put(shape, block);
+		}
+		this.slots.put(nGame, new Slot(block, block.add(nGame)));
+	}
+
+	/**
+	 * Computes the fitness of the norms of some games, which must have
+	 * been added before. The fitness is written in the slices of the games,
+	 * and the games become the ones updated by {@link #eulerStep()}
+	 * 
+	 * @param nGames the normative games
+	 */
+	public void computeFitness(List<NormativeGame> nGames) {
+		for(Block block : this.blocks) {
+			block.numActive = 0;
+		}
+		for(NormativeGame nGame : nGames) {
+			Slot slot = this.getSlot(nGame);
+			slot.block.active[slot.block.numActive++] = slot.index;
+		}
+		for(Block block : this.blocks) {
+			if(block.numActive > 0) {
+				Arrays.sort(block.active, 0, block.numActive);
+				block.computeFitness();
+			}
+		}
+	}
+
+	/**
+	 * Performs an Euler step of size 1 (the discrete replicator equation)
+	 * on the frequencies of the norms of the games whose fitness was last
+	 * computed. The new frequencies are kept apart from the current ones
+	 * (see {@link #getNextFrequencies(NormativeGame, double[])})
+	 */
+	public void eulerStep() {
+		for(Block block : this.blocks) {
+			if(block.numActive > 0) {
+				block.eulerStep();
+			}
+		}
+	}
+
+	/**
+	 * Copies the frequency of each norm of a game after the last Euler step
+	 * 
+	 * @param nGame the normative game
+	 * @param freqs the array where the frequencies are copied (by norm index)
+	 */
+	public void getNextFrequencies(NormativeGame nGame, double[] freqs) {
+		Slot slot = this.getSlot(nGame);
+		int numNorms = slot.block.numNorms;
+		System.arraycopy(slot.block.nextFreqs, slot.index * numNorms,
+				freqs, 0, numNorms);
+	}
+
+	/**
+	 * Returns the slot of a game, which must have been added before
+	 * 
+	 * @param nGame the normative game
+	 * @return the slot of the game
+	 */
+	private Slot getSlot(NormativeGame nGame) {
+		Slot slot = this.slots.get(nGame);
+		if(slot == null) {
+			throw new IllegalArgumentException("Game " + nGame.getName() +
+					" has not been added to the kernel");
+		}
+		return slot;
+	}
+
+	//---------------------------------------------------------------------------
+	// Inner classes
+	//---------------------------------------------------------------------------
+
+	/**
+	 * The block of a game and its index in the block
+	 */
+	private static class Slot {
+
+		private final Block block;
+		private final int index;
+
+		private Slot(Block block, int index) {
+			this.block = block;
+			this.index = index;
+		}
+	}
+
+	/**
+	 * A block of games of the same shape, packed into contiguous arrays
+	 */
+	private static class Block {
+
+		private int numRoles;						// Number of roles of each game
+		private int numNorms;						// Number of norms of each game
+		private int numNCs;							// Number of norm combinations
+		private int capacity;						// Max number of games
+		private int numGames;						// Number of games
+		private double[] utilities;			// Utility of each (game, nc, role)
+		private double[] freqs;					// Frequency of each (game, norm)
+		private double[] fitness;				// Fitness of each (game, norm)
+		private double[] nextFreqs;			// Euler step of each (game, norm)
+		private int[] active;						// Games of the current round
+		private int numActive;					// Number of games of the round
+		private int[] normIdxs;					// Norm of each role in an nc
+
+		/**
+		 * Constructor
+		 * 
+		 * @param shape a game with the shape of the games of the block
+		 * @param capacity the max number of games of the block
+		 */
+		private Block(NormativeGame shape, int capacity) {
+			this.numRoles = shape.getNumRoles();
+			this.numNorms = shape.getNumNorms();
+			this.numNCs = shape.getNumNormCombinations();
+			this.capacity = capacity;
+
+			this.utilities = new double[capacity * this.numNCs * this.numRoles];
+			this.freqs = new double[capacity * this.numNorms];
+			this.fitness = new double[capacity * this.numNorms];
+			this.nextFreqs = new double[capacity * this.numNorms];
+			this.active = new int[capacity];
+			this.normIdxs = new int[this.numRoles];
+		}
+
+		/**
+		 * Moves the values of a game into the next free slice of the block
+		 * 
+		 * @param nGame the game
+		 * @return the index of the game in the block
+		 */
+		private int add(NormativeGame nGame) {
+			int index = this.numGames++;
+			nGame.moveValues(this.utilities, index * this.numNCs * this.numRoles,
+					this.freqs, this.fitness, index * this.numNorms);
+			return index;
+		}
+
+		/**
+		 * Computes the fitness of the norms of the active games of the block.
+		 * Each norm combination contributes to the fitness of the norm that
+		 * each one of its roles enacts, weighted by the joint frequency of the
+		 * norms enacted by the other roles. The norms of each norm combination
+		 * are the digits of its index, which are kept while enumerating the
+		 * norm combinations (the last role being the least significant digit)
+		 */
+		private void computeFitness() {
+			int ncSize = this.numRoles;
+			int[] normIdxs = this.normIdxs;
+
+			for(int a=0; a<this.numActive; a++) {
+				int g = this.active[a];
+				int uBase = g * this.numNCs * ncSize;
+				int fBase = g * this.numNorms;
+
+				Arrays.fill(this.fitness, fBase, fBase + this.numNorms, 0.0);
+				Arrays.fill(normIdxs, 0);
+
+				for(int nc=0; nc<this.numNCs; nc++) {
+					int ncBase = uBase + nc * ncSize;
+
+					for(int role=0; role<ncSize; role++) {
+						double normFreq = 1;
+						for(int i=0; i<ncSize; i++) {
+							if(i != role) {
+								normFreq *= this.freqs[fBase + normIdxs[i]];
+							}
+						}
+						this.fitness[fBase + normIdxs[role]] +=
+								this.utilities[ncBase + role] * normFreq;
+					}
+
+					for(int role=ncSize-1; role>=0; role--) {
+						if(++normIdxs[role] < this.numNorms) {
+							break;
+						}
+						normIdxs[role] = 0;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Performs an Euler step of size 1 on the frequencies of the norms
+		 * of the active games of the block
+		 */
+		private void eulerStep() {
+			for(int a=0; a<this.numActive; a++) {
+				int fBase = this.active[a] * this.numNorms;
+
+				double avgFitness = 0.0;
+				for(int n=fBase; n<fBase + this.numNorms; n++) {
+					avgFitness += this.freqs[n] * this.fitness[n];
+				}
+				for(int n=fBase; n<fBase + this.numNorms; n++) {
+					this.nextFreqs[n] = this.freqs[n] +
+							this.freqs[n] * (this.fitness[n] - avgFitness);
+				}
+			}
+		}
+	}
+}
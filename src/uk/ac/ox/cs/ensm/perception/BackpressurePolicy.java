@@ -0,0 +1,24 @@
+package uk.ac.ox.cs.ensm.perception;
+
+/**
+ * Enumeration that defines what a {@code PerceptionQueue} does when a 
+ * sensor publishes a perception and the queue is full:
+ * <ol>
+ * <li>	<tt>Block</tt>: the sensor waits until there is room in the queue;
+ * <li>	<tt>DropOldest</tt>: the oldest perception in the queue is discarded
+ * 			to make room for the new one; and
+ * <li>	<tt>Coalesce</tt>: a new perception replaces the oldest perception
+ * 			of the same sensor that is still waiting in the queue (if any).
+ * 			Otherwise, the sensor waits until there is room in the queue. 
+ * </ol>
+ * 
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ * @see PerceptionQueue
+ */
+public enum BackpressurePolicy {
+	Block, 
+	
+	DropOldest, 
+	
+	Coalesce;
+}
@@ -0,0 +1,21 @@
+package uk.ac.ox.cs.ensm.perception;
+
+/**
+ * A view that provides the ids of its agents as a sorted array of
+ * primitive ids. Domains with large views should implement this interface
+ * rather than {@code View}, so that the agents that are in several views
+ * can be computed by merging their sorted ids, without boxing them
+ * 
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ * @see ViewTransition#getCommonAgentIds(int, int)
+ */
+public interface IndexedView extends View {
+
+	/**
+	 * Returns the ids of the agents in the view, sorted in ascending order
+	 * and without duplicates. The array must not be modified by the caller
+	 * 
+	 * @return the sorted ids of the agents in the view
+	 */
+	public long[] getSortedAgentIds();
+}
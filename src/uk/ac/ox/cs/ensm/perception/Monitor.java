@@ -2,6 +2,10 @@ package uk.ac.ox.cs.ensm.perception;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * A monitor is employed by the Norm Synthesis Machine to perceive the scenario
@@ -18,6 +22,9 @@ public class Monitor {
 	//---------------------------------------------------------------------------
 
 	private List<Sensor> sensors;	// The sensors of the monitor
+	private PerceptionQueue queue;	// Perceptions published by sensors
+	private ExecutorService executor;	// Threads that poll the sensors
+	private List<MonitorListener> listeners;	// Listeners of the ticks
 
 	//---------------------------------------------------------------------------
 	// Methods
@@ -28,6 +35,7 @@ public class Monitor {
 	 */
 	public Monitor() {
 		this.sensors = new ArrayList<Sensor>();
+		this.listeners = new ArrayList<MonitorListener>();
 	}
 
 	/**
@@ -39,6 +47,57 @@ public class Monitor {
 		this.sensors.add(sensor);
 	}
 
+	/**
+	 * Adds a listener to be notified when each tick starts and finishes
+	 * 
+	 * @param listener the listener
+	 */
+	public void addListener(MonitorListener listener) {
+		if(!this.listeners.contains(listener)) {
+			this.listeners.add(listener);
+		}
+	}
+
+	/**
+	 * Removes a listener from the monitor
+	 * 
+	 * @param listener the listener
+	 */
+	public void removeListener(MonitorListener listener) {
+		this.listeners.remove(listener);
+	}
+
+	/**
+	 * Sets the queue in which sensors publish their perceptions 
+	 * asynchronously. The perceptions of the queue are consumed along
+	 * with those of the sensors added to the monitor (if any)
+	 * 
+	 * @param queue the perception queue
+	 * @see PerceptionQueue
+	 */
+	public void setPerceptionQueue(PerceptionQueue queue) {
+		this.queue = queue;
+	}
+
+	/**
+	 * Sets the threads that poll the sensors. If set, the sensors are
+	 * polled concurrently. Otherwise, they are polled one after another
+	 * 
+	 * @param executor the threads that poll the sensors
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns the queue in which sensors publish their perceptions
+	 * 
+	 * @return the perception queue, or {@code null} if there is none
+	 */
+	public PerceptionQueue getPerceptionQueue() {
+		return this.queue;
+	}
+
 	/**
 	 * Returns a {@code List} with the perceptions ({@code ViewTransition})
 	 * of each {@code Sensor} in the {@code Monitor}
@@ -47,10 +106,50 @@ public class Monitor {
 	 * of each {@code Sensor} in the {@code Monitor} 
 	 */
 	public void getPerceptions(List<ViewTransition> viewTransitions)	{
+		this.getPerceptions(viewTransitions, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Returns a {@code List} with the perceptions ({@code ViewTransition})
+	 * of each {@code Sensor} in the {@code Monitor}, along with the
+	 * perceptions published in the perception queue up to a given tick.
+	 * It does not wait for sensors to publish perceptions. The listeners
+	 * of the monitor are notified that the tick starts before the sensors
+	 * are polled
+	 * 
+	 * @param viewTransitions the list to fill with the perceptions
+	 * @param tick the last tick to consume published perceptions of
+	 */
+	public void getPerceptions(List<ViewTransition> viewTransitions, 
+			long tick)	{
+
 		viewTransitions.clear();
 		
-		for(Sensor sensor : this.sensors) {
-			viewTransitions.add(sensor.getPerception());
+		for(MonitorListener listener : this.listeners) {
+			listener.tickStarted(tick);
+		}
+		if(this.executor != null && this.sensors.size() > 1) {
+			this.pollSensorsConcurrently(viewTransitions);
+		}
+		else {
+			for(Sensor sensor : this.sensors) {
+				viewTransitions.add(sensor.getPerception());
+			}
+		}
+		if(this.queue != null) {
+			this.queue.drainTo(viewTransitions, tick);
+		}
+	}
+
+	/**
+	 * Notifies the listeners of the monitor that a tick has finished. It
+	 * must be called once the perceptions of the tick have been processed
+	 * 
+	 * @param tick the tick
+	 */
+	public void finishTick(long tick) {
+		for(MonitorListener listener : this.listeners) {
+			listener.tickFinished(tick);
 		}
 	}
 
@@ -62,4 +161,53 @@ public class Monitor {
 	public int getNumSensors() {
 		return this.sensors.size();
 	}
+
+	/**
+	 * Returns <tt>true</tt> if the monitor has a perception queue
+	 * 
+	 * @return <tt>true</tt> if the monitor has a perception queue
+	 */
+	public boolean hasPerceptionQueue() {
+		return this.queue != null;
+	}
+
+	//---------------------------------------------------------------------------
+	// Private methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Polls the sensors concurrently, and adds their perceptions in the
+	 * order of the sensors. If a sensor fails, the whole poll fails, 
+	 * so that the tick is not synthesised without its perception
+	 * 
+	 * @param viewTransitions the list to fill with the perceptions
+	 * @throws RuntimeException if a sensor fails to perceive, or the
+	 * 					thread is interrupted while waiting for the sensors
+	 */
+	private void pollSensorsConcurrently(List<ViewTransition> viewTransitions) {
+		List<Future<ViewTransition>> perceptions = 
+				new ArrayList<Future<ViewTransition>>(this.sensors.size());
+		
+		for(final Sensor sensor : this.sensors) {
+			perceptions.add(this.executor.submit(new Callable<ViewTransition>() {
+				@Override
+				public ViewTransition call() {
+					return sensor.getPerception();
+				}
+			}));
+		}
+		for(Future<ViewTransition> perception : perceptions) {
+			try {
+				viewTransitions.add(perception.get());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+			catch (ExecutionException e) {
+				throw new RuntimeException("A sensor failed to perceive", 
+						e.getCause());
+			}
+		}
+	}
 }
@@ -0,0 +1,28 @@
+package uk.ac.ox.cs.ensm.perception;
+
+/**
+ * A listener that is notified each time a {@code Monitor} starts a tick
+ * (i.e., right before it polls its sensors) and each time the tick finishes
+ * (i.e., once the perceptions of the tick have been processed, along with
+ * every answer of the domain functions about them)
+ * 
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ * @see Monitor
+ */
+public interface MonitorListener {
+
+	/**
+	 * Notifies that a tick has started, before the sensors are polled
+	 * 
+	 * @param tick the tick
+	 */
+	public void tickStarted(long tick);
+
+	/**
+	 * Notifies that a tick has finished, once its perceptions have
+	 * been processed
+	 * 
+	 * @param tick the tick
+	 */
+	public void tickFinished(long tick);
+}
@@ -0,0 +1,230 @@
+package uk.ac.ox.cs.ensm.perception;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded queue in which sensors publish their perceptions 
+ * ({@code ViewTransition}) asynchronously, so that the simulation does
+ * not have to wait for the norm synthesis machine to poll its sensors.
+ * Each perception is tagged with the tick in which it was perceived, and
+ * the monitor consumes the perceptions up to the tick being synthesised.
+ * When the queue is full, the queue applies a {@code BackpressurePolicy}
+ * 
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ * @see BackpressurePolicy
+ * @see Monitor
+ */
+public class PerceptionQueue {
+
+	//---------------------------------------------------------------------------
+	// Attributes
+	//---------------------------------------------------------------------------
+
+	private LinkedList<ViewTransition> queue;	// Pending perceptions
+	private int capacity;											// Max number of pending perceptions
+	private BackpressurePolicy policy;				// What to do when the queue is full
+	private long numDiscarded;								// Perceptions dropped or coalesced
+
+	/* Lock and conditions to access the queue */
+	private ReentrantLock lock;
+	private Condition notFull;
+	private Condition notEmpty;
+
+	//---------------------------------------------------------------------------
+	// Methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Constructor
+	 * 
+	 * @param capacity the maximum number of pending perceptions
+	 * @param policy what to do when a perception is published 
+	 * 				and the queue is full
+	 */
+	public PerceptionQueue(int capacity, BackpressurePolicy policy) {
+		if(capacity <= 0) {
+			throw new IllegalArgumentException("The capacity of the " +
+					"perception queue must be positive");
+		}
+		this.queue = new LinkedList<ViewTransition>();
+		this.capacity = capacity;
+		this.policy = policy;
+		this.numDiscarded = 0;
+
+		this.lock = new ReentrantLock();
+		this.notFull = this.lock.newCondition();
+		this.notEmpty = this.lock.newCondition();
+	}
+
+	/**
+	 * Publishes the perception of a sensor, tagging it with the tick in
+	 * which it was perceived. Depending on the backpressure policy, it
+	 * may block until there is room in the queue
+	 * 
+	 * @param vTrans the perception
+	 * @param tick the tick in which the perception was perceived
+	 * @throws InterruptedException if the thread is interrupted 
+	 * 					while waiting for room in the queue
+	 */
+	public void publish(ViewTransition vTrans, long tick) 
+			throws InterruptedException {
+
+		vTrans.setTick(tick);
+
+		this.lock.lockInterruptibly();
+		try {
+			switch(this.policy) {
+			case DropOldest:
+				if(this.queue.size() >= this.capacity) {
+					this.queue.removeFirst();
+					this.numDiscarded++;
+				}
+				break;
+
+			case Coalesce:
+				if(this.queue.size() >= this.capacity && 
+						this.replacePending(vTrans)) {
+					return;
+				}
+				this.awaitRoom();
+				break;
+
+			default:
+				this.awaitRoom();
+				break;
+			}
+			this.queue.addLast(vTrans);
+			this.notEmpty.signal();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Moves the perceptions tagged with a tick lower or equal than 
+	 * {@code maxTick} to a list, in the order they were published. 
+	 * It does not wait for perceptions to be published
+	 * 
+	 * @param vTranss the list to add the perceptions to
+	 * @param maxTick the last tick to consume perceptions of
+	 * @return the number of perceptions added to the list
+	 */
+	public int drainTo(List<ViewTransition> vTranss, long maxTick) {
+		int numDrained = 0;
+
+		this.lock.lock();
+		try {
+			Iterator<ViewTransition> it = this.queue.iterator();
+			while(it.hasNext()) {
+				ViewTransition vTrans = it.next();
+				if(vTrans.getTick() <= maxTick) {
+					vTranss.add(vTrans);
+					it.remove();
+					numDrained++;
+				}
+			}
+			if(numDrained > 0) {
+				this.notFull.signalAll();
+			}
+		}
+		finally {
+			this.lock.unlock();
+		}
+		return numDrained;
+	}
+
+	/**
+	 * Waits until there is some perception in the queue
+	 * 
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public void awaitPerceptions() throws InterruptedException {
+		this.lock.lockInterruptibly();
+		try {
+			while(this.queue.isEmpty()) {
+				this.notEmpty.await();
+			}
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of pending perceptions
+	 * 
+	 * @return the number of pending perceptions
+	 */
+	public int size() {
+		this.lock.lock();
+		try {
+			return this.queue.size();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of perceptions that have been discarded 
+	 * (either dropped or coalesced) so far
+	 * 
+	 * @return the number of perceptions discarded so far
+	 */
+	public long getNumDiscarded() {
+		this.lock.lock();
+		try {
+			return this.numDiscarded;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the backpressure policy of the queue
+	 * 
+	 * @return the backpressure policy of the queue
+	 */
+	public BackpressurePolicy getPolicy() {
+		return this.policy;
+	}
+
+	//---------------------------------------------------------------------------
+	// Private methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Waits until there is room in the queue. The lock must be held
+	 */
+	private void awaitRoom() throws InterruptedException {
+		while(this.queue.size() >= this.capacity) {
+			this.notFull.await();
+		}
+	}
+
+	/**
+	 * Replaces the oldest pending perception of the sensor of a perception
+	 * (if any) with the perception. The lock must be held
+	 * 
+	 * @param vTrans the new perception
+	 * @return <tt>true</tt> if a pending perception has been replaced
+	 */
+	private boolean replacePending(ViewTransition vTrans) {
+		ListIterator<ViewTransition> it = this.queue.listIterator();
+		while(it.hasNext()) {
+			if(it.next().getSensor() == vTrans.getSensor()) {
+				it.set(vTrans);
+				this.numDiscarded++;
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -1,7 +1,10 @@
 package uk.ac.ox.cs.ensm.perception;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A view transition describes the evolution of a part of the system scenario 
@@ -21,6 +24,7 @@ public class ViewTransition {
 
 	private Sensor sensor;							// The sensor that perceived the view transition
 	private Map<Integer, View> views;		// Time steps (t-n, ..., t) and their views
+	private long tick;									// Tick of the perception (-1 if unknown)
 	
 	//---------------------------------------------------------------------------
 	// Methods 
@@ -34,6 +38,7 @@ public class ViewTransition {
 	public ViewTransition(Sensor sensor) {
 		this.sensor = sensor;
 		this.views = new HashMap<Integer, View>();
+		this.tick = -1;
 	}
 
 	/**
@@ -65,6 +70,15 @@ public class ViewTransition {
 	public int getNumTimeSteps() {
 		return this.views.keySet().size();
 	}
+
+	/**
+	 * Returns the time steps that the stream has information about
+	 *
+	 * @return the time steps (t-n, ..., t) of the views in the stream
+	 */
+	public Set<Integer> getTimeSteps() {
+		return this.views.keySet();
+	}
 	
 	/**
 	 * Returns the sensor that perceives the view
@@ -75,10 +89,92 @@ public class ViewTransition {
 		return sensor;
 	}
 
+	/**
+	 * Returns the tick in which the view transition was perceived
+	 * 
+	 * @return the tick of the view transition, or -1 if it is unknown
+	 */
+	public long getTick() {
+		return this.tick;
+	}
+
+	/**
+	 * Tags the view transition with the tick in which it was perceived
+	 * 
+	 * @param tick the tick of the view transition
+	 */
+	public void setTick(long tick) {
+		this.tick = tick;
+	}
+
+	/**
+	 * Returns the ids of the agents that are in the views of two time steps,
+	 * sorted in ascending order. The ids of both views are sorted (unless
+	 * the views are {@code IndexedView}s, which provide them already sorted)
+	 * and intersected by merging them
+	 * 
+	 * @param timestep1 the time step of the first view
+	 * @param timestep2 the time step of the second view
+	 * @return the sorted ids of the agents that are in both views
+	 */
+	public long[] getCommonAgentIds(int timestep1, int timestep2) {
+		long[] ids1 = getSortedAgentIds(this.getView(timestep1));
+		long[] ids2 = getSortedAgentIds(this.getView(timestep2));
+		long[] common = new long[Math.min(ids1.length, ids2.length)];
+		int i = 0, j = 0, n = 0;
+		
+		while(i < ids1.length && j < ids2.length) {
+			if(ids1[i] < ids2[j]) {
+				i++;
+			}
+			else if(ids1[i] > ids2[j]) {
+				j++;
+			}
+			else {
+				common[n++] = ids1[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(common, n);
+	}
+	
 	/**
 	 * Removes the views inside the view stream
 	 */
 	public void clear() {
 		this.views.clear();
 	}	
+
+	//---------------------------------------------------------------------------
+	// Private methods 
+	//---------------------------------------------------------------------------
+	
+	/**
+	 * Returns the ids of the agents in a view, sorted and without duplicates
+	 * 
+	 * @param view the view
+	 * @return the sorted ids of the agents in the view
+	 */
+	private static long[] getSortedAgentIds(View view) {
+		if(view instanceof IndexedView) {
+			return ((IndexedView)view).getSortedAgentIds();
+		}
+		
+		List<Long> agentIds = view.getAgentIds();
+		long[] ids = new long[agentIds.size()];
+		for(int i=0; i<ids.length; i++) {
+			ids[i] = agentIds.get(i);
+		}
+		Arrays.sort(ids);
+		
+		/* Remove duplicates */
+		int n = 0;
+		for(int i=0; i<ids.length; i++) {
+			if(n == 0 || ids[i] != ids[n-1]) {
+				ids[n++] = ids[i];
+			}
+		}
+		return n == ids.length ? ids : Arrays.copyOf(ids, n);
+	}
 }
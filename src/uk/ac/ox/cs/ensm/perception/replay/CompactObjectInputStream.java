@@ -0,0 +1,65 @@
+/**
+ *
+ * @author Javier Morales (javier.morales@cs.ox.ac.uk)
+ */
+package uk.ac.ox.cs.ensm.perception.replay;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An object input stream that reads the class descriptors written by a
+ * {@code CompactObjectOutputStream}, in which each class descriptor is
+ * written once and referred to by its index afterwards
+ *
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ * @see CompactObjectOutputStream
+ */
+class CompactObjectInputStream extends ObjectInputStream {
+
+	//---------------------------------------------------------------------------
+	// Attributes
+	//---------------------------------------------------------------------------
+
+	private List<ObjectStreamClass> classes;	// Descriptors by index
+
+	//---------------------------------------------------------------------------
+	// Methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Constructor
+	 *
+	 * @param in the underlying input stream
+	 * @throws IOException if the stream header cannot be read
+	 */
+	CompactObjectInputStream(InputStream in) throws IOException {
+		super(in);
+		this.classes = new ArrayList<ObjectStreamClass>();
+	}
+
+	/**
+	 * Reads the index of the class, followed by its descriptor
+	 * if it is the first time the class is read
+	 */
+	@Override
+	protected ObjectStreamClass readClassDescriptor()
+			throws IOException, ClassNotFoundException {
+
+		int index = this.readInt();
+		if(index < this.classes.size()) {
+			return this.classes.get(index);
+		}
+		if(index != this.classes.size()) {
+			throw new StreamCorruptedException("Unknown class index: " + index);
+		}
+		ObjectStreamClass desc = super.readClassDescriptor();
+		this.classes.add(desc);
+		return desc;
+	}
+}
@@ -0,0 +1,66 @@
+/**
+ *
+ * @author Javier Morales (javier.morales@cs.ox.ac.uk)
+ */
+package uk.ac.ox.cs.ensm.perception.replay;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An object output stream that writes each class descriptor once. The
+ * first time a class is written, its descriptor is written along with a
+ * new index, and afterwards the class is written as its index. The indexes
+ * survive the resets of the stream, and hence the stream can be reset after
+ * each frame of a log (to forget the objects written) without writing the
+ * descriptors of the domain classes again and again
+ *
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ * @see CompactObjectInputStream
+ */
+class CompactObjectOutputStream extends ObjectOutputStream {
+
+	//---------------------------------------------------------------------------
+	// Attributes
+	//---------------------------------------------------------------------------
+
+	private Map<String,Integer> classIndexes;	// Index of each written class
+
+	//---------------------------------------------------------------------------
+	// Methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Constructor
+	 *
+	 * @param out the underlying output stream
+	 * @throws IOException if the stream header cannot be written
+	 */
+	CompactObjectOutputStream(OutputStream out) throws IOException {
+		super(out);
+		this.classIndexes = new HashMap<String,Integer>();
+	}
+
+	/**
+	 * Writes the index of the class, followed by its descriptor
+	 * if it is the first time the class is written
+	 */
+	@Override
+	protected void writeClassDescriptor(ObjectStreamClass desc)
+			throws IOException {
+
+		Integer index = this.classIndexes.get(desc.getName());
+		if(index != null) {
+			this.writeInt(index);
+			return;
+		}
+		index = this.classIndexes.size();
+		this.classIndexes.put(desc.getName(), index);
+		this.writeInt(index);
+		super.writeClassDescriptor(desc);
+	}
+}
@@ -0,0 +1,723 @@
+/**
+ *
+ * @author Javier Morales (javier.morales@cs.ox.ac.uk)
+ */
+package uk.ac.ox.cs.ensm.perception.replay;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.ac.ox.cs.ensm.agent.AgentAction;
+import uk.ac.ox.cs.ensm.agent.AgentContext;
+import uk.ac.ox.cs.ensm.perception.View;
+
+/**
+ * A record of the perception of a sensor during a single tick. It contains
+ * the views of the {@code ViewTransition} perceived by the sensor, along
+ * with the answers that the domain functions gave for that transition:
+ * <ol>
+ * <li>	the context of each agent in each view of the transition;
+ * <li>	the actions that each agent performed during the transition;
+ * <li>	the reward of each agent for each system goal;
+ * <li>	the conflicts detected for each system goal;
+ * <li>	the potential interactions of the agents; and
+ * <li>	the descriptions of the games played in the views.
+ * </ol>
+ * A record is written by means of a compact encoding, in which ids,
+ * time steps and rewards are written as primitives. Views, contexts and
+ * actions are written as objects, and hence the domain implementations
+ * of {@code View}, {@code AgentContext} and {@code AgentAction} must be
+ * {@code Serializable} to be recorded
+ *
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ * @see PerceptionRecorder
+ * @see PerceptionReplayer
+ */
+public class PerceptionRecord {
+
+	//---------------------------------------------------------------------------
+	// Attributes
+	//---------------------------------------------------------------------------
+
+	private int sensorId;																					// Id of the sensor
+	private String sensorLocation;																// Location of the sensor
+	private Map<Integer,View> views;															// Views by time step
+	private Map<Integer,Map<Long,AgentContext>> contexts;					// Contexts by time step
+	private Map<Long,List<AgentAction>> actions;									// Actions of each agent
+	private Map<String,Map<Long,Double>> rewards;									// Rewards by goal
+	private Map<String,List<ConflictRecord>> conflicts;						// Conflicts by goal
+	private List<InteractionRecord> interactions;									// Agent interactions
+	private List<GameDescriptionRecord> gameDescriptions;					// Game descriptions
+
+	//---------------------------------------------------------------------------
+	// Methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Constructor
+	 *
+	 * @param sensorId the id of the sensor that perceived the transition
+	 * @param sensorLocation the location of the sensor
+	 */
+	public PerceptionRecord(int sensorId, String sensorLocation) {
+		this.sensorId = sensorId;
+		this.sensorLocation = sensorLocation;
+		this.views = new HashMap<Integer,View>();
+		this.contexts = new HashMap<Integer,Map<Long,AgentContext>>();
+		this.actions = new HashMap<Long,List<AgentAction>>();
+		this.rewards = new HashMap<String,Map<Long,Double>>();
+		this.conflicts = new HashMap<String,List<ConflictRecord>>();
+		this.interactions = null;
+		this.gameDescriptions = new ArrayList<GameDescriptionRecord>();
+	}
+
+	/**
+	 * Returns the id of the sensor that perceived the transition
+	 *
+	 * @return the id of the sensor that perceived the transition
+	 */
+	public int getSensorId() {
+		return this.sensorId;
+	}
+
+	/**
+	 * Returns the location of the sensor that perceived the transition
+	 *
+	 * @return the location of the sensor
+	 */
+	public String getSensorLocation() {
+		return this.sensorLocation;
+	}
+
+	/**
+	 * Returns the views of the transition, indexed by time step
+	 *
+	 * @return the views of the transition, indexed by time step
+	 */
+	public Map<Integer,View> getViews() {
+		return this.views;
+	}
+
+	/**
+	 * Sets the view perceived at a given time step
+	 *
+	 * @param timestep the time step
+	 * @param view the view
+	 */
+	public void setView(int timestep, View view) {
+		this.views.put(timestep, view);
+	}
+
+	/**
+	 * Records the context of an agent in the view of a given time step.
+	 * A {@code null} context is recorded as well, since it tells that the
+	 * agent had no context in the view
+	 *
+	 * @param timestep the time step of the view
+	 * @param agentId the id of the agent
+	 * @param context the context of the agent (may be {@code null})
+	 */
+	public void setContext(int timestep, long agentId, AgentContext context) {
+		if(!this.contexts.containsKey(timestep)) {
+			this.contexts.put(timestep, new HashMap<Long,AgentContext>());
+		}
+		this.contexts.get(timestep).put(agentId, context);
+	}
+
+	/**
+	 * Returns <tt>true</tt> if the context of the agent in the view of
+	 * the given time step has been recorded
+	 *
+	 * @param timestep the time step of the view
+	 * @param agentId the id of the agent
+	 * @return <tt>true</tt> if the context has been recorded
+	 */
+	public boolean hasContext(int timestep, long agentId) {
+		return this.contexts.containsKey(timestep) &&
+				this.contexts.get(timestep).containsKey(agentId);
+	}
+
+	/**
+	 * Returns the recorded context of an agent in the view of a time step
+	 *
+	 * @param timestep the time step of the view
+	 * @param agentId the id of the agent
+	 * @return the context of the agent, or {@code null} if it had no context
+	 */
+	public AgentContext getContext(int timestep, long agentId) {
+		if(!this.contexts.containsKey(timestep)) {
+			return null;
+		}
+		return this.contexts.get(timestep).get(agentId);
+	}
+
+	/**
+	 * Records the actions performed by an agent during the transition
+	 *
+	 * @param agentId the id of the agent
+	 * @param agActions the actions performed by the agent
+	 */
+	public void setActions(long agentId, List<AgentAction> agActions) {
+		this.actions.put(agentId, new ArrayList<AgentAction>(agActions));
+	}
+
+	/**
+	 * Returns the recorded actions of an agent, or {@code null} if
+	 * they were never asked for during the recording
+	 *
+	 * @param agentId the id of the agent
+	 * @return the actions performed by the agent during the transition
+	 */
+	public List<AgentAction> getActions(long agentId) {
+		return this.actions.get(agentId);
+	}
+
+	/**
+	 * Records the reward of an agent with respect to a goal
+	 *
+	 * @param goalName the name of the goal
+	 * @param agentId the id of the agent
+	 * @param reward the reward of the agent
+	 */
+	public void setReward(String goalName, long agentId, double reward) {
+		if(!this.rewards.containsKey(goalName)) {
+			this.rewards.put(goalName, new HashMap<Long,Double>());
+		}
+		this.rewards.get(goalName).put(agentId, reward);
+	}
+
+	/**
+	 * Returns the recorded reward of an agent with respect to a goal,
+	 * or {@code null} if it was never asked for during the recording
+	 *
+	 * @param goalName the name of the goal
+	 * @param agentId the id of the agent
+	 * @return the reward of the agent
+	 */
+	public Double getReward(String goalName, long agentId) {
+		if(!this.rewards.containsKey(goalName)) {
+			return null;
+		}
+		return this.rewards.get(goalName).get(agentId);
+	}
+
+	/**
+	 * Records the conflicts detected in the transition for a goal
+	 *
+	 * @param goalName the name of the goal
+	 * @param goalConflicts the conflicts detected for the goal
+	 */
+	public void setConflicts(String goalName, List<ConflictRecord> goalConflicts) {
+		this.conflicts.put(goalName, goalConflicts);
+	}
+
+	/**
+	 * Returns the recorded conflicts of the transition for a goal,
+	 * or {@code null} if they were never asked for during the recording
+	 *
+	 * @param goalName the name of the goal
+	 * @return the conflicts detected for the goal
+	 */
+	public List<ConflictRecord> getConflicts(String goalName) {
+		return this.conflicts.get(goalName);
+	}
+
+	/**
+	 * Records the potential interactions of the agents in the transition
+	 *
+	 * @param interactions the potential interactions of the agents
+	 */
+	public void setInteractions(List<InteractionRecord> interactions) {
+		this.interactions = interactions;
+	}
+
+	/**
+	 * Returns the recorded interactions of the agents in the transition,
+	 * or {@code null} if they were never asked for during the recording
+	 *
+	 * @return the potential interactions of the agents
+	 */
+	public List<InteractionRecord> getInteractions() {
+		return this.interactions;
+	}
+
+	/**
+	 * Records the description of a game played by two agents in the view
+	 * of a given time step
+	 *
+	 * @param timestep the time step of the view
+	 * @param agentIdA the id of agent A of the game
+	 * @param agentIdB the id of agent B of the game
+	 * @param description the description of the game
+	 */
+	public void setGameDescription(int timestep, long agentIdA, long agentIdB,
+			View description) {
+
+		for(GameDescriptionRecord gRecord : this.gameDescriptions) {
+			if(gRecord.matches(timestep, agentIdA, agentIdB)) {
+				gRecord.description = description;
+				return;
+			}
+		}
+		this.gameDescriptions.add(new GameDescriptionRecord(timestep,
+				agentIdA, agentIdB, description));
+	}
+
+	/**
+	 * Returns <tt>true</tt> if the description of the game played by two
+	 * agents in the view of the given time step has been recorded
+	 *
+	 * @param timestep the time step of the view
+	 * @param agentIdA the id of agent A of the game
+	 * @param agentIdB the id of agent B of the game
+	 * @return <tt>true</tt> if the game description has been recorded
+	 */
+	public boolean hasGameDescription(int timestep, long agentIdA,
+			long agentIdB) {
+
+		return this.getGameDescriptionRecord(timestep,
+				agentIdA, agentIdB) != null;
+	}
+
+	/**
+	 * Returns the recorded description of the game played by two
+	 * agents in the view of a time step
+	 *
+	 * @param timestep the time step of the view
+	 * @param agentIdA the id of agent A of the game
+	 * @param agentIdB the id of agent B of the game
+	 * @return the description of the game, or {@code null}
+	 */
+	public View getGameDescription(int timestep, long agentIdA,
+			long agentIdB) {
+
+		GameDescriptionRecord gRecord = this.getGameDescriptionRecord(timestep,
+				agentIdA, agentIdB);
+		return gRecord != null ? gRecord.description : null;
+	}
+
+	//---------------------------------------------------------------------------
+	// Encoding
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Writes the record to a stream. Ids, time steps and rewards are
+	 * written as primitives, and only the domain objects (views, contexts
+	 * and actions) are written as objects
+	 *
+	 * @param out the stream
+	 * @throws IOException if the record cannot be written
+	 */
+	void write(ObjectOutputStream out) throws IOException {
+		out.writeInt(this.sensorId);
+		out.writeObject(this.sensorLocation);
+
+		/* Views */
+		out.writeInt(this.views.size());
+		for(Map.Entry<Integer,View> entry : this.views.entrySet()) {
+			out.writeInt(entry.getKey());
+			out.writeObject(entry.getValue());
+		}
+
+		/* Contexts */
+		out.writeInt(this.contexts.size());
+		for(Map.Entry<Integer,Map<Long,AgentContext>> entry :
+			this.contexts.entrySet()) {
+
+			out.writeInt(entry.getKey());
+			out.writeInt(entry.getValue().size());
+			for(Map.Entry<Long,AgentContext> agEntry : entry.getValue().entrySet()) {
+				out.writeLong(agEntry.getKey());
+				out.writeObject(agEntry.getValue());
+			}
+		}
+
+		/* Actions */
+		out.writeInt(this.actions.size());
+		for(Map.Entry<Long,List<AgentAction>> entry : this.actions.entrySet()) {
+			out.writeLong(entry.getKey());
+			out.writeInt(entry.getValue().size());
+			for(AgentAction action : entry.getValue()) {
+				out.writeObject(action);
+			}
+		}
+
+		/* Rewards */
+		out.writeInt(this.rewards.size());
+		for(Map.Entry<String,Map<Long,Double>> entry : this.rewards.entrySet()) {
+			out.writeUTF(entry.getKey());
+			out.writeInt(entry.getValue().size());
+			for(Map.Entry<Long,Double> agEntry : entry.getValue().entrySet()) {
+				out.writeLong(agEntry.getKey());
+				out.writeDouble(agEntry.getValue());
+			}
+		}
+
+		/* Conflicts */
+		out.writeInt(this.conflicts.size());
+		for(Map.Entry<String,List<ConflictRecord>> entry :
+			this.conflicts.entrySet()) {
+
+			out.writeUTF(entry.getKey());
+			out.writeInt(entry.getValue().size());
+			for(ConflictRecord cRecord : entry.getValue()) {
+				cRecord.write(out);
+			}
+		}
+
+		/* Interactions (a negative size if they were not recorded) */
+		if(this.interactions == null) {
+			out.writeInt(-1);
+		}
+		else {
+			out.writeInt(this.interactions.size());
+			for(InteractionRecord iRecord : this.interactions) {
+				iRecord.write(out);
+			}
+		}
+
+		/* Game descriptions */
+		out.writeInt(this.gameDescriptions.size());
+		for(GameDescriptionRecord gRecord : this.gameDescriptions) {
+			gRecord.write(out);
+		}
+	}
+
+	/**
+	 * Reads a record from a stream
+	 *
+	 * @param in the stream
+	 * @return the record
+	 * @throws IOException if the record cannot be read
+	 * @throws ClassNotFoundException if the class of a domain object
+	 * 					cannot be found
+	 */
+	static PerceptionRecord read(ObjectInputStream in)
+			throws IOException, ClassNotFoundException {
+
+		PerceptionRecord record = new PerceptionRecord(in.readInt(),
+				(String)in.readObject());
+
+		/* Views */
+		int numViews = in.readInt();
+		for(int i=0; i<numViews; i++) {
+			int timestep = in.readInt();
+			record.setView(timestep, (View)in.readObject());
+		}
+
+		/* Contexts */
+		int numTimesteps = in.readInt();
+		for(int i=0; i<numTimesteps; i++) {
+			int timestep = in.readInt();
+			int numContexts = in.readInt();
+			for(int j=0; j<numContexts; j++) {
+				long agentId = in.readLong();
+				record.setContext(timestep, agentId, (AgentContext)in.readObject());
+			}
+		}
+
+		/* Actions */
+		int numAgents = in.readInt();
+		for(int i=0; i<numAgents; i++) {
+			long agentId = in.readLong();
+			int numActions = in.readInt();
+			List<AgentAction> agActions = new ArrayList<AgentAction>(numActions);
+			for(int j=0; j<numActions; j++) {
+				agActions.add((AgentAction)in.readObject());
+			}
+			record.actions.put(agentId, agActions);
+		}
+
+		/* Rewards */
+		int numGoals = in.readInt();
+		for(int i=0; i<numGoals; i++) {
+			String goalName = in.readUTF();
+			int numRewards = in.readInt();
+			for(int j=0; j<numRewards; j++) {
+				long agentId = in.readLong();
+				record.setReward(goalName, agentId, in.readDouble());
+			}
+		}
+
+		/* Conflicts */
+		numGoals = in.readInt();
+		for(int i=0; i<numGoals; i++) {
+			String goalName = in.readUTF();
+			int numConflicts = in.readInt();
+			List<ConflictRecord> cRecords = new ArrayList<ConflictRecord>(numConflicts);
+			for(int j=0; j<numConflicts; j++) {
+				cRecords.add(ConflictRecord.read(in));
+			}
+			record.setConflicts(goalName, cRecords);
+		}
+
+		/* Interactions */
+		int numInteractions = in.readInt();
+		if(numInteractions >= 0) {
+			List<InteractionRecord> iRecords =
+					new ArrayList<InteractionRecord>(numInteractions);
+			for(int i=0; i<numInteractions; i++) {
+				iRecords.add(InteractionRecord.read(in));
+			}
+			record.setInteractions(iRecords);
+		}
+
+		/* Game descriptions */
+		int numDescriptions = in.readInt();
+		for(int i=0; i<numDescriptions; i++) {
+			record.gameDescriptions.add(GameDescriptionRecord.read(in));
+		}
+		return record;
+	}
+
+	//---------------------------------------------------------------------------
+	// Private methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Returns the record of the description of the game played by two
+	 * agents in the view of a time step
+	 *
+	 * @param timestep the time step of the view
+	 * @param agentIdA the id of agent A of the game
+	 * @param agentIdB the id of agent B of the game
+	 * @return the record of the game description, or {@code null}
+	 */
+	private GameDescriptionRecord getGameDescriptionRecord(int timestep,
+			long agentIdA, long agentIdB) {
+
+		for(GameDescriptionRecord gRecord : this.gameDescriptions) {
+			if(gRecord.matches(timestep, agentIdA, agentIdB)) {
+				return gRecord;
+			}
+		}
+		return null;
+	}
+
+	//---------------------------------------------------------------------------
+	// Inner classes
+	//---------------------------------------------------------------------------
+
+	/**
+	 * A recorded conflict. Since sensors are not serializable, a conflict
+	 * is stored as the time step of the view in which it was perceived and
+	 * the ids of the conflicting agents, and it is rebuilt during replay
+	 *
+	 * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+	 */
+	public static class ConflictRecord {
+
+		private Integer timestep;						// Time step of the conflicting view
+		private List<Long> conflictingAgents;	// The agents that are in conflict
+
+		/**
+		 * Constructor
+		 *
+		 * @param timestep the time step of the view in which the conflict
+		 * 				was perceived, or {@code null} if the view is not part of
+		 * 				the transition
+		 * @param conflictingAgents the agents that are in conflict
+		 */
+		public ConflictRecord(Integer timestep, List<Long> conflictingAgents) {
+			this.timestep = timestep;
+			this.conflictingAgents = new ArrayList<Long>(conflictingAgents);
+		}
+
+		/**
+		 * Returns the time step of the view in which the conflict was perceived
+		 *
+		 * @return the time step of the conflicting view
+		 */
+		public Integer getTimestep() {
+			return this.timestep;
+		}
+
+		/**
+		 * Returns the agents that are in conflict
+		 *
+		 * @return the agents that are in conflict
+		 */
+		public List<Long> getConflictingAgents() {
+			return this.conflictingAgents;
+		}
+
+		/**
+		 * Writes the conflict to a stream
+		 *
+		 * @param out the stream
+		 * @throws IOException if the conflict cannot be written
+		 */
+		void write(ObjectOutputStream out) throws IOException {
+			out.writeBoolean(this.timestep != null);
+			if(this.timestep != null) {
+				out.writeInt(this.timestep);
+			}
+			out.writeInt(this.conflictingAgents.size());
+			for(Long agentId : this.conflictingAgents) {
+				out.writeLong(agentId);
+			}
+		}
+
+		/**
+		 * Reads a conflict from a stream
+		 *
+		 * @param in the stream
+		 * @return the conflict
+		 * @throws IOException if the conflict cannot be read
+		 */
+		static ConflictRecord read(ObjectInputStream in) throws IOException {
+			Integer timestep = in.readBoolean() ? Integer.valueOf(in.readInt()) : null;
+			int numAgents = in.readInt();
+			List<Long> agentIds = new ArrayList<Long>(numAgents);
+			for(int i=0; i<numAgents; i++) {
+				agentIds.add(in.readLong());
+			}
+			return new ConflictRecord(timestep, agentIds);
+		}
+	}
+
+	/**
+	 * A recorded agent interaction. Since agents are not serializable,
+	 * an interaction is stored as the ids of its agents and their contexts,
+	 * and the agents are resolved by their ids during replay
+	 *
+	 * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+	 */
+	public static class InteractionRecord {
+
+		private long[] agentIds;							// The ids of the interacting agents
+		private List<AgentContext> contexts;	// The contexts of the agents
+
+		/**
+		 * Constructor
+		 *
+		 * @param agentIds the ids of the interacting agents
+		 * @param contexts the contexts of the agents, in the same order
+		 */
+		public InteractionRecord(long[] agentIds, List<AgentContext> contexts) {
+			this.agentIds = agentIds;
+			this.contexts = new ArrayList<AgentContext>(contexts);
+		}
+
+		/**
+		 * Returns the ids of the interacting agents
+		 *
+		 * @return the ids of the interacting agents
+		 */
+		public long[] getAgentIds() {
+			return this.agentIds;
+		}
+
+		/**
+		 * Returns the contexts of the interacting agents
+		 *
+		 * @return the contexts of the interacting agents
+		 */
+		public List<AgentContext> getContexts() {
+			return this.contexts;
+		}
+
+		/**
+		 * Writes the interaction to a stream
+		 *
+		 * @param out the stream
+		 * @throws IOException if the interaction cannot be written
+		 */
+		void write(ObjectOutputStream out) throws IOException {
+			out.writeInt(this.agentIds.length);
+			for(long agentId : this.agentIds) {
+				out.writeLong(agentId);
+			}
+			out.writeInt(this.contexts.size());
+			for(AgentContext context : this.contexts) {
+				out.writeObject(context);
+			}
+		}
+
+		/**
+		 * Reads an interaction from a stream
+		 *
+		 * @param in the stream
+		 * @return the interaction
+		 * @throws IOException if the interaction cannot be read
+		 * @throws ClassNotFoundException if the class of a context
+		 * 					cannot be found
+		 */
+		static InteractionRecord read(ObjectInputStream in)
+				throws IOException, ClassNotFoundException {
+
+			long[] agentIds = new long[in.readInt()];
+			for(int i=0; i<agentIds.length; i++) {
+				agentIds[i] = in.readLong();
+			}
+			int numContexts = in.readInt();
+			List<AgentContext> contexts = new ArrayList<AgentContext>(numContexts);
+			for(int i=0; i<numContexts; i++) {
+				contexts.add((AgentContext)in.readObject());
+			}
+			return new InteractionRecord(agentIds, contexts);
+		}
+	}
+
+	/**
+	 * A recorded description of the game played by two agents in a view
+	 *
+	 * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+	 */
+	private static class GameDescriptionRecord {
+
+		private int timestep;					// Time step of the view
+		private long agentIdA;				// Id of agent A of the game
+		private long agentIdB;				// Id of agent B of the game
+		private View description;			// The description of the game
+
+		/**
+		 * Constructor
+		 */
+		GameDescriptionRecord(int timestep, long agentIdA, long agentIdB,
+				View description) {
+
+			this.timestep = timestep;
+			this.agentIdA = agentIdA;
+			this.agentIdB = agentIdB;
+			this.description = description;
+		}
+
+		/**
+		 * Returns <tt>true</tt> if the record describes the game played
+		 * by the given agents in the view of the given time step
+		 */
+		boolean matches(int timestep, long agentIdA, long agentIdB) {
+			return this.timestep == timestep && this.agentIdA == agentIdA &&
+					this.agentIdB == agentIdB;
+		}
+
+		/**
+		 * Writes the game description to a stream
+		 */
+		void write(ObjectOutputStream out) throws IOException {
+			out.writeInt(this.timestep);
+			out.writeLong(this.agentIdA);
+			out.writeLong(this.agentIdB);
+			out.writeObject(this.description);
+		}
+
+		/**
+		 * Reads a game description from a stream
+		 */
+		static GameDescriptionRecord read(ObjectInputStream in)
+				throws IOException, ClassNotFoundException {
+
+			int timestep = in.readInt();
+			long agentIdA = in.readLong();
+			long agentIdB = in.readLong();
+			return new GameDescriptionRecord(timestep, agentIdA, agentIdB,
+					(View)in.readObject());
+		}
+	}
+}
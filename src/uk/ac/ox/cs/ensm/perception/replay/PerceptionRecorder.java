@@ -0,0 +1,457 @@
+/**
+ *
+ * @author Javier Morales (javier.morales@cs.ox.ac.uk)
+ */
+package uk.ac.ox.cs.ensm.perception.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.ac.ox.cs.ensm.agent.AgentAction;
+import uk.ac.ox.cs.ensm.agent.AgentContext;
+import uk.ac.ox.cs.ensm.agent.AgentInteraction;
+import uk.ac.ox.cs.ensm.agent.EvolutionaryAgent;
+import uk.ac.ox.cs.ensm.config.Goal;
+import uk.ac.ox.cs.ensm.perception.Conflict;
+import uk.ac.ox.cs.ensm.perception.MonitorListener;
+import uk.ac.ox.cs.ensm.perception.Sensor;
+import uk.ac.ox.cs.ensm.perception.View;
+import uk.ac.ox.cs.ensm.perception.ViewTransition;
+import uk.ac.ox.cs.ensm.perception.replay.PerceptionRecord.ConflictRecord;
+import uk.ac.ox.cs.ensm.perception.replay.PerceptionRecord.InteractionRecord;
+
+/**
+ * Writes an append-only log of the perceptions of a group of sensors,
+ * along with the answers of the domain functions for each perception. The
+ * log starts with a header that lists the recorded sensors (their ids and 
+ * locations), followed by a stream of frames, one for each tick, where each
+ * frame contains an entry for each sensor: a {@code PerceptionRecord}, or 
+ * a placeholder if the sensor perceived nothing during the tick.
+ * <p>
+ * Ticks are delimited by the monitor of the norm synthesis machine, and
+ * hence the recorder must be added as a listener of the monitor. A frame
+ * is written when its tick finishes, that is, once the domain functions 
+ * have answered about its perceptions. A typical recording setup is:
+ * <pre>
+ * PerceptionRecorder recorder = new PerceptionRecorder(file, sensors);
+ * for(Sensor sensor : recorder.getSensors()) {
+ * 	ensm.addSensor(sensor);
+ * }
+ * ensm.getMonitor().addListener(recorder);
+ * </pre>
+ * where the domain functions of the machine are wrapped by a 
+ * {@code RecordingDomainFunctions}.
+ * <p>
+ * Each frame is written by means of a compact encoding (see
+ * {@code PerceptionRecord}). The stream is reset after each frame, so that
+ * the recorder does not keep references to old perceptions, while the class
+ * descriptors of the domain objects are written only once in the whole log.
+ * <p>
+ * If the log cannot be written (e.g., some view is not serializable), the
+ * recorder fails, and any further attempt to record a perception throws
+ * an {@code IllegalStateException}, so that the recording is not silently
+ * truncated
+ *
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ * @see RecordingSensor
+ * @see RecordingDomainFunctions
+ * @see PerceptionReplayer
+ */
+public class PerceptionRecorder implements MonitorListener {
+
+	//---------------------------------------------------------------------------
+	// Attributes
+	//---------------------------------------------------------------------------
+
+	private CompactObjectOutputStream output;	// The log
+
+	/* Recorded sensors (by id) and the sensors that record them */
+	private Map<Integer,Sensor> sensors;
+	private List<Sensor> recordingSensors;
+
+	/* Records of the current frame, indexed by sensor id, and whether 
+	 * the tick of the frame has started (and not finished yet) */
+	private Map<Integer,PerceptionRecord> frame;
+	private boolean inTick;
+
+	/* Index of the transitions and views of the current frame */
+	private Map<ViewTransition,PerceptionRecord> transitionsIndex;
+	private Map<View,PerceptionRecord> viewsIndex;
+	private Map<View,Integer> timestepsIndex;
+
+	private long numFrames;				// Number of frames written so far
+	private IOException failure;	// Why the log failed to be written (if so)
+
+	//---------------------------------------------------------------------------
+	// Methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Constructor. Creates (or overwrites) the log file, and writes
+	 * the header with the sensors to record
+	 *
+	 * @param file the file to write the log to
+	 * @param sensors the sensors to record
+	 * @throws IOException if the file cannot be created
+	 * @throws IllegalArgumentException if two sensors have the same id
+	 */
+	public PerceptionRecorder(File file, List<Sensor> sensors) 
+			throws IOException {
+		
+		this.sensors = new LinkedHashMap<Integer,Sensor>();
+		this.recordingSensors = new ArrayList<Sensor>();
+		for(Sensor sensor : sensors) {
+			if(this.sensors.put(sensor.getId(), sensor) != null) {
+				throw new IllegalArgumentException("Two sensors have id " + 
+						sensor.getId());
+			}
+			this.recordingSensors.add(new RecordingSensor(sensor, this));
+		}
+		
+		this.output = new CompactObjectOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file)));
+		try {
+			this.output.writeInt(this.sensors.size());
+			for(Sensor sensor : this.sensors.values()) {
+				this.output.writeInt(sensor.getId());
+				this.output.writeObject(sensor.getLocation());
+			}
+			this.output.reset();
+			this.output.flush();
+		}
+		catch (IOException e) {
+			this.output.close();
+			throw e;
+		}
+
+		this.frame = new HashMap<Integer,PerceptionRecord>();
+		this.inTick = false;
+		this.transitionsIndex = new IdentityHashMap<ViewTransition,PerceptionRecord>();
+		this.viewsIndex = new IdentityHashMap<View,PerceptionRecord>();
+		this.timestepsIndex = new IdentityHashMap<View,Integer>();
+		this.numFrames = 0;
+		this.failure = null;
+	}
+
+	/**
+	 * Returns the sensors that record the perceptions of the recorded
+	 * sensors, which must be added to the norm synthesis machine instead
+	 * of the recorded ones
+	 *
+	 * @return the recording sensors, one for each recorded sensor
+	 */
+	public List<Sensor> getSensors() {
+		return new ArrayList<Sensor>(this.recordingSensors);
+	}
+
+	/**
+	 * Starts the frame of a new tick. If the previous tick did not finish
+	 * (e.g., it failed), its frame is written first
+	 *
+	 * @param tick the tick
+	 * @throws IllegalStateException if the log could not be written
+	 */
+	@Override
+	public synchronized void tickStarted(long tick) {
+		this.checkFailure();
+		if(this.inTick) {
+			this.writeFrameOrFail();
+		}
+		this.inTick = true;
+	}
+
+	/**
+	 * Writes the frame of a tick, once the domain functions 
+	 * have answered about its perceptions
+	 *
+	 * @param tick the tick
+	 * @throws IllegalStateException if the log could not be written
+	 */
+	@Override
+	public synchronized void tickFinished(long tick) {
+		this.checkFailure();
+		if(this.inTick) {
+			this.writeFrameOrFail();
+		}
+	}
+
+	/**
+	 * Records the perception of a sensor during the current tick. A
+	 * {@code null} transition (the sensor perceived nothing) is recorded
+	 * as a placeholder
+	 *
+	 * @param sensor the sensor that perceived the transition
+	 * @param vTrans the view transition perceived by the sensor
+	 * @throws IllegalStateException if the log could not be written, if
+	 * 					no tick has started, or if the sensor already perceived
+	 * 					during the tick
+	 * @throws IllegalArgumentException if the sensor is not recorded
+	 */
+	public synchronized void recordPerception(Sensor sensor,
+			ViewTransition vTrans) {
+
+		this.checkFailure();
+		if(!this.sensors.containsKey(sensor.getId())) {
+			throw new IllegalArgumentException("Sensor " + sensor.getId() + 
+					" is not one of the recorded sensors");
+		}
+		if(!this.inTick) {
+			throw new IllegalStateException("Sensor " + sensor.getId() + 
+					" perceived outside a tick (the recorder must be a " +
+					"listener of the monitor)");
+		}
+		if(this.frame.containsKey(sensor.getId())) {
+			throw new IllegalStateException("Sensor " + sensor.getId() + 
+					" perceived twice in the same tick");
+		}
+		if(vTrans == null) {
+			this.frame.put(sensor.getId(), null);
+			return;
+		}
+
+		PerceptionRecord record = new PerceptionRecord(sensor.getId(),
+				sensor.getLocation());
+
+		/* Index the transition and its views to record the answers
+		 * that the domain functions will give about them */
+		for(Integer timestep : vTrans.getTimeSteps()) {
+			View view = vTrans.getView(timestep);
+			record.setView(timestep, view);
+
+			this.viewsIndex.put(view, record);
+			this.timestepsIndex.put(view, timestep);
+		}
+		this.transitionsIndex.put(vTrans, record);
+		this.frame.put(sensor.getId(), record);
+	}
+
+	/**
+	 * Records the context of an agent in a view
+	 *
+	 * @param agentId the id of the agent
+	 * @param view the view
+	 * @param context the context of the agent in the view
+	 */
+	public synchronized void recordContext(long agentId, View view,
+			AgentContext context) {
+
+		PerceptionRecord record = this.viewsIndex.get(view);
+		if(record != null) {
+			record.setContext(this.timestepsIndex.get(view), agentId, context);
+		}
+	}
+
+	/**
+	 * Records the actions performed by an agent in a view transition
+	 *
+	 * @param agentId the id of the agent
+	 * @param vTrans the view transition
+	 * @param actions the actions performed by the agent
+	 */
+	public synchronized void recordActions(long agentId, ViewTransition vTrans,
+			List<AgentAction> actions) {
+
+		PerceptionRecord record = this.transitionsIndex.get(vTrans);
+		if(record != null && actions != null) {
+			record.setActions(agentId, actions);
+		}
+	}
+
+	/**
+	 * Records the reward of an agent in a view transition
+	 *
+	 * @param agentId the id of the agent
+	 * @param vTrans the view transition
+	 * @param goal the goal the reward refers to
+	 * @param reward the reward of the agent
+	 */
+	public synchronized void recordReward(long agentId, ViewTransition vTrans,
+			Goal goal, double reward) {
+
+		PerceptionRecord record = this.transitionsIndex.get(vTrans);
+		if(record != null) {
+			record.setReward(goal.getName(), agentId, reward);
+		}
+	}
+
+	/**
+	 * Records the conflicts detected in a view transition
+	 *
+	 * @param vTrans the view transition
+	 * @param goal the goal the conflicts refer to
+	 * @param conflicts the conflicts detected in the view transition
+	 */
+	public synchronized void recordConflicts(ViewTransition vTrans, Goal goal,
+			List<Conflict> conflicts) {
+
+		PerceptionRecord record = this.transitionsIndex.get(vTrans);
+		if(record == null || conflicts == null) {
+			return;
+		}
+
+		List<ConflictRecord> cRecords = new ArrayList<ConflictRecord>();
+		for(Conflict conflict : conflicts) {
+			Integer timestep = this.timestepsIndex.get(conflict.getConflict());
+			cRecords.add(new ConflictRecord(timestep,
+					conflict.getConflictingAgents()));
+		}
+		record.setConflicts(goal.getName(), cRecords);
+	}
+
+	/**
+	 * Records the potential interactions of the agents in a view transition
+	 *
+	 * @param vTrans the view transition
+	 * @param interactions the potential interactions of the agents
+	 */
+	public synchronized void recordInteractions(ViewTransition vTrans,
+			List<AgentInteraction> interactions) {
+
+		PerceptionRecord record = this.transitionsIndex.get(vTrans);
+		if(record == null || interactions == null) {
+			return;
+		}
+
+		List<InteractionRecord> iRecords = new ArrayList<InteractionRecord>();
+		for(AgentInteraction interaction : interactions) {
+			List<EvolutionaryAgent> agents = interaction.getAgents();
+			long[] agentIds = new long[agents.size()];
+			for(int i=0; i<agentIds.length; i++) {
+				agentIds[i] = agents.get(i).getId();
+			}
+			iRecords.add(new InteractionRecord(agentIds, interaction.getContexts()));
+		}
+		record.setInteractions(iRecords);
+	}
+
+	/**
+	 * Records the description of a game played by two agents in a view
+	 *
+	 * @param view the view
+	 * @param agA agent A of the game
+	 * @param agB agent B of the game
+	 * @param description the description of the game
+	 */
+	public synchronized void recordGameDescription(View view,
+			EvolutionaryAgent agA, EvolutionaryAgent agB, View description) {
+
+		PerceptionRecord record = this.viewsIndex.get(view);
+		if(record != null) {
+			record.setGameDescription(this.timestepsIndex.get(view),
+					agA.getId(), agB.getId(), description);
+		}
+	}
+
+	/**
+	 * Returns the number of frames written so far
+	 *
+	 * @return the number of frames written so far
+	 */
+	public synchronized long getNumFrames() {
+		return this.numFrames;
+	}
+
+	/**
+	 * Returns <tt>true</tt> if the log could not be written
+	 *
+	 * @return <tt>true</tt> if the log could not be written
+	 */
+	public synchronized boolean hasFailed() {
+		return this.failure != null;
+	}
+
+	/**
+	 * Writes the frame of the current tick (if it did not finish) 
+	 * and closes the log
+	 *
+	 * @throws IOException if the log could not be written
+	 */
+	public synchronized void close() throws IOException {
+		try {
+			if(this.failure == null && this.inTick) {
+				this.writeFrame();
+			}
+		}
+		finally {
+			this.output.close();
+		}
+		if(this.failure != null) {
+			throw this.failure;
+		}
+	}
+
+	//---------------------------------------------------------------------------
+	// Private methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Appends the current frame to the log and finishes its tick. The frame
+	 * contains an entry for each recorded sensor (in the order of the 
+	 * header): its id, whether it perceived during the tick and, if so,
+	 * its record
+	 *
+	 * @throws IOException if the frame could not be written
+	 */
+	private void writeFrame() throws IOException {
+		Map<Integer,PerceptionRecord> records = this.frame;
+
+		this.frame = new HashMap<Integer,PerceptionRecord>();
+		this.inTick = false;
+		this.transitionsIndex.clear();
+		this.viewsIndex.clear();
+		this.timestepsIndex.clear();
+
+		try {
+			this.output.writeInt(this.sensors.size());
+			for(Integer sensorId : this.sensors.keySet()) {
+				PerceptionRecord record = records.get(sensorId);
+				this.output.writeInt(sensorId);
+				this.output.writeBoolean(record != null);
+				if(record != null) {
+					record.write(this.output);
+				}
+			}
+			this.output.reset();
+			this.output.flush();
+			this.numFrames++;
+		}
+		catch (IOException e) {
+			this.failure = e;
+			throw e;
+		}
+	}
+
+	/**
+	 * Appends the current frame to the log, failing if it cannot be written
+	 *
+	 * @throws IllegalStateException if the frame could not be written
+	 */
+	private void writeFrameOrFail() {
+		try {
+			this.writeFrame();
+		}
+		catch (IOException e) {
+			this.checkFailure();
+		}
+	}
+
+	/**
+	 * Throws an exception if the log could not be written
+	 *
+	 * @throws IllegalStateException if the log could not be written
+	 */
+	private void checkFailure() {
+		if(this.failure != null) {
+			throw new IllegalStateException("The perception log could not be " +
+					"written after " + this.numFrames + " frames", this.failure);
+		}
+	}
+}
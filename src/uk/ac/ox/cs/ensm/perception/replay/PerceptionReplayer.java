@@ -0,0 +1,387 @@
+/**
+ *
+ * @author Javier Morales (javier.morales@cs.ox.ac.uk)
+ */
+package uk.ac.ox.cs.ensm.perception.replay;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.ac.ox.cs.ensm.agent.AgentPopulation;
+import uk.ac.ox.cs.ensm.agent.EvolutionaryAgent;
+import uk.ac.ox.cs.ensm.config.DomainFunctions;
+import uk.ac.ox.cs.ensm.perception.MonitorListener;
+import uk.ac.ox.cs.ensm.perception.Sensor;
+import uk.ac.ox.cs.ensm.perception.View;
+import uk.ac.ox.cs.ensm.perception.ViewTransition;
+
+/**
+ * Reads a log written by a {@code PerceptionRecorder} and feeds it back
+ * to the norm synthesis machine, frame by frame, by means of a set of
+ * {@code ReplaySensor}s (one for each sensor listed in the header of the
+ * log) and a {@code ReplayDomainFunctions}. The replayer moves to the next
+ * frame each time a tick starts, and hence it must be added as a listener
+ * of the monitor of the norm synthesis machine. This allows to re-run norm synthesis
+ * (e.g., with different replicator settings) without running the
+ * simulation again. A typical replay loop is:
+ * <pre>
+ * PerceptionReplayer replayer = new PerceptionReplayer(file, agents);
+ * EvolutionaryNSM ensm = new EvolutionaryNSM(settings, agents, predDomains,
+ * 		replayer.getDomainFunctions(), grammar, random, false, null);
+ * for(Sensor sensor : replayer.getSensors()) {
+ * 	ensm.addSensor(sensor);
+ * }
+ * ensm.getMonitor().addListener(replayer);
+ * for(int tick=0; replayer.hasNextFrame(); tick++) {
+ * 	ensm.executeRound(tick);
+ * }
+ * replayer.close();
+ * </pre>
+ * The agents of the replayed run are needed to rebuild the recorded
+ * agent interactions, which refer to their agents by id
+ *
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ * @see PerceptionRecorder
+ */
+public class PerceptionReplayer implements MonitorListener {
+
+	//---------------------------------------------------------------------------
+	// Attributes
+	//---------------------------------------------------------------------------
+
+	private CompactObjectInputStream input;				// The log
+	private AgentPopulation agents;								// The replayed agents
+
+	/* Replay sensors (one for each recorded sensor) and domain functions */
+	private Map<Integer,ReplaySensor> sensors;
+	private ReplayDomainFunctions dmFunctions;
+
+	/* Current frame and next frame (a null record if the 
+	 * sensor perceived nothing), by sensor id */
+	private Map<Integer,ViewTransition> frame;
+	private Map<Integer,PerceptionRecord> nextFrame;
+
+	/* Index of the transitions and views of the current frame */
+	private Map<ViewTransition,PerceptionRecord> transitionsIndex;
+	private Map<View,PerceptionRecord> viewsIndex;
+	private Map<View,Integer> timestepsIndex;
+
+	private long numFrames;													// Number of frames read so far
+
+	//---------------------------------------------------------------------------
+	// Methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Constructor. Opens the log and creates a replay sensor for each
+	 * sensor listed in its header
+	 *
+	 * @param file the file containing the log
+	 * @param agents the agents of the replayed run
+	 * @throws IOException if the log cannot be read
+	 * @throws IllegalStateException if the log is corrupted
+	 */
+	public PerceptionReplayer(File file, Collection<EvolutionaryAgent> agents)
+			throws IOException {
+
+		this.input = new CompactObjectInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		this.agents = new AgentPopulation(agents);
+
+		this.sensors = new LinkedHashMap<Integer,ReplaySensor>();
+		this.dmFunctions = new ReplayDomainFunctions(this);
+
+		this.frame = new HashMap<Integer,ViewTransition>();
+		this.transitionsIndex = new IdentityHashMap<ViewTransition,PerceptionRecord>();
+		this.viewsIndex = new IdentityHashMap<View,PerceptionRecord>();
+		this.timestepsIndex = new IdentityHashMap<View,Integer>();
+		this.numFrames = 0;
+
+		try {
+			this.readHeader();
+		}
+		catch (IOException e) {
+			this.input.close();
+			throw e;
+		}
+		catch (ClassNotFoundException e) {
+			this.input.close();
+			throw new IllegalStateException("The header of the perception " +
+					"log could not be read", e);
+		}
+		
+		/* Read ahead the first frame */
+		this.nextFrame = this.readFrame();
+	}
+
+	/**
+	 * Returns the replay sensors, one for each recorded sensor
+	 *
+	 * @return the replay sensors
+	 */
+	public List<Sensor> getSensors() {
+		return new ArrayList<Sensor>(this.sensors.values());
+	}
+
+	/**
+	 * Returns the domain functions that answer with the recorded answers
+	 *
+	 * @return the replay domain functions
+	 */
+	public DomainFunctions getDomainFunctions() {
+		return this.dmFunctions;
+	}
+
+	/**
+	 * Returns <tt>true</tt> if there are still perceptions to replay
+	 *
+	 * @return <tt>true</tt> if there are still perceptions to replay
+	 */
+	public synchronized boolean hasNextFrame() {
+		return this.nextFrame != null;
+	}
+
+	/**
+	 * Returns the number of frames replayed so far
+	 *
+	 * @return the number of frames replayed so far
+	 */
+	public synchronized long getNumFrames() {
+		return this.numFrames;
+	}
+
+	/**
+	 * Moves to the next frame of the log when a tick starts
+	 *
+	 * @param tick the tick
+	 * @throws IllegalStateException if the log has been completely replayed
+	 */
+	@Override
+	public synchronized void tickStarted(long tick) {
+		this.moveToNextFrame();
+	}
+
+	/**
+	 * Does nothing, since the frame of a tick is kept until the
+	 * next tick starts
+	 *
+	 * @param tick the tick
+	 */
+	@Override
+	public void tickFinished(long tick) {}
+
+	/**
+	 * Closes the log
+	 */
+	public synchronized void close() {
+		try {
+			this.input.close();
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	//---------------------------------------------------------------------------
+	// Package methods (used by replay sensors and domain functions)
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Returns the perception of a sensor in the current frame
+	 *
+	 * @param sensor the replay sensor
+	 * @return the recorded perception of the sensor, or {@code null}
+	 * 					if the sensor did not perceive during the frame
+	 * @throws IllegalStateException if no tick has started yet
+	 */
+	synchronized ViewTransition getPerception(ReplaySensor sensor) {
+		if(this.numFrames == 0) {
+			throw new IllegalStateException("Sensor " + sensor.getId() + 
+					" perceived outside a tick (the replayer must be a " +
+					"listener of the monitor)");
+		}
+		return this.frame.get(sensor.getId());
+	}
+
+	/**
+	 * Returns the record that contains a view of the current frame
+	 *
+	 * @param view the view
+	 * @return the record containing the view, or {@code null}
+	 */
+	synchronized PerceptionRecord getRecord(View view) {
+		return this.viewsIndex.get(view);
+	}
+
+	/**
+	 * Returns the time step of a view of the current frame
+	 *
+	 * @param view the view
+	 * @return the time step of the view, or {@code null}
+	 */
+	synchronized Integer getTimestep(View view) {
+		return this.timestepsIndex.get(view);
+	}
+
+	/**
+	 * Returns the record of a view transition of the current frame
+	 *
+	 * @param vTrans the view transition
+	 * @return the record of the view transition, or {@code null}
+	 */
+	synchronized PerceptionRecord getRecord(ViewTransition vTrans) {
+		return this.transitionsIndex.get(vTrans);
+	}
+
+	/**
+	 * Returns the replayed agent with a given id
+	 *
+	 * @param agentId the id of the agent
+	 * @return the agent with the given id
+	 * @throws IllegalStateException if the agent is not a replayed agent
+	 */
+	synchronized EvolutionaryAgent getAgent(long agentId) {
+		EvolutionaryAgent agent = this.agents.getAgentWithId(agentId);
+		if(agent == null) {
+			throw new IllegalStateException("Agent " + agentId +
+					" is not one of the replayed agents");
+		}
+		return agent;
+	}
+
+	//---------------------------------------------------------------------------
+	// Private methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Moves to the next frame of the log, rebuilding the view transitions
+	 * of each sensor from their records
+	 */
+	private void moveToNextFrame() {
+		if(this.nextFrame == null) {
+			throw new IllegalStateException("The perception log has been " +
+					"completely replayed (" + this.numFrames + " frames)");
+		}
+
+		this.frame.clear();
+		this.transitionsIndex.clear();
+		this.viewsIndex.clear();
+		this.timestepsIndex.clear();
+
+		for(PerceptionRecord record : this.nextFrame.values()) {
+			
+			/* Sensors that perceived nothing */
+			if(record == null) {
+				continue;
+			}
+			
+			ReplaySensor sensor = this.sensors.get(record.getSensorId());
+			ViewTransition vTrans = new ViewTransition(sensor);
+			for(Map.Entry<Integer,View> entry : record.getViews().entrySet()) {
+				vTrans.setView(entry.getKey(), entry.getValue());
+				this.viewsIndex.put(entry.getValue(), record);
+				this.timestepsIndex.put(entry.getValue(), entry.getKey());
+			}
+			this.transitionsIndex.put(vTrans, record);
+			this.frame.put(record.getSensorId(), vTrans);
+		}
+
+		this.numFrames++;
+		this.nextFrame = this.readFrame();
+	}
+
+	/**
+	 * Reads the header of the log, and creates a replay 
+	 * sensor for each sensor listed in it
+	 *
+	 * @throws IOException if the header cannot be read
+	 * @throws ClassNotFoundException if the header is corrupted
+	 */
+	private void readHeader() throws IOException, ClassNotFoundException {
+		int numSensors = this.input.readInt();
+		for(int i=0; i<numSensors; i++) {
+			int sensorId = this.input.readInt();
+			String location = (String)this.input.readObject();
+			
+			if(this.sensors.put(sensorId, 
+					new ReplaySensor(sensorId, location, this)) != null) {
+				throw new IllegalStateException("The header of the perception " +
+						"log lists sensor " + sensorId + " twice");
+			}
+		}
+	}
+
+	/**
+	 * Reads a frame from the log. A frame must contain exactly one entry
+	 * for each sensor listed in the header of the log
+	 *
+	 * @return the record of each sensor in the frame (a {@code null} record
+	 * 					if the sensor perceived nothing), or {@code null} at the
+	 * 					end of the log
+	 * @throws IllegalStateException if the log is corrupted
+	 */
+	private Map<Integer,PerceptionRecord> readFrame() {
+		int numRecords;
+		try {
+			numRecords = this.input.readInt();
+		}
+		catch (EOFException e) {
+			return null;
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("The perception log could not be " +
+					"read after " + this.numFrames + " frames", e);
+		}
+
+		if(numRecords != this.sensors.size()) {
+			throw new IllegalStateException("Frame " + (this.numFrames + 1) + 
+					" of the perception log has " + numRecords + 
+					" entries, but " + this.sensors.size() + " sensors were recorded");
+		}
+
+		try {
+			Map<Integer,PerceptionRecord> records =
+					new LinkedHashMap<Integer,PerceptionRecord>();
+			for(int i=0; i<numRecords; i++) {
+				int sensorId = this.input.readInt();
+				if(!this.sensors.containsKey(sensorId) || 
+						records.containsKey(sensorId)) {
+					throw new IllegalStateException("Frame " + (this.numFrames + 1) +
+							" of the perception log has an unexpected entry of sensor " +
+							sensorId);
+				}
+				
+				PerceptionRecord record = null;
+				if(this.input.readBoolean()) {
+					record = PerceptionRecord.read(this.input);
+					if(record.getSensorId() != sensorId) {
+						throw new IllegalStateException("Frame " + 
+								(this.numFrames + 1) + " of the perception log has a " + 
+								"record of sensor " + record.getSensorId() + 
+								" in the entry of sensor " + sensorId);
+					}
+				}
+				records.put(sensorId, record);
+			}
+			return records;
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("The perception log could not be " +
+					"read after " + this.numFrames + " frames", e);
+		}
+		catch (ClassNotFoundException e) {
+			throw new IllegalStateException("The perception log could not be " +
+					"read after " + this.numFrames + " frames", e);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ *
+ * @author Javier Morales (javier.morales@cs.ox.ac.uk)
+ */
+package uk.ac.ox.cs.ensm.perception.replay;
+
+import java.util.List;
+
+import uk.ac.ox.cs.ensm.agent.AgentAction;
+import uk.ac.ox.cs.ensm.agent.AgentContext;
+import uk.ac.ox.cs.ensm.agent.AgentInteraction;
+import uk.ac.ox.cs.ensm.agent.EvolutionaryAgent;
+import uk.ac.ox.cs.ensm.config.DomainFunctions;
+import uk.ac.ox.cs.ensm.config.Goal;
+import uk.ac.ox.cs.ensm.perception.Conflict;
+import uk.ac.ox.cs.ensm.perception.View;
+import uk.ac.ox.cs.ensm.perception.ViewTransition;
+
+/**
+ * Domain functions that wrap the domain functions of a simulation and
+ * record the contexts, actions, rewards, conflicts, agent interactions and
+ * game descriptions they return for the perceptions of
+ * {@code RecordingSensor}s. Answers about views that have
+ * not been perceived by a recording sensor are not recorded
+ *
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ * @see PerceptionRecorder
+ * @see RecordingSensor
+ */
+public class RecordingDomainFunctions implements DomainFunctions {
+
+	//---------------------------------------------------------------------------
+	// Attributes
+	//---------------------------------------------------------------------------
+
+	private DomainFunctions dmFunctions;	// The recorded domain functions
+	private PerceptionRecorder recorder;	// The recorder
+
+	//---------------------------------------------------------------------------
+	// Methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Constructor
+	 *
+	 * @param dmFunctions the domain functions to record
+	 * @param recorder the recorder that writes the answers
+	 */
+	public RecordingDomainFunctions(DomainFunctions dmFunctions,
+			PerceptionRecorder recorder) {
+
+		this.dmFunctions = dmFunctions;
+		this.recorder = recorder;
+	}
+
+	/**
+	 * Returns (and records) the context of an agent in a view
+	 */
+	@Override
+	public AgentContext getContext(long agentId, View view) {
+		AgentContext context = this.dmFunctions.getContext(agentId, view);
+		this.recorder.recordContext(agentId, view, context);
+		return context;
+	}
+
+	/**
+	 * Returns (and records) the actions of an agent in a view transition
+	 */
+	@Override
+	public List<AgentAction> getAction(long agentId,
+			ViewTransition viewTransition) {
+
+		List<AgentAction> actions = this.dmFunctions.getAction(agentId,
+				viewTransition);
+
+		this.recorder.recordActions(agentId, viewTransition, actions);
+		return actions;
+	}
+
+	/**
+	 * Returns (and records) the agent interactions in a view transition
+	 */
+	@Override
+	public List<AgentInteraction> getAgentInteractions(ViewTransition vTrans) {
+		List<AgentInteraction> interactions =
+				this.dmFunctions.getAgentInteractions(vTrans);
+
+		this.recorder.recordInteractions(vTrans, interactions);
+		return interactions;
+	}
+
+	/**
+	 * Returns (and records) the description of a game played in a view
+	 */
+	@Override
+	public View getGameDescription(View view, EvolutionaryAgent agA,
+			EvolutionaryAgent agB) {
+
+		View description = this.dmFunctions.getGameDescription(view, agA, agB);
+		this.recorder.recordGameDescription(view, agA, agB, description);
+		return description;
+	}
+
+	/**
+	 * Returns (and records) the conflicts detected in a view transition
+	 */
+	@Override
+	public List<Conflict> getConflicts(Goal goal,
+			ViewTransition viewTransition) {
+
+		List<Conflict> conflicts = this.dmFunctions.getConflicts(goal,
+				viewTransition);
+
+		this.recorder.recordConflicts(viewTransition, goal, conflicts);
+		return conflicts;
+	}
+
+	/**
+	 * Returns (and records) the reward of an agent in a view transition
+	 */
+	@Override
+	public double getReward(ViewTransition vTrans, long agentId, Goal goal) {
+		double reward = this.dmFunctions.getReward(vTrans, agentId, goal);
+		this.recorder.recordReward(agentId, vTrans, goal, reward);
+		return reward;
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ *
+ * @author Javier Morales (javier.morales@cs.ox.ac.uk)
+ */
+package uk.ac.ox.cs.ensm.perception.replay;
+
+import uk.ac.ox.cs.ensm.perception.Sensor;
+import uk.ac.ox.cs.ensm.perception.ViewTransition;
+
+/**
+ * A sensor that wraps the sensor of a simulation and records each of
+ * its perceptions in a {@code PerceptionRecorder}. Recording sensors are
+ * created by the recorder, one for each sensor listed in its header
+ *
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ * @see PerceptionRecorder
+ */
+public class RecordingSensor implements Sensor {
+
+	//---------------------------------------------------------------------------
+	// Attributes
+	//---------------------------------------------------------------------------
+
+	private Sensor sensor;								// The recorded sensor
+	private PerceptionRecorder recorder;	// The recorder
+
+	//---------------------------------------------------------------------------
+	// Methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Constructor
+	 *
+	 * @param sensor the sensor to record
+	 * @param recorder the recorder that writes the perceptions
+	 */
+	RecordingSensor(Sensor sensor, PerceptionRecorder recorder) {
+		this.sensor = sensor;
+		this.recorder = recorder;
+	}
+
+	/**
+	 * Returns the id of the recorded sensor
+	 *
+	 * @return the id of the recorded sensor
+	 */
+	@Override
+	public int getId() {
+		return this.sensor.getId();
+	}
+
+	/**
+	 * Returns the location of the recorded sensor
+	 *
+	 * @return the location of the recorded sensor
+	 */
+	@Override
+	public String getLocation() {
+		return this.sensor.getLocation();
+	}
+
+	/**
+	 * Sets the perception window of the recorded sensor
+	 *
+	 * @param ticks the number of time steps of the window
+	 */
+	@Override
+	public void setPerceptionWindow(int ticks) {
+		this.sensor.setPerceptionWindow(ticks);
+	}
+
+	/**
+	 * Returns the last perception of the recorded sensor, after recording it
+	 *
+	 * @return the last perception of the recorded sensor
+	 */
+	@Override
+	public ViewTransition getPerception() {
+		ViewTransition vTrans = this.sensor.getPerception();
+		this.recorder.recordPerception(this.sensor, vTrans);
+		return vTrans;
+	}
+}
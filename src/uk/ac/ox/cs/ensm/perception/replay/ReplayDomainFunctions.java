@@ -0,0 +1,183 @@
+/**
+ *
+ * @author Javier Morales (javier.morales@cs.ox.ac.uk)
+ */
+package uk.ac.ox.cs.ensm.perception.replay;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.ac.ox.cs.ensm.agent.AgentAction;
+import uk.ac.ox.cs.ensm.agent.AgentContext;
+import uk.ac.ox.cs.ensm.agent.AgentInteraction;
+import uk.ac.ox.cs.ensm.agent.EvolutionaryAgent;
+import uk.ac.ox.cs.ensm.config.DomainFunctions;
+import uk.ac.ox.cs.ensm.config.Goal;
+import uk.ac.ox.cs.ensm.perception.Conflict;
+import uk.ac.ox.cs.ensm.perception.View;
+import uk.ac.ox.cs.ensm.perception.ViewTransition;
+import uk.ac.ox.cs.ensm.perception.replay.PerceptionRecord.ConflictRecord;
+import uk.ac.ox.cs.ensm.perception.replay.PerceptionRecord.InteractionRecord;
+
+/**
+ * Domain functions that answer with the answers recorded in a log,
+ * for the perceptions served by a {@code PerceptionReplayer}. Asking
+ * for an action, a reward, the agent interactions or a game description
+ * that were not recorded is an error, since the replay would diverge
+ * from the recorded run
+ *
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ * @see PerceptionReplayer
+ */
+public class ReplayDomainFunctions implements DomainFunctions {
+
+	//---------------------------------------------------------------------------
+	// Attributes
+	//---------------------------------------------------------------------------
+
+	private PerceptionReplayer replayer;	// The replayer
+
+	//---------------------------------------------------------------------------
+	// Methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Constructor
+	 *
+	 * @param replayer the replayer that serves the perceptions
+	 */
+	public ReplayDomainFunctions(PerceptionReplayer replayer) {
+		this.replayer = replayer;
+	}
+
+	/**
+	 * Returns the recorded context of an agent in a view, or {@code null}
+	 * if it was not recorded
+	 */
+	@Override
+	public AgentContext getContext(long agentId, View view) {
+		PerceptionRecord record = this.replayer.getRecord(view);
+		if(record == null) {
+			return null;
+		}
+		return record.getContext(this.replayer.getTimestep(view), agentId);
+	}
+
+	/**
+	 * Returns the recorded actions of an agent in a view transition
+	 */
+	@Override
+	public List<AgentAction> getAction(long agentId,
+			ViewTransition viewTransition) {
+
+		PerceptionRecord record = this.getRecord(viewTransition);
+		List<AgentAction> actions = record.getActions(agentId);
+		if(actions == null) {
+			throw new IllegalStateException("The actions of agent " + agentId +
+					" were not recorded for sensor " + record.getSensorId());
+		}
+		return new ArrayList<AgentAction>(actions);
+	}
+
+	/**
+	 * Rebuilds the recorded agent interactions of a view transition,
+	 * resolving the agents by their ids
+	 */
+	@Override
+	public List<AgentInteraction> getAgentInteractions(ViewTransition vTrans) {
+		PerceptionRecord record = this.getRecord(vTrans);
+		List<InteractionRecord> iRecords = record.getInteractions();
+		if(iRecords == null) {
+			throw new IllegalStateException("The agent interactions were not " +
+					"recorded for sensor " + record.getSensorId());
+		}
+
+		List<AgentInteraction> interactions = new ArrayList<AgentInteraction>();
+		for(InteractionRecord iRecord : iRecords) {
+			long[] agentIds = iRecord.getAgentIds();
+			List<EvolutionaryAgent> agents =
+					new ArrayList<EvolutionaryAgent>(agentIds.length);
+			for(long agentId : agentIds) {
+				agents.add(this.replayer.getAgent(agentId));
+			}
+			interactions.add(new AgentInteraction(agents, iRecord.getContexts()));
+		}
+		return interactions;
+	}
+
+	/**
+	 * Returns the recorded description of a game played in a view
+	 */
+	@Override
+	public View getGameDescription(View view, EvolutionaryAgent agA,
+			EvolutionaryAgent agB) {
+
+		PerceptionRecord record = this.replayer.getRecord(view);
+		Integer timestep = this.replayer.getTimestep(view);
+		if(record == null || !record.hasGameDescription(timestep,
+				agA.getId(), agB.getId())) {
+			throw new IllegalStateException("The description of the game of " +
+					"agents " + agA.getId() + " and " + agB.getId() +
+					" was not recorded");
+		}
+		return record.getGameDescription(timestep, agA.getId(), agB.getId());
+	}
+
+	/**
+	 * Rebuilds the recorded conflicts of a view transition, as if they
+	 * had been perceived by the replay sensor
+	 */
+	@Override
+	public List<Conflict> getConflicts(Goal goal, ViewTransition viewTransition) {
+		PerceptionRecord record = this.getRecord(viewTransition);
+		List<Conflict> conflicts = new ArrayList<Conflict>();
+		List<ConflictRecord> cRecords = record.getConflicts(goal.getName());
+
+		if(cRecords != null) {
+			for(ConflictRecord cRecord : cRecords) {
+				View view = null;
+				if(cRecord.getTimestep() != null) {
+					view = viewTransition.getView(cRecord.getTimestep());
+				}
+				conflicts.add(new Conflict(viewTransition.getSensor(), view,
+						viewTransition, cRecord.getConflictingAgents()));
+			}
+		}
+		return conflicts;
+	}
+
+	/**
+	 * Returns the recorded reward of an agent in a view transition
+	 */
+	@Override
+	public double getReward(ViewTransition vTrans, long agentId, Goal goal) {
+		PerceptionRecord record = this.getRecord(vTrans);
+		Double reward = record.getReward(goal.getName(), agentId);
+		if(reward == null) {
+			throw new IllegalStateException("The reward of agent " + agentId +
+					" for goal " + goal.getName() + " was not recorded for sensor " +
+					record.getSensorId());
+		}
+		return reward;
+	}
+
+	//---------------------------------------------------------------------------
+	// Private methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Returns the record of a view transition of the current frame
+	 *
+	 * @param vTrans the view transition
+	 * @return the record of the view transition
+	 * @throws IllegalStateException if the transition is not being replayed
+	 */
+	private PerceptionRecord getRecord(ViewTransition vTrans) {
+		PerceptionRecord record = this.replayer.getRecord(vTrans);
+		if(record == null) {
+			throw new IllegalStateException("The view transition is not part " +
+					"of the frame being replayed");
+		}
+		return record;
+	}
+}
@@ -0,0 +1,82 @@
+/**
+ *
+ * @author Javier Morales (javier.morales@cs.ox.ac.uk)
+ */
+package uk.ac.ox.cs.ensm.perception.replay;
+
+import uk.ac.ox.cs.ensm.perception.Sensor;
+import uk.ac.ox.cs.ensm.perception.ViewTransition;
+
+/**
+ * A sensor that perceives the transitions recorded in a log, as they
+ * are served by a {@code PerceptionReplayer}
+ *
+ * @author "Javier Morales (javier.morales@cs.ox.ac.uk)"
+ * @see PerceptionReplayer
+ */
+public class ReplaySensor implements Sensor {
+
+	//---------------------------------------------------------------------------
+	// Attributes
+	//---------------------------------------------------------------------------
+
+	private int id;												// Id of the recorded sensor
+	private String location;							// Location of the recorded sensor
+	private PerceptionReplayer replayer;	// The replayer
+
+	//---------------------------------------------------------------------------
+	// Methods
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Constructor
+	 *
+	 * @param id the id of the recorded sensor
+	 * @param location the location of the recorded sensor
+	 * @param replayer the replayer that serves the perceptions
+	 */
+	public ReplaySensor(int id, String location, PerceptionReplayer replayer) {
+		this.id = id;
+		this.location = location;
+		this.replayer = replayer;
+	}
+
+	/**
+	 * Returns the id of the recorded sensor
+	 *
+	 * @return the id of the recorded sensor
+	 */
+	@Override
+	public int getId() {
+		return this.id;
+	}
+
+	/**
+	 * Returns the location of the recorded sensor
+	 *
+	 * @return the location of the recorded sensor
+	 */
+	@Override
+	public String getLocation() {
+		return this.location;
+	}
+
+	/**
+	 * Does nothing, since the perception window is the one
+	 * used during the recording
+	 *
+	 * @param ticks the number of time steps of the window
+	 */
+	@Override
+	public void setPerceptionWindow(int ticks) {}
+
+	/**
+	 * Returns the next recorded perception of the sensor
+	 *
+	 * @return the next recorded perception of the sensor
+	 */
+	@Override
+	public ViewTransition getPerception() {
+		return this.replayer.getPerception(this);
+	}
+}